@@ -0,0 +1,81 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.HotAccount;
+import com.db.awmd.challenge.domain.ScaledBalanceAccount;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Account#debit(BigDecimal)} and {@link Account#credit(BigDecimal)} on a single shared account, the worst
+ * case of a hot account, for 1, 4 and 16 threads, and credits alone with 16 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AccountBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+    @State(Scope.Benchmark)
+    public static class SharedAccount {
+
+        @Param({"DECIMAL", "SCALED", "HOT"})
+        String balanceMode;
+
+        Account account;
+
+        @Setup
+        public void setUp() {
+            BigDecimal balance = new BigDecimal(1000000000);
+            switch (balanceMode) {
+                case "SCALED":
+                    account = new ScaledBalanceAccount("Id-0", balance);
+                    break;
+                case "HOT":
+                    account = new HotAccount("Id-0", balance);
+                    break;
+                default:
+                    account = new Account("Id-0", balance);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean debitAndCreditThreads1(SharedAccount shared) throws InterruptedException {
+        return debitAndCredit(shared.account);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean debitAndCreditThreads4(SharedAccount shared) throws InterruptedException {
+        return debitAndCredit(shared.account);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean debitAndCreditThreads16(SharedAccount shared) throws InterruptedException {
+        return debitAndCredit(shared.account);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean creditThreads16(SharedAccount shared) throws InterruptedException {
+        return shared.account.credit(AMOUNT);
+    }
+
+    private static boolean debitAndCredit(Account account) throws InterruptedException {
+        // paired so the balance stays put however long the run
+        return account.debit(AMOUNT) & account.credit(AMOUNT);
+    }
+}
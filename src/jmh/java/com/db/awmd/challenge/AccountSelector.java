@@ -0,0 +1,79 @@
+package com.db.awmd.challenge;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks account indexes for benchmarks, either uniformly or following a Zipf distribution where a few hot
+ * accounts take most of the traffic.
+ */
+final class AccountSelector {
+
+    private final int accounts;
+
+    private final double[] cumulative;
+
+    private AccountSelector(int accounts, double[] cumulative) {
+        this.accounts = accounts;
+        this.cumulative = cumulative;
+    }
+
+    static AccountSelector uniform(int accounts) {
+        return new AccountSelector(accounts, null);
+    }
+
+    /**
+     * @param exponent Skew of the distribution, around 1 a handful of accounts receive most of the picks
+     */
+    static AccountSelector zipfian(int accounts, double exponent) {
+        double[] cumulative = new double[accounts];
+        double sum = 0;
+        for (int rank = 0; rank < accounts; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < accounts; rank++) {
+            cumulative[rank] /= sum;
+        }
+        return new AccountSelector(accounts, cumulative);
+    }
+
+    static AccountSelector of(String distribution, int accounts) {
+        switch (distribution) {
+            case "UNIFORM":
+                return uniform(accounts);
+            case "ZIPFIAN":
+                return zipfian(accounts, 0.99);
+            default:
+                throw new IllegalArgumentException("Unknown distribution " + distribution);
+        }
+    }
+
+    int next(ThreadLocalRandom random) {
+        if (cumulative == null) {
+            return random.nextInt(accounts);
+        }
+        double value = random.nextDouble();
+        int low = 0;
+        int high = accounts - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return a pair of distinct account indexes, the debit first
+     */
+    int[] nextPair(ThreadLocalRandom random, int[] pair) {
+        pair[0] = next(random);
+        do {
+            pair[1] = next(random);
+        } while (pair[1] == pair[0]);
+        return pair;
+    }
+}
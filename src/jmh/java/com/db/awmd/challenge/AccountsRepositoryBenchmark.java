@@ -0,0 +1,142 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountHandles;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.InternedAccountsRepository;
+import com.db.awmd.challenge.repository.OffHeapAccountsRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Account lookup throughput and the time to create a batch of accounts, for 1 and 8 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AccountsRepositoryBenchmark {
+
+    /**
+     * Accounts created by each thread per iteration. Creation grows the repository, so it is measured as fixed
+     * size batches from a freshly filled repository rather than as a steady state.
+     */
+    private static final int CREATE_BATCH_SIZE = 100000;
+
+    /**
+     * Off-heap capacity, enough for the filled accounts plus a batch from each of up to 8 threads.
+     */
+    private static final int CAPACITY = 1 << 20;
+
+    @State(Scope.Benchmark)
+    public static class Repository {
+
+        @Param({"100000"})
+        int accounts;
+
+        @Param({"HEAP", "OFF_HEAP", "INTERNED"})
+        String store;
+
+        AccountsRepository repository;
+
+        String[] accountIds;
+
+        final AtomicLong created = new AtomicLong();
+
+        @Setup
+        public void setUp() {
+            repository = repository(store, CAPACITY);
+            accountIds = new String[accounts];
+            for (int i = 0; i < accounts; i++) {
+                accountIds[i] = TransferBenchmark.accountId(i);
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void fill() {
+            repository.clearAccounts();
+            created.set(0);
+            for (String accountId : accountIds) {
+                repository.createAccount(new Account(accountId, BigDecimal.TEN));
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Account getAccountThreads1(Repository repository) {
+        return getAccount(repository);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Account getAccountThreads8(Repository repository) {
+        return getAccount(repository);
+    }
+
+    /**
+     * Lookup by handle, for the stores handing out handles.
+     */
+    @Benchmark
+    @Threads(8)
+    public Account getAccountByHandleThreads8(Repository repository) {
+        if (!(repository.repository instanceof AccountHandles)) {
+            return null;
+        }
+        int handle = ThreadLocalRandom.current().nextInt(repository.accounts);
+        return ((AccountHandles) repository.repository).getAccount(handle);
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(batchSize = CREATE_BATCH_SIZE)
+    @Measurement(batchSize = CREATE_BATCH_SIZE)
+    public void createAccountThreads1(Repository repository) {
+        createAccount(repository);
+    }
+
+    @Benchmark
+    @Threads(8)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(batchSize = CREATE_BATCH_SIZE)
+    @Measurement(batchSize = CREATE_BATCH_SIZE)
+    public void createAccountThreads8(Repository repository) {
+        createAccount(repository);
+    }
+
+    static AccountsRepository repository(String store, int capacity) {
+        switch (store) {
+            case "OFF_HEAP":
+                return new OffHeapAccountsRepository(capacity, 1024);
+            case "INTERNED":
+                return new InternedAccountsRepository(capacity);
+            default:
+                return new AccountsRepositoryInMemory();
+        }
+    }
+
+    private static Account getAccount(Repository repository) {
+        String[] accountIds = repository.accountIds;
+        return repository.repository.getAccount(accountIds[ThreadLocalRandom.current().nextInt(accountIds.length)]);
+    }
+
+    private static void createAccount(Repository repository) {
+        String accountId = "New-" + repository.created.incrementAndGet();
+        repository.repository.createAccount(new Account(accountId, BigDecimal.TEN));
+    }
+}
@@ -0,0 +1,145 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AccountBusyException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.ledger.TransferLedger;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.BalanceSnapshots;
+import com.db.awmd.challenge.service.ContentionPolicy;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import com.db.awmd.challenge.service.OrderedLockTransferEngine;
+import com.db.awmd.challenge.service.TransactionService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the contention policies: 16 threads transferring between a few accounts whose debits take a while
+ * under the lock. Besides the throughput of attempted transfers, the completed and busy counters give the share
+ * of transfers that succeeded under each policy.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ContentionBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+    @State(Scope.Benchmark)
+    public static class Bank {
+
+        @Param({"8"})
+        int accounts;
+
+        /**
+         * CPU spent by each debit under the account lock, in {@link Blackhole#consumeCPU(long)} tokens.
+         */
+        @Param({"1000"})
+        long debitWork;
+
+        /**
+         * WAIT waits up to ten seconds once, FAIL_FAST gives up on the first busy lock, BACKOFF tries a busy
+         * lock up to 8 times with jittered exponential backoff.
+         */
+        @Param({"WAIT", "FAIL_FAST", "BACKOFF"})
+        String policy;
+
+        TransactionService transactionService;
+
+        @Setup
+        public void setUp() {
+            AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+            for (int i = 0; i < accounts; i++) {
+                repository.createAccount(new SlowAccount(TransferBenchmark.accountId(i), debitWork));
+            }
+            ContentionPolicy contentionPolicy = contentionPolicy(policy);
+            TransferMetrics metrics = new TransferMetrics();
+            transactionService = new TransactionService(repository, (account, description) -> {
+            }, new OrderedLockTransferEngine(metrics, contentionPolicy), TransferJournal.NONE,
+                    new IdempotencyCache(16, 600), metrics, new TransferLedger(0), new BalanceSnapshots(),
+                    contentionPolicy);
+        }
+
+        private static ContentionPolicy contentionPolicy(String policy) {
+            switch (policy) {
+                case "WAIT":
+                    return ContentionPolicy.DEFAULT;
+                case "FAIL_FAST":
+                    return new ContentionPolicy(0, 1, 0, 0);
+                case "BACKOFF":
+                    return new ContentionPolicy(0, 8, 1, 16);
+                default:
+                    throw new IllegalArgumentException("Unknown policy " + policy);
+            }
+        }
+    }
+
+    /**
+     * Outcomes of the transfers of one thread, reported by JMH as rates next to the throughput.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+
+        public long completed;
+
+        public long busy;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            completed = 0;
+            busy = 0;
+        }
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void transferThreads16(Bank bank, Outcomes outcomes) throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(bank.accounts);
+        int to = (from + 1 + random.nextInt(bank.accounts - 1)) % bank.accounts;
+        try {
+            bank.transactionService.transfer(TransferBenchmark.accountId(from), TransferBenchmark.accountId(to),
+                    AMOUNT);
+            outcomes.completed++;
+        } catch (AccountBusyException e) {
+            outcomes.busy++;
+        } catch (InsufficientFundsException e) {
+            // not expected with the opening balances
+        }
+    }
+
+    /**
+     * Account whose debits burn some CPU while the lock is held, standing in for a heavier critical section.
+     */
+    static final class SlowAccount extends Account {
+
+        private final long work;
+
+        SlowAccount(String accountId, long work) {
+            super(accountId, new BigDecimal(1000000000));
+            this.work = work;
+        }
+
+        @Override
+        public boolean applyDebit(BigDecimal amount) {
+            Blackhole.consumeCPU(work);
+            return super.applyDebit(amount);
+        }
+    }
+}
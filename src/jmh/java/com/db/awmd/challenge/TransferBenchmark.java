@@ -0,0 +1,159 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceMode;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.ledger.TransferLedger;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceSnapshots;
+import com.db.awmd.challenge.service.ContentionPolicy;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import com.db.awmd.challenge.service.OrderedLockTransferEngine;
+import com.db.awmd.challenge.service.PartitionedTransferEngine;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link TransactionService#transfer(String, String, BigDecimal)} with accounts picked uniformly
+ * or with a few hot accounts, for 1, 4 and 16 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransferBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+    @State(Scope.Benchmark)
+    public static class Bank {
+
+        @Param({"1000"})
+        int accounts;
+
+        @Param({"UNIFORM", "ZIPFIAN"})
+        String distribution;
+
+        @Param({"ORDERED_LOCK", "PARTITIONED"})
+        String engine;
+
+        @Param({"DECIMAL", "SCALED"})
+        String balanceMode;
+
+        @Param({"HEAP"})
+        String store;
+
+        /**
+         * Transfers kept in the history ledger, 0 to leave it out.
+         */
+        @Param({"0"})
+        int ledgerCapacity;
+
+        TransactionService transactionService;
+
+        AccountSelector selector;
+
+        private TransferEngine transferEngine;
+
+        @Setup
+        public void setUp() {
+            AccountsRepository repository = AccountsRepositoryBenchmark.repository(store, accounts);
+            AccountsService accountsService = new AccountsService(repository, BalanceMode.valueOf(balanceMode),
+                    TransferJournal.NONE);
+            for (int i = 0; i < accounts; i++) {
+                accountsService.createAccount(new Account(accountId(i), new BigDecimal(1000000000)));
+            }
+            transferEngine = "PARTITIONED".equals(engine)
+                    ? new PartitionedTransferEngine(0, 10000) : new OrderedLockTransferEngine();
+            transactionService = new TransactionService(repository, (account, description) -> {
+            }, transferEngine, TransferJournal.NONE, new IdempotencyCache(16, 600), new TransferMetrics(),
+                    new TransferLedger(ledgerCapacity), new BalanceSnapshots(), ContentionPolicy.DEFAULT);
+            selector = AccountSelector.of(distribution, accounts);
+        }
+
+        @TearDown
+        public void tearDown() {
+            if (transferEngine instanceof PartitionedTransferEngine) {
+                ((PartitionedTransferEngine) transferEngine).shutdown();
+            }
+        }
+    }
+
+    /**
+     * Account ids of the transfers, drawn ahead of time so that picking them is not measured.
+     */
+    @State(Scope.Thread)
+    public static class Transfers {
+
+        private static final int SIZE = 4096;
+
+        private final String[] from = new String[SIZE];
+
+        private final String[] to = new String[SIZE];
+
+        private int next;
+
+        @Setup(Level.Iteration)
+        public void setUp(Bank bank) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int[] pair = new int[2];
+            for (int i = 0; i < SIZE; i++) {
+                bank.selector.nextPair(random, pair);
+                from[i] = accountId(pair[0]);
+                to[i] = accountId(pair[1]);
+            }
+        }
+
+        int next() {
+            next = (next + 1) & (SIZE - 1);
+            return next;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void transferThreads1(Bank bank, Transfers transfers) throws InterruptedException {
+        transfer(bank, transfers);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void transferThreads4(Bank bank, Transfers transfers) throws InterruptedException {
+        transfer(bank, transfers);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void transferThreads16(Bank bank, Transfers transfers) throws InterruptedException {
+        transfer(bank, transfers);
+    }
+
+    private static void transfer(Bank bank, Transfers transfers) throws InterruptedException {
+        int i = transfers.next();
+        try {
+            bank.transactionService.transfer(transfers.from[i], transfers.to[i], AMOUNT);
+        } catch (InsufficientFundsException e) {
+            // not expected with the opening balances, but a drained hot account must not end the run
+        }
+    }
+
+    static String accountId(int index) {
+        return "Id-" + index;
+    }
+}
@@ -0,0 +1,84 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.cluster.ClusterCoordinator;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceMode;
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.ledger.TransferLedger;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BalanceSnapshots;
+import com.db.awmd.challenge.service.ContentionPolicy;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import com.db.awmd.challenge.service.NotificationDispatcher;
+import com.db.awmd.challenge.service.OrderedLockTransferEngine;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.web.TransactionController;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single transfer request from the path variables on, as the controller receives them, through the service,
+ * the engine and the notification queue. Run with the gc profiler, gc.alloc.rate.norm gives the bytes allocated
+ * per transfer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransferRequestBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Endpoint {
+
+        @Param({"DECIMAL", "SCALED"})
+        String balanceMode;
+
+        @Param({"10", "0.01"})
+        String amount;
+
+        TransactionController controller;
+
+        NotificationDispatcher notifications;
+
+        @Setup
+        public void setUp() {
+            AccountsRepository repository = AccountsRepositoryBenchmark.repository("HEAP", 2);
+            AccountsService accountsService = new AccountsService(repository, BalanceMode.valueOf(balanceMode),
+                    TransferJournal.NONE);
+            accountsService.createAccount(new Account("Id-0", new BigDecimal(1000000000)));
+            accountsService.createAccount(new Account("Id-1", new BigDecimal(1000000000)));
+            notifications = new NotificationDispatcher((account, description) -> {
+            }, 10000, NotificationDispatcher.OverflowPolicy.DROP_OLDEST, 256);
+            TransactionService transactionService = new TransactionService(repository, notifications,
+                    new OrderedLockTransferEngine(), TransferJournal.NONE, new IdempotencyCache(100000, 600),
+                    new TransferMetrics(), new TransferLedger(0), new BalanceSnapshots(), ContentionPolicy.DEFAULT);
+            controller = new TransactionController(transactionService,
+                    new ClusterCoordinator(accountsService, transactionService), new ObjectMapper());
+        }
+
+        @TearDown
+        public void tearDown() throws InterruptedException {
+            notifications.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object transfer(Endpoint endpoint) {
+        // paired so the balances stay put however long the run
+        endpoint.controller.transfer("Id-0", "Id-1", endpoint.amount, null, "benchmark", null);
+        return endpoint.controller.transfer("Id-1", "Id-0", endpoint.amount, null, "benchmark", null);
+    }
+}
@@ -0,0 +1,362 @@
+package com.db.awmd.challenge;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of a running service over HTTP. It seeds its own accounts, then sends single transfers at a fixed
+ * rate whatever the response times (open loop), and finally checks that the seeded accounts still hold all
+ * their money.
+ * <p>
+ * Each request has an intended start time on the fixed schedule. The response time is measured from that
+ * intended time, so requests held back by slow earlier ones count their wait; this corrects the coordinated
+ * omission of a closed-loop client. The service time, from the actual send, is reported next to it.
+ * <p>
+ * Exits with status 1 if money was not conserved or a gate set by the options failed, so it can be used as a
+ * release gate. Run with {@code gradle loadTest -PloadTest.args="--rate 2000 --duration 60 --mix HOT_SPOT"}.
+ */
+public final class LoadTest {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final Options options;
+
+    private final String prefix = "load-" + Long.toHexString(System.currentTimeMillis()) + "-";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+    private final List<Histogram> responseTimes = new ArrayList<>();
+
+    private final List<Histogram> serviceTimes = new ArrayList<>();
+
+    private LoadTest(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        System.setProperty("http.maxConnections", String.valueOf(options.connections));
+        boolean passed = new LoadTest(options).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        System.out.printf("Seeding %d accounts %s* with balance %s on %s%n", options.accounts, prefix,
+                options.balance.toPlainString(), options.url);
+        seed();
+
+        System.out.printf("Sending %d transfers/s for %ds after %ds of warm-up, %s mix, %d connections%n",
+                options.rate, options.durationSeconds, options.warmupSeconds, options.mix, options.connections);
+        long elapsed = drive();
+
+        BigDecimal expected = options.balance.multiply(BigDecimal.valueOf(options.accounts));
+        BigDecimal total = total();
+        boolean conserved = total.compareTo(expected) == 0;
+        return report(elapsed, total, expected) & conserved;
+    }
+
+    private void seed() throws IOException {
+        HttpURLConnection connection = open("/v1/accounts/import", "POST");
+        connection.setRequestProperty("Content-Type", "application/x-ndjson");
+        connection.setChunkedStreamingMode(64 * 1024);
+        connection.setDoOutput(true);
+        try (Writer body = new BufferedWriter(
+                new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+            for (int i = 0; i < options.accounts; i++) {
+                body.write("{\"accountId\":\"" + accountId(i) + "\",\"balance\":" + options.balance.toPlainString()
+                        + "}\n");
+            }
+        }
+        try (InputStream response = connection.getInputStream()) {
+            JsonNode result = objectMapper.readTree(response);
+            if (result.get("created").asLong() != options.accounts) {
+                throw new IllegalStateException("Seeding failed: " + result);
+            }
+        }
+    }
+
+    /**
+     * Sends the transfers on the fixed schedule from a pool of connections.
+     *
+     * @return measured time, warm-up excluded, in nanoseconds
+     */
+    private long drive() throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        long warmup = (long) options.rate * options.warmupSeconds;
+        long total = warmup + (long) options.rate * options.durationSeconds;
+        AtomicLong next = new AtomicLong();
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+
+        List<Thread> workers = new ArrayList<>(options.connections);
+        for (int w = 0; w < options.connections; w++) {
+            Histogram responseTime = new Histogram(3);
+            Histogram serviceTime = new Histogram(3);
+            responseTimes.add(responseTime);
+            serviceTimes.add(serviceTime);
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int[] pair = new int[2];
+                for (long i = next.getAndIncrement(); i < total; i = next.getAndIncrement()) {
+                    long intended = start + i * intervalNanos;
+                    for (long now = System.nanoTime(); now < intended; now = System.nanoTime()) {
+                        LockSupport.parkNanos(intended - now);
+                    }
+                    options.mix.nextPair(random, options.accounts, options.hot, pair);
+                    long sent = System.nanoTime();
+                    String outcome = transfer(pair[0], pair[1], random.nextInt(1, options.maxAmountMinorUnits + 1));
+                    long done = System.nanoTime();
+                    if (i >= warmup) {
+                        responseTime.recordValue(done - intended);
+                        serviceTime.recordValue(done - sent);
+                        outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+                    }
+                }
+            }, "load-" + w);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - start - warmup * intervalNanos;
+    }
+
+    /**
+     * @return COMPLETED, INSUFFICIENT_FUNDS, BUSY (503), REJECTED (429), or ERROR with the status or exception
+     */
+    private String transfer(int from, int to, int minorUnits) {
+        String amount = BigDecimal.valueOf(minorUnits, 2).toPlainString();
+        try {
+            HttpURLConnection connection =
+                    open("/v1/transaction/transfer/" + accountId(from) + "/" + accountId(to) + "/" + amount, "POST");
+            int status = connection.getResponseCode();
+            String body = drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            switch (status) {
+                case 200:
+                    return "COMPLETED";
+                case 429:
+                    return "REJECTED";
+                case 503:
+                    return "BUSY";
+                case 500:
+                    if (body.contains("Insufficient funds")) {
+                        return "INSUFFICIENT_FUNDS";
+                    }
+                    return "ERROR 500";
+                default:
+                    return "ERROR " + status;
+            }
+        } catch (IOException e) {
+            return "ERROR " + e.getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * @return total balance of the seeded accounts, from a consistent export of each node
+     */
+    private BigDecimal total() throws IOException {
+        BigDecimal total = BigDecimal.ZERO;
+        int found = 0;
+        for (String node : options.nodes) {
+            HttpURLConnection connection = open(node, "/v1/accounts?consistent=true", "GET");
+            connection.setRequestProperty("Accept", "application/x-ndjson");
+            try (MappingIterator<JsonNode> accounts =
+                         objectMapper.readerFor(JsonNode.class).readValues(connection.getInputStream())) {
+                while (accounts.hasNextValue()) {
+                    JsonNode account = accounts.nextValue();
+                    if (account.get("accountId").asText().startsWith(prefix)) {
+                        total = total.add(account.get("balance").decimalValue());
+                        found++;
+                    }
+                }
+            }
+        }
+        if (found != options.accounts) {
+            System.out.printf("Found %d of the %d seeded accounts%n", found, options.accounts);
+        }
+        return total;
+    }
+
+    private boolean report(long elapsedNanos, BigDecimal total, BigDecimal expected) {
+        Histogram responseTime = merge(responseTimes);
+        Histogram serviceTime = merge(serviceTimes);
+        long requests = responseTime.getTotalCount();
+        System.out.printf("%nThroughput %.1f transfers/s of %d intended%n",
+                requests * 1e9 / Math.max(1, elapsedNanos), options.rate);
+        long errors = 0;
+        for (Map.Entry<String, LongAdder> outcome : new TreeMap<>(outcomes).entrySet()) {
+            long count = outcome.getValue().sum();
+            System.out.printf("  %-20s %10d  %6.2f%%%n", outcome.getKey(), count, 100.0 * count / requests);
+            if (outcome.getKey().startsWith("ERROR")) {
+                errors += count;
+            }
+        }
+        System.out.printf("%n%-10s %14s %14s%n", "Latency", "response (ms)", "service (ms)");
+        for (double percentile : PERCENTILES) {
+            System.out.printf("p%-9s %14.3f %14.3f%n", BigDecimal.valueOf(percentile).stripTrailingZeros()
+                    .toPlainString(), millis(responseTime.getValueAtPercentile(percentile)),
+                    millis(serviceTime.getValueAtPercentile(percentile)));
+        }
+        System.out.printf("%-10s %14.3f %14.3f%n", "max", millis(responseTime.getMaxValue()),
+                millis(serviceTime.getMaxValue()));
+
+        boolean passed = true;
+        System.out.printf("%nTotal balance %s, expected %s%n", total.toPlainString(), expected.toPlainString());
+        if (total.compareTo(expected) != 0) {
+            System.out.println("FAILED: money was not conserved");
+            passed = false;
+        }
+        double errorRate = (double) errors / Math.max(1, requests);
+        if (errorRate > options.maxErrorRate) {
+            System.out.printf("FAILED: error rate %.4f above %.4f%n", errorRate, options.maxErrorRate);
+            passed = false;
+        }
+        double p99 = millis(responseTime.getValueAtPercentile(99));
+        if (options.maxP99Millis > 0 && p99 > options.maxP99Millis) {
+            System.out.printf("FAILED: p99 response time %.3fms above %dms%n", p99, options.maxP99Millis);
+            passed = false;
+        }
+        return passed;
+    }
+
+    private HttpURLConnection open(String path, String method) throws IOException {
+        return open(options.url, path, method);
+    }
+
+    private HttpURLConnection open(String url, String path, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create(url + path).toURL().openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(options.timeoutMillis);
+        connection.setReadTimeout(options.timeoutMillis);
+        return connection;
+    }
+
+    private String accountId(int index) {
+        return prefix + index;
+    }
+
+    /**
+     * Reads the body to the end, so the connection goes back to the keep-alive pool.
+     */
+    private static String drain(InputStream body) throws IOException {
+        if (body == null) {
+            return "";
+        }
+        try (InputStream in = body) {
+            StringBuilder text = new StringBuilder();
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                text.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+            }
+            return text.toString();
+        }
+    }
+
+    private static Histogram merge(List<Histogram> histograms) {
+        Histogram merged = new Histogram(3);
+        histograms.forEach(merged::add);
+        return merged;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Command line options, each given as {@code --name value}.
+     */
+    static final class Options {
+
+        String url = "http://localhost:18080";
+
+        /**
+         * Base URLs of every node of a cluster, whose exports are summed for the money check; set with
+         * {@code --nodes url,url} and by default just the url.
+         */
+        String[] nodes;
+
+        int accounts = 1000;
+
+        BigDecimal balance = new BigDecimal(1000);
+
+        int rate = 500;
+
+        int durationSeconds = 30;
+
+        int warmupSeconds = 5;
+
+        int connections = 64;
+
+        TransferMix mix = TransferMix.UNIFORM;
+
+        int hot = 10;
+
+        /**
+         * Largest amount transferred, as minor units; set with {@code --max-amount 10.00}.
+         */
+        int maxAmountMinorUnits = 1000;
+
+        int timeoutMillis = 30000;
+
+        double maxErrorRate = 0;
+
+        long maxP99Millis = 0;
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new LinkedHashMap<>();
+            for (int i = 0; i < args.length; i += 2) {
+                if (!args[i].startsWith("--") || i + 1 == args.length) {
+                    throw new IllegalArgumentException("Expected --name value pairs, got " + args[i]);
+                }
+                values.put(args[i].substring(2), args[i + 1]);
+            }
+            Options options = new Options();
+            options.url = values.getOrDefault("url", options.url);
+            options.nodes = values.getOrDefault("nodes", options.url).split(",");
+            options.accounts = Integer.parseInt(values.getOrDefault("accounts", "" + options.accounts));
+            options.balance = new BigDecimal(values.getOrDefault("balance", options.balance.toPlainString()));
+            options.rate = Integer.parseInt(values.getOrDefault("rate", "" + options.rate));
+            options.durationSeconds = Integer.parseInt(values.getOrDefault("duration", "" + options.durationSeconds));
+            options.warmupSeconds = Integer.parseInt(values.getOrDefault("warmup", "" + options.warmupSeconds));
+            options.connections = Integer.parseInt(values.getOrDefault("connections", "" + options.connections));
+            options.mix = TransferMix.valueOf(values.getOrDefault("mix", options.mix.name()));
+            options.hot = Integer.parseInt(values.getOrDefault("hot", "" + options.hot));
+            if (values.containsKey("max-amount")) {
+                options.maxAmountMinorUnits = new BigDecimal(values.get("max-amount")).movePointRight(2)
+                        .intValueExact();
+            }
+            options.timeoutMillis = Integer.parseInt(values.getOrDefault("timeout-ms", "" + options.timeoutMillis));
+            options.maxErrorRate = Double.parseDouble(values.getOrDefault("max-error-rate", "" + options.maxErrorRate));
+            options.maxP99Millis = Long.parseLong(values.getOrDefault("max-p99-ms", "" + options.maxP99Millis));
+            if (options.accounts < 2 || options.rate < 1 || options.connections < 1) {
+                throw new IllegalArgumentException("Need at least 2 accounts, a rate and a connection");
+            }
+            return options;
+        }
+    }
+}
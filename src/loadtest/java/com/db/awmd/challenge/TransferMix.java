@@ -0,0 +1,65 @@
+package com.db.awmd.challenge;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How the load test picks the accounts of each transfer.
+ */
+enum TransferMix {
+
+    /**
+     * Any two distinct accounts.
+     */
+    UNIFORM {
+        @Override
+        void nextPair(ThreadLocalRandom random, int accounts, int hot, int[] pair) {
+            pair[0] = random.nextInt(accounts);
+            pair[1] = other(random, accounts, pair[0]);
+        }
+    },
+
+    /**
+     * Nine transfers in ten have a side among the first {@code hot} accounts, like a few merchants receiving
+     * payments from everyone.
+     */
+    HOT_SPOT {
+        @Override
+        void nextPair(ThreadLocalRandom random, int accounts, int hot, int[] pair) {
+            if (random.nextInt(10) == 0) {
+                UNIFORM.nextPair(random, accounts, hot, pair);
+                return;
+            }
+            int hotAccount = random.nextInt(Math.min(hot, accounts));
+            int other = other(random, accounts, hotAccount);
+            boolean debitHot = random.nextBoolean();
+            pair[0] = debitHot ? hotAccount : other;
+            pair[1] = debitHot ? other : hotAccount;
+        }
+    },
+
+    /**
+     * Transfers back and forth within {@code hot} fixed pairs of accounts, so that opposing transfers on the same
+     * two accounts meet all the time.
+     */
+    OPPOSING_PAIRS {
+        @Override
+        void nextPair(ThreadLocalRandom random, int accounts, int hot, int[] pair) {
+            int first = 2 * random.nextInt(Math.max(1, Math.min(hot, accounts / 2)));
+            boolean forward = random.nextBoolean();
+            pair[0] = forward ? first : first + 1;
+            pair[1] = forward ? first + 1 : first;
+        }
+    };
+
+    /**
+     * @param accounts Number of seeded accounts, at least 2
+     * @param hot      Hot accounts of {@link #HOT_SPOT}, pairs of {@link #OPPOSING_PAIRS}
+     * @param pair     Receives the debit and credit account indexes
+     */
+    abstract void nextPair(ThreadLocalRandom random, int accounts, int hot, int[] pair);
+
+    private static int other(ThreadLocalRandom random, int accounts, int account) {
+        int other = random.nextInt(accounts - 1);
+        return other >= account ? other + 1 : other;
+    }
+}
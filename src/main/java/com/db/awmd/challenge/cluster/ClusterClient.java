@@ -0,0 +1,161 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountBusyException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.RateLimitedException;
+import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.web.TransactionController;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+
+/**
+ * Calls to the other nodes of the cluster. Errors answered by a node are turned back into the exceptions that
+ * caused them, so they reach the client as if the request had been handled locally; a node that cannot be
+ * reached shows as {@link AccountBusyException}.
+ */
+@Component
+@Slf4j
+public class ClusterClient {
+
+    private final ClusterTopology topology;
+
+    private final RestTemplate restTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public ClusterClient(ClusterTopology topology, RestTemplateBuilder restTemplateBuilder, ObjectMapper objectMapper,
+                         @Value("${challenge.cluster.timeout-ms:5000}") int timeoutMillis) {
+        this.topology = topology;
+        this.restTemplate = restTemplateBuilder.setConnectTimeout(Duration.ofMillis(timeoutMillis))
+                .setReadTimeout(Duration.ofMillis(timeoutMillis)).build();
+        this.objectMapper = objectMapper;
+    }
+
+    public void createAccount(int node, Account account) {
+        try {
+            restTemplate.postForEntity(topology.urlOf(node) + "/v1/accounts", account, Void.class);
+        } catch (HttpStatusCodeException e) {
+            if (e.getStatusCode() == HttpStatus.BAD_REQUEST) {
+                throw new DuplicateAccountIdException(e.getResponseBodyAsString());
+            }
+            throw rethrow(node, e);
+        } catch (RestClientException e) {
+            throw unreachable(node, e);
+        }
+    }
+
+    /**
+     * @return the account, or null if the node does not have it
+     */
+    public Account getAccount(int node, String accountId) {
+        try {
+            return restTemplate.getForObject(topology.urlOf(node) + "/v1/accounts/{accountId}", Account.class,
+                    accountId);
+        } catch (HttpStatusCodeException e) {
+            throw rethrow(node, e);
+        } catch (RestClientException e) {
+            throw unreachable(node, e);
+        }
+    }
+
+    /**
+     * Hands a transfer between two accounts of the node over to it.
+     */
+    public void transfer(int node, String idempotencyKey, String clientId, String fromAccountId, String toAccountId,
+                         BigDecimal amount) {
+        HttpHeaders headers = new HttpHeaders();
+        if (idempotencyKey != null) {
+            headers.set(TransactionController.IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        }
+        if (clientId != null) {
+            headers.set(TransactionController.CLIENT_ID_HEADER, clientId);
+        }
+        try {
+            restTemplate.exchange(topology.urlOf(node) + "/v1/transaction/transfer/{from}/{to}/{amount}",
+                    HttpMethod.POST, new HttpEntity<>(headers), Void.class, fromAccountId, toAccountId,
+                    amount.toPlainString());
+        } catch (HttpStatusCodeException e) {
+            throw rethrow(node, e);
+        } catch (RestClientException e) {
+            throw unreachable(node, e);
+        }
+    }
+
+    /**
+     * @throws RestClientException if the node could not be reached, in which case the leg may or may not be
+     *                             prepared
+     */
+    public TransferStatus prepare(int node, String transferId, TransferLeg leg) {
+        return restTemplate.postForObject(topology.urlOf(node) + "/v1/cluster/transfers/{transferId}/prepare", leg,
+                TransferStatus.class, transferId);
+    }
+
+    /**
+     * @throws RestClientException if the decision could not be delivered
+     */
+    public void decide(int node, String transferId, boolean commit) {
+        restTemplate.postForEntity(topology.urlOf(node) + "/v1/cluster/transfers/{transferId}/{decision}", null,
+                Void.class, transferId, commit ? "commit" : "abort");
+    }
+
+    private RuntimeException rethrow(int node, HttpStatusCodeException e) {
+        String message = messageOf(e);
+        HttpStatus status = HttpStatus.resolve(e.getStatusCode().value());
+        switch (status != null ? status : HttpStatus.INTERNAL_SERVER_ERROR) {
+            case BAD_REQUEST:
+                return new ValidationException(message);
+            case CONFLICT:
+                return new IdempotencyKeyReusedException(message);
+            case SERVICE_UNAVAILABLE:
+                return new AccountBusyException(message);
+            case TOO_MANY_REQUESTS:
+                return new RateLimitedException(message);
+            default:
+                if (message.startsWith("Insufficient funds")) {
+                    return new InsufficientFundsException(message);
+                }
+                return new IllegalStateException("Node " + node + " failed: " + message, e);
+        }
+    }
+
+    private static AccountBusyException unreachable(int node, RestClientException e) {
+        log.warn("Node {} is unreachable: {}", node, e.getMessage());
+        return new AccountBusyException("Node " + node + " is unreachable, try again later");
+    }
+
+    /**
+     * @return the message of the error answered by a node, or its whole body if it is not an error document
+     */
+    private String messageOf(HttpStatusCodeException e) {
+        String body = e.getResponseBodyAsString();
+        try {
+            JsonNode error = objectMapper.readTree(body);
+            JsonNode message = error == null ? null : error.get("message");
+            return message != null ? message.asText() : body;
+        } catch (IOException notJson) {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountBusyException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.RateLimitedException;
+import com.db.awmd.challenge.exception.TransferNotDurableException;
+import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import com.db.awmd.challenge.service.TransactionService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Routes account requests to the node owning the account, see {@link ClusterTopology}, and coordinates
+ * transfers between accounts owned by different nodes.
+ * <p>
+ * A transfer between two accounts of one node is applied by that node alone. Otherwise the coordinator, on
+ * whichever node received the request, runs a two-phase commit: it prepares the debit leg, which holds the money,
+ * then the credit leg; if both are prepared it commits both, otherwise it aborts the prepared one. See
+ * {@link TransferParticipant} for the local side.
+ * <p>
+ * Decisions are kept in memory only: if the coordinator fails between the phases, the prepared legs stay in doubt
+ * on their nodes until committed or aborted by hand.
+ * <p>
+ * Multi-leg transfers and account handles are not routed: they only apply to accounts stored on the node receiving
+ * them, and naming another node's account is rejected.
+ */
+@Service
+@Slf4j
+public class ClusterCoordinator {
+
+    private static final int DECISION_ATTEMPTS = 3;
+
+    private final ClusterTopology topology;
+
+    private final ClusterClient clusterClient;
+
+    private final TransferParticipant participant;
+
+    private final AccountsService accountsService;
+
+    private final TransactionService transactionService;
+
+    private final IdempotencyCache idempotencyCache;
+
+    private final TransferMetrics transferMetrics;
+
+    /**
+     * Coordinator of a single node, applying everything locally.
+     */
+    public ClusterCoordinator(AccountsService accountsService, TransactionService transactionService) {
+        this(new ClusterTopology(false, new String[0], 0, 0), null, null, accountsService, transactionService,
+                null, null);
+    }
+
+    @Autowired
+    public ClusterCoordinator(ClusterTopology topology, ClusterClient clusterClient, TransferParticipant participant,
+                              AccountsService accountsService, TransactionService transactionService,
+                              IdempotencyCache idempotencyCache, TransferMetrics transferMetrics) {
+        this.topology = topology;
+        this.clusterClient = clusterClient;
+        this.participant = participant;
+        this.accountsService = accountsService;
+        this.transactionService = transactionService;
+        this.idempotencyCache = idempotencyCache;
+        this.transferMetrics = transferMetrics;
+    }
+
+    public void createAccount(Account account) {
+        int owner = topology.ownerOf(account.getAccountId());
+        if (owner == topology.getSelf()) {
+            accountsService.createAccount(account);
+        } else {
+            clusterClient.createAccount(owner, account);
+        }
+    }
+
+    /**
+     * @return true if the account is stored on this node; a null id counts as local, to be rejected there
+     */
+    public boolean isLocal(String accountId) {
+        return accountId == null || topology.ownerOf(accountId) == topology.getSelf();
+    }
+
+    /**
+     * @param context Prefix of the message if the account is not stored on this node
+     * @throws ValidationException if the account is stored on another node
+     */
+    public void checkLocal(String accountId, String context) {
+        int owner = topology.ownerOf(accountId);
+        if (owner != topology.getSelf()) {
+            throw new ValidationException(context + "Account " + accountId + " is stored on node " + owner
+                    + ", send the request to " + topology.urlOf(owner));
+        }
+    }
+
+    public Account getAccount(String accountId) {
+        int owner = topology.ownerOf(accountId);
+        return owner == topology.getSelf() ? accountsService.getAccount(accountId)
+                : clusterClient.getAccount(owner, accountId);
+    }
+
+    /**
+     * Transfers between accounts wherever they live, at most once per idempotency key.
+     *
+     * @param idempotencyKey Key chosen by the client for this transfer, or null to always transfer
+     * @param clientId       Client sending the transfer, passed on with a transfer handed over to another node
+     * @param fromAccountId  From Account id
+     * @param toAccountId    To Account id
+     * @param amount         Amount to be transferred
+     */
+    public void transfer(String idempotencyKey, String clientId, String fromAccountId, String toAccountId,
+                         BigDecimal amount)
+            throws InterruptedException {
+        int debitNode = topology.ownerOf(fromAccountId);
+        int creditNode = topology.ownerOf(toAccountId);
+        if (debitNode == creditNode) {
+            if (debitNode == topology.getSelf()) {
+                transactionService.transfer(idempotencyKey, fromAccountId, toAccountId, amount);
+            } else {
+                clusterClient.transfer(debitNode, idempotencyKey, clientId, fromAccountId, toAccountId, amount);
+            }
+            return;
+        }
+        if (idempotencyKey == null) {
+            transferAcrossNodes(debitNode, creditNode, fromAccountId, toAccountId, amount);
+            return;
+        }
+        idempotencyCache.run(idempotencyKey, fromAccountId, toAccountId, amount,
+                () -> transferAcrossNodes(debitNode, creditNode, fromAccountId, toAccountId, amount));
+    }
+
+    /**
+     * Applies a batch of transfers. The transfers between accounts of this node are applied together, see
+     * {@link TransactionService#transferBatch}; the others are routed one by one like single transfers, their
+     * failure becoming their status.
+     *
+     * @param clientId Client sending the batch, passed on with a transfer handed over to another node
+     * @param requests Transfers to be applied, in order
+     * @return the result of each transfer, in request order
+     */
+    public List<TransferResult> transferBatch(String clientId, List<TransferRequest> requests)
+            throws InterruptedException {
+        List<TransferRequest> local = new ArrayList<>(requests.size());
+        for (TransferRequest request : requests) {
+            if (isLocal(request)) {
+                local.add(request);
+            }
+        }
+        if (local.size() == requests.size()) {
+            return transactionService.transferBatch(requests);
+        }
+        List<TransferResult> localResults = transactionService.transferBatch(local);
+        List<TransferResult> results = new ArrayList<>(requests.size());
+        int next = 0;
+        for (TransferRequest request : requests) {
+            results.add(isLocal(request) ? localResults.get(next++)
+                    : new TransferResult(request, transferRouted(clientId, request)));
+        }
+        return results;
+    }
+
+    /**
+     * Applies a multi-leg transfer between accounts of this node, see {@link TransactionService#transferAtomically}.
+     *
+     * @throws ValidationException if a leg names an account stored on another node
+     */
+    public List<TransferResult> transferAtomically(List<TransferRequest> legs) throws InterruptedException {
+        for (int i = 0; i < legs.size(); i++) {
+            TransferRequest leg = legs.get(i);
+            if (!isLocal(leg)) {
+                checkLocal(isLocal(leg.getFromAccountId()) ? leg.getToAccountId() : leg.getFromAccountId(),
+                        "Leg " + (i + 1) + ": ");
+            }
+        }
+        return transactionService.transferAtomically(legs);
+    }
+
+    private boolean isLocal(TransferRequest request) {
+        return isLocal(request.getFromAccountId()) && isLocal(request.getToAccountId());
+    }
+
+    private TransferStatus transferRouted(String clientId, TransferRequest request) throws InterruptedException {
+        if (request.getAmount() == null || request.getAmount().signum() <= 0) {
+            return TransferStatus.INVALID_AMOUNT;
+        }
+        try {
+            transfer(null, clientId, request.getFromAccountId(), request.getToAccountId(), request.getAmount());
+            return TransferStatus.COMPLETED;
+        } catch (InsufficientFundsException e) {
+            return TransferStatus.INSUFFICIENT_FUNDS;
+        } catch (AccountBusyException e) {
+            return TransferStatus.BUSY;
+        } catch (RateLimitedException e) {
+            return TransferStatus.RATE_LIMITED;
+        } catch (TransferNotDurableException e) {
+            return TransferStatus.NOT_DURABLE;
+        } catch (ValidationException e) {
+            return TransferStatus.ACCOUNT_NOT_FOUND;
+        }
+    }
+
+    private void transferAcrossNodes(int debitNode, int creditNode, String fromAccountId, String toAccountId,
+                                     BigDecimal amount) throws InterruptedException {
+        long start = System.nanoTime();
+        TransferStatus status = null;
+        try {
+            if (amount.signum() <= 0) {
+                status = TransferStatus.INVALID_AMOUNT;
+                throw new ValidationException("Amount should be greater than 0");
+            }
+            String transferId = UUID.randomUUID().toString();
+            status = prepare(debitNode, transferId, new TransferLeg(fromAccountId, toAccountId, amount, true));
+            if (status == TransferStatus.COMPLETED) {
+                status = prepare(creditNode, transferId, new TransferLeg(toAccountId, fromAccountId, amount, false));
+                if (status != TransferStatus.COMPLETED) {
+                    decide(debitNode, transferId, false);
+                }
+            }
+            if (status != TransferStatus.COMPLETED) {
+                throw failure(status);
+            }
+            decide(creditNode, transferId, true);
+            decide(debitNode, transferId, true);
+            log.debug("Transferred from node {} to node {} as {}", debitNode, creditNode, transferId);
+        } finally {
+            transferMetrics.recordTransfer(status, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return {@link TransferStatus#COMPLETED} if the leg is prepared. A node that cannot be reached is told to
+     * abort, in case the leg got prepared anyway, and counts as busy.
+     */
+    private TransferStatus prepare(int node, String transferId, TransferLeg leg) throws InterruptedException {
+        if (node == topology.getSelf()) {
+            return participant.prepare(transferId, leg);
+        }
+        try {
+            return clusterClient.prepare(node, transferId, leg);
+        } catch (RestClientException e) {
+            log.warn("Failed to prepare transfer {} on node {}: {}", transferId, node, e.getMessage());
+            decide(node, transferId, false);
+            return TransferStatus.BUSY;
+        }
+    }
+
+    /**
+     * Delivers the decision, retrying a few times. If it still cannot be delivered, the leg is left in doubt on
+     * its node.
+     */
+    private void decide(int node, String transferId, boolean commit) throws InterruptedException {
+        for (int attempt = 1; attempt <= DECISION_ATTEMPTS; attempt++) {
+            try {
+                if (node == topology.getSelf()) {
+                    if (commit) {
+                        participant.commit(transferId);
+                    } else {
+                        participant.abort(transferId);
+                    }
+                } else {
+                    clusterClient.decide(node, transferId, commit);
+                }
+                return;
+            } catch (RestClientException | AccountBusyException e) {
+                log.warn("Attempt {} to {} transfer {} on node {} failed: {}", attempt, commit ? "commit" : "abort",
+                        transferId, node, e.getMessage());
+            }
+        }
+        log.error("Transfer {} is left in doubt on node {}, to be {} by hand", transferId, node,
+                commit ? "committed" : "aborted");
+    }
+
+    private static RuntimeException failure(TransferStatus status) {
+        switch (status) {
+            case INSUFFICIENT_FUNDS:
+                return new InsufficientFundsException("Insufficient funds");
+            case ACCOUNT_NOT_FOUND:
+                return new ValidationException("Account not found");
+            case INVALID_AMOUNT:
+                return new ValidationException("Invalid amount");
+            default:
+                return new AccountBusyException("Accounts are busy, try again later");
+        }
+    }
+}
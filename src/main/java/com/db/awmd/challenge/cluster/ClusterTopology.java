@@ -0,0 +1,116 @@
+package com.db.awmd.challenge.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Nodes of the cluster and the consistent hash ring assigning each account id to one of them.
+ * <p>
+ * Each node is placed on the ring at a number of virtual points, hashed from its URL; an account belongs to the
+ * node of the first point at or after the hash of its id. Adding a node only moves the accounts falling just
+ * before its points. When the cluster is disabled there is a single node, this one, owning every account.
+ */
+@Component
+@Slf4j
+public class ClusterTopology {
+
+    private final List<String> nodes;
+
+    private final int self;
+
+    private final long[] points;
+
+    private final int[] owners;
+
+    /**
+     * @param enabled       Whether accounts are spread over several nodes
+     * @param nodes         Base URLs of all nodes, in the same order on every node
+     * @param self          Index of this node in the list
+     * @param virtualNodes  Points of each node on the ring
+     */
+    public ClusterTopology(@Value("${challenge.cluster.enabled:false}") boolean enabled,
+                           @Value("${challenge.cluster.nodes:}") String[] nodes,
+                           @Value("${challenge.cluster.self:0}") int self,
+                           @Value("${challenge.cluster.virtual-nodes:128}") int virtualNodes) {
+        if (!enabled || nodes.length == 0) {
+            this.nodes = Arrays.asList("");
+            this.self = 0;
+            this.points = new long[]{0};
+            this.owners = new int[]{0};
+            return;
+        }
+        if (self < 0 || self >= nodes.length) {
+            throw new IllegalArgumentException("Node index " + self + " is not one of the " + nodes.length + " nodes");
+        }
+        this.nodes = Arrays.asList(nodes.clone());
+        this.self = self;
+        int count = nodes.length * virtualNodes;
+        long[][] ring = new long[count][];
+        for (int node = 0; node < nodes.length; node++) {
+            for (int point = 0; point < virtualNodes; point++) {
+                ring[node * virtualNodes + point] = new long[]{hash(nodes[node].trim() + "#" + point), node};
+            }
+        }
+        Arrays.sort(ring, (a, b) -> Long.compare(a[0], b[0]));
+        this.points = new long[count];
+        this.owners = new int[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = ring[i][0];
+            owners[i] = (int) ring[i][1];
+        }
+        log.info("Node {} of {} at {}", self, nodes.length, this.nodes.get(self));
+    }
+
+    /**
+     * @return index of the node owning the account
+     */
+    public int ownerOf(String accountId) {
+        if (owners.length == 1) {
+            return owners[0];
+        }
+        int index = Arrays.binarySearch(points, hash(accountId));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public boolean isLocal(String accountId) {
+        return ownerOf(accountId) == self;
+    }
+
+    public int getSelf() {
+        return self;
+    }
+
+    /**
+     * @return base URL of the node
+     */
+    public String urlOf(int node) {
+        return nodes.get(node).trim();
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * 64 bit FNV-1a over the UTF-8 bytes, with a final mix so that close inputs land far apart on the ring.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
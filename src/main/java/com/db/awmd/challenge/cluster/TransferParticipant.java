@@ -0,0 +1,260 @@
+package com.db.awmd.challenge.cluster;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountBusyException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.journal.JournalRecord;
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.ledger.TransferLedger;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.BalanceSnapshots;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.TransferEngine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Local side of transfers between accounts owned by different nodes, driven by a
+ * {@link ClusterCoordinator} through two phases.
+ * <p>
+ * Preparing a debit leg debits the account right away, so the money is held until the transfer is committed, or
+ * refunded if it is aborted. Preparing a credit leg only checks the account; the account is credited on commit.
+ * Once prepared, a leg waits for the decision of the coordinator: it is never aborted on its own, as the other
+ * leg may already be committed. Legs left waiting by a failed coordinator are listed by {@link #inDoubt()}.
+ * <p>
+ * Commit and abort are idempotent, so the coordinator can repeat them until they get through. An abort is also
+ * remembered for a while, so that a prepare delayed past it, e.g. one whose call timed out at the coordinator, is
+ * refused instead of holding money that no decision will ever release.
+ * <p>
+ * Each debit and credit applied is journaled as a transfer between the local account and its counterparty. The
+ * counterparty is not created on this node, so on replay only the local account's side of it is restored.
+ */
+@Component
+@Slf4j
+public class TransferParticipant {
+
+    private final AccountsRepository accountsRepository;
+
+    private final TransferEngine transferEngine;
+
+    private final BalanceSnapshots balanceSnapshots;
+
+    private final TransferLedger transferLedger;
+
+    private final NotificationService notificationService;
+
+    private final TransferJournal transferJournal;
+
+    private final long abortRetentionMillis;
+
+    private final Map<String, PreparedLeg> prepared = new ConcurrentHashMap<>();
+
+    /**
+     * Ids of the aborted transfers, with when they were aborted.
+     */
+    private final Map<String, Long> aborted = new ConcurrentHashMap<>();
+
+    /**
+     * Ids of the aborted transfers in the order they were aborted, to drop them once old enough.
+     */
+    private final Queue<String> abortOrder = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param abortRetentionMillis Time an abort is remembered, refusing a prepare of the same transfer
+     */
+    @Autowired
+    public TransferParticipant(AccountsRepository accountsRepository, TransferEngine transferEngine,
+                               BalanceSnapshots balanceSnapshots, TransferLedger transferLedger,
+                               NotificationService notificationService, TransferJournal transferJournal,
+                               @Value("${challenge.cluster.abort-retention-ms:600000}") long abortRetentionMillis) {
+        this.accountsRepository = accountsRepository;
+        this.transferEngine = transferEngine;
+        this.balanceSnapshots = balanceSnapshots;
+        this.transferLedger = transferLedger;
+        this.notificationService = notificationService;
+        this.transferJournal = transferJournal;
+        this.abortRetentionMillis = abortRetentionMillis;
+    }
+
+    /**
+     * @param transferId Id of the transfer, chosen by the coordinator
+     * @param leg        Leg whose account is owned by this node
+     * @return {@link TransferStatus#COMPLETED} if the leg is prepared, otherwise why it cannot be;
+     * {@link TransferStatus#BUSY} if the transfer has been aborted already
+     */
+    public TransferStatus prepare(String transferId, TransferLeg leg) throws InterruptedException {
+        if (prepared.containsKey(transferId)) {
+            return TransferStatus.COMPLETED;
+        }
+        if (aborted.containsKey(transferId)) {
+            log.warn("Refused prepare of aborted transfer {}", transferId);
+            return TransferStatus.BUSY;
+        }
+        Account account = accountsRepository.getAccount(leg.getAccountId());
+        if (account == null) {
+            return TransferStatus.ACCOUNT_NOT_FOUND;
+        }
+        if (leg.getAmount() == null || leg.getAmount().signum() <= 0) {
+            return TransferStatus.INVALID_AMOUNT;
+        }
+        if (leg.isDebit()) {
+            try {
+                apply(account, leg.getAmount(), true);
+            } catch (InsufficientFundsException e) {
+                return TransferStatus.INSUFFICIENT_FUNDS;
+            } catch (AccountBusyException e) {
+                return TransferStatus.BUSY;
+            } catch (ValidationException e) {
+                return TransferStatus.INVALID_AMOUNT;
+            }
+        }
+        PreparedLeg preparedLeg = new PreparedLeg(account, leg, System.currentTimeMillis());
+        prepared.put(transferId, preparedLeg);
+        if (leg.isDebit()) {
+            journal(leg.getAccountId(), leg.getCounterpartyId(), leg.getAmount());
+        }
+        // an abort that came in meanwhile found nothing to refund, so whichever of the two takes the leg back does
+        if (aborted.containsKey(transferId) && prepared.remove(transferId, preparedLeg)) {
+            if (leg.isDebit()) {
+                settle(transferId, preparedLeg);
+            }
+            log.warn("Refused prepare of transfer {} aborted while preparing", transferId);
+            return TransferStatus.BUSY;
+        }
+        log.debug("Prepared {} of transfer {}", leg.isDebit() ? "debit" : "credit", transferId);
+        return TransferStatus.COMPLETED;
+    }
+
+    /**
+     * Completes the prepared leg of the transfer, if any: credits a credit leg and keeps the money of a debit leg.
+     */
+    public void commit(String transferId) throws InterruptedException {
+        PreparedLeg leg = prepared.remove(transferId);
+        if (leg == null) {
+            return;
+        }
+        if (!leg.leg.isDebit()) {
+            settle(transferId, leg);
+        }
+        TransferLeg parts = leg.leg;
+        Account counterparty = new Account(parts.getCounterpartyId());
+        if (parts.isDebit()) {
+            transferLedger.record(parts.getAccountId(), parts.getCounterpartyId(), parts.getAmount());
+        } else {
+            transferLedger.record(parts.getCounterpartyId(), parts.getAccountId(), parts.getAmount());
+        }
+        notificationService.notifyAboutTransfer(leg.account, counterparty, parts.getAmount(), parts.isDebit());
+    }
+
+    /**
+     * Drops the prepared leg of the transfer, if any, refunding a debit leg, and refuses any later prepare of it.
+     */
+    public void abort(String transferId) throws InterruptedException {
+        rememberAbort(transferId);
+        PreparedLeg leg = prepared.remove(transferId);
+        if (leg == null) {
+            return;
+        }
+        if (leg.leg.isDebit()) {
+            settle(transferId, leg);
+        }
+        log.info("Aborted {} of transfer {}", leg.leg.isDebit() ? "debit" : "credit", transferId);
+    }
+
+    /**
+     * @return the legs prepared and still waiting for a decision, with their transfer id and age
+     */
+    public List<Map<String, Object>> inDoubt() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> legs = new ArrayList<>();
+        prepared.forEach((transferId, leg) -> {
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("transferId", transferId);
+            description.put("leg", leg.leg);
+            description.put("ageMillis", now - leg.preparedAt);
+            legs.add(description);
+        });
+        return legs;
+    }
+
+    /**
+     * Drops the aborts older than the retention time and remembers this one.
+     */
+    private void rememberAbort(String transferId) {
+        long now = System.currentTimeMillis();
+        for (String oldest = abortOrder.peek(); oldest != null; oldest = abortOrder.peek()) {
+            Long abortedAt = aborted.get(oldest);
+            if (abortedAt != null && now - abortedAt < abortRetentionMillis) {
+                break;
+            }
+            if (abortOrder.remove(oldest) && abortedAt != null) {
+                aborted.remove(oldest, abortedAt);
+            }
+        }
+        if (aborted.putIfAbsent(transferId, now) == null) {
+            abortOrder.add(transferId);
+        }
+    }
+
+    /**
+     * Credits the account of the leg on commit of a credit leg, or refunds it on abort of a debit leg. The leg has
+     * been taken off the prepared ones so that it is credited only once; if it cannot be credited now, it is put
+     * back for the decision to be repeated.
+     */
+    private void settle(String transferId, PreparedLeg leg) throws InterruptedException {
+        try {
+            apply(leg.account, leg.leg.getAmount(), false);
+        } catch (InterruptedException | RuntimeException e) {
+            prepared.put(transferId, leg);
+            throw e;
+        }
+        journal(leg.leg.getCounterpartyId(), leg.leg.getAccountId(), leg.leg.getAmount());
+    }
+
+    private void journal(String fromAccountId, String toAccountId, BigDecimal amount) throws InterruptedException {
+        transferJournal.write(JournalRecord.transferred(fromAccountId, toAccountId, amount));
+    }
+
+    private void apply(Account account, BigDecimal amount, boolean debit) throws InterruptedException {
+        long epoch = balanceSnapshots.enter();
+        try {
+            balanceSnapshots.capture(epoch, account);
+            if (debit) {
+                transferEngine.debit(account, amount);
+            } else {
+                transferEngine.credit(account, amount);
+            }
+        } finally {
+            balanceSnapshots.exit(epoch);
+        }
+    }
+
+    private static final class PreparedLeg {
+
+        private final Account account;
+
+        private final TransferLeg leg;
+
+        private final long preparedAt;
+
+        private PreparedLeg(Account account, TransferLeg leg, long preparedAt) {
+            this.account = account;
+            this.leg = leg;
+            this.preparedAt = preparedAt;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.db.awmd.challenge.domain;
 
+import com.db.awmd.challenge.exception.AccountBusyException;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -8,32 +9,42 @@ import java.math.BigDecimal;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
-import javax.validation.constraints.Min;
-import javax.validation.constraints.NotNull;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
-import org.hibernate.validator.constraints.NotEmpty;
 
 @Data
 @Slf4j
 public class Account {
 
+    /**
+     * Time {@link #debit(BigDecimal)} and {@link #credit(BigDecimal)} wait for the account lock.
+     */
+    public static final long LOCK_TIMEOUT_MILLIS = 10000;
+
     @NotNull
     @NotEmpty
     private final String accountId;
 
     @NotNull
     @Min(value = 0, message = "Initial balance must be positive.")
-    private BigDecimal balance;
+    private volatile BigDecimal balance;
 
     @JsonIgnore
-    private final transient Lock lock = new ReentrantLock();
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final Lock lock;
 
     public Account(String accountId) {
         this.accountId = accountId;
         this.balance = BigDecimal.ZERO;
+        this.lock = new ReentrantLock();
     }
 
     @JsonCreator
@@ -41,38 +52,125 @@ public class Account {
                    @JsonProperty("balance") BigDecimal balance) {
         this.accountId = accountId;
         this.balance = balance;
+        this.lock = new ReentrantLock();
+    }
+
+    /**
+     * For accounts whose balance is stored elsewhere and guarded by a lock shared with other accounts.
+     */
+    protected Account(String accountId, Lock lock) {
+        this.accountId = accountId;
+        this.balance = BigDecimal.ZERO;
+        this.lock = lock;
+    }
+
+    /**
+     * @return rank of {@link #getLock()} in the global lock order; accounts sharing a lock share a rank, and
+     * accounts of equal rank are ordered by id
+     */
+    @JsonIgnore
+    public int getLockRank() {
+        return 0;
     }
 
+    /**
+     * @return true if {@link #applyDebit(BigDecimal)} and {@link #applyCredit(BigDecimal)} are atomic on their own
+     * and do not need the account lock
+     */
+    @JsonIgnore
+    public boolean isLockFree() {
+        return false;
+    }
+
+    /**
+     * @return true if {@link #applyCredit(BigDecimal)} is atomic on its own and does not need the account lock,
+     * even though {@link #applyDebit(BigDecimal)} does
+     */
+    @JsonIgnore
+    public boolean isLockFreeCredit() {
+        return isLockFree();
+    }
+
+    /**
+     * Debits the amount under the account lock, waiting for the lock up to {@link #LOCK_TIMEOUT_MILLIS}.
+     *
+     * @return true if the balance was debited, false on insufficient funds
+     * @throws AccountBusyException if the lock could not be acquired in time
+     */
     public boolean debit(BigDecimal amount) throws InterruptedException {
+        return debit(amount, LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Debits the amount under the account lock.
+     *
+     * @param timeout Time to wait for the lock
+     * @return true if the balance was debited, false on insufficient funds
+     * @throws AccountBusyException if the lock could not be acquired in time
+     */
+    public boolean debit(BigDecimal amount, long timeout, TimeUnit unit) throws InterruptedException {
+        acquireLock(timeout, unit);
         try {
-            if (lock.tryLock(100, TimeUnit.MILLISECONDS)) {
-                try {
-                    if (this.balance.compareTo(amount) >= 0) {
-                        this.balance = this.balance.subtract(amount);
-                        return true;
-                    }
-                } finally {
-                    lock.unlock();
-                }
-            }
-        } catch (InterruptedException e) {
-            log.error("Some exception happened during debit ", e.getMessage());
-            throw e;
+            return applyDebit(amount);
+        } finally {
+            lock.unlock();
         }
-        return false;
     }
 
+    /**
+     * Credits the amount under the account lock, waiting for the lock up to {@link #LOCK_TIMEOUT_MILLIS}.
+     *
+     * @return true once the balance is credited
+     * @throws AccountBusyException if the lock could not be acquired in time
+     */
     public boolean credit(BigDecimal amount) throws InterruptedException {
+        return credit(amount, LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Credits the amount under the account lock.
+     *
+     * @param timeout Time to wait for the lock
+     * @return true once the balance is credited
+     * @throws AccountBusyException if the lock could not be acquired in time
+     */
+    public boolean credit(BigDecimal amount, long timeout, TimeUnit unit) throws InterruptedException {
+        acquireLock(timeout, unit);
         try {
-            if (lock.tryLock(10000, TimeUnit.MILLISECONDS)) {
-                this.balance = this.balance.add(amount);
-            }
-        } catch (InterruptedException e) {
-            log.error("Some exception happened during credit ", e.getMessage());
-            throw e;
+            applyCredit(amount);
+            return true;
         } finally {
             lock.unlock();
         }
-        return true;
+    }
+
+    private void acquireLock(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!lock.tryLock(timeout, unit)) {
+            log.debug("Timed out locking account {}", accountId);
+            throw new AccountBusyException("Account " + accountId + " is busy, try again later");
+        }
+    }
+
+    /**
+     * Subtracts the amount if the balance covers it. The caller must hold {@link #getLock()}.
+     *
+     * @param amount Amount to be debited
+     * @return true if the balance was debited, false on insufficient funds
+     */
+    public boolean applyDebit(BigDecimal amount) {
+        if (this.balance.compareTo(amount) >= 0) {
+            this.balance = this.balance.subtract(amount);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the amount to the balance. The caller must hold {@link #getLock()}.
+     *
+     * @param amount Amount to be credited
+     */
+    public void applyCredit(BigDecimal amount) {
+        this.balance = this.balance.add(amount);
     }
 }
@@ -0,0 +1,17 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * How newly created accounts hold their balance.
+ */
+public enum BalanceMode {
+
+    /**
+     * {@link java.math.BigDecimal} balance guarded by the account lock.
+     */
+    DECIMAL,
+
+    /**
+     * Fixed-point minor units in an atomic long, see {@link ScaledBalanceAccount}.
+     */
+    SCALED
+}
@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Totals of a consistent snapshot of all balances.
+ */
+@Data
+public class BalanceSnapshot {
+
+    /**
+     * Transfers of this epoch or earlier are included in the snapshot, later ones are not.
+     */
+    private final long epoch;
+
+    private final long accounts;
+
+    private final BigDecimal total;
+
+    /**
+     * Time the snapshot was taken, in milliseconds since the epoch.
+     */
+    private final long timestamp;
+}
@@ -0,0 +1,221 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Account receiving credits from many concurrent transfers. Credits are added as minor units to striped cells
+ * without taking the account lock, so they do not contend with each other. Debits still take the lock, fold the
+ * cells into a base balance and subtract from it; the balance is the base plus the sum of the cells.
+ * <p>
+ * Credits only ever raise the sum, so a debit checking the balance under the lock can never overdraw the account.
+ * Readers retry while cells are being folded, so they never see a credit both in the base and in the cells, or in
+ * neither.
+ * <p>
+ * Each fold closes the cells it folded and opens fresh ones, each allowed an equal share of the headroom left
+ * above the base. A credit checks only its own cell against that share, so overflow is ruled out without summing
+ * the cells. A credit that would exceed its share folds the cells itself, if the lock is free, and is then checked
+ * against the whole headroom.
+ */
+public class HotAccount extends Account {
+
+    private static final int CELLS =
+            Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 2);
+
+    /**
+     * Longs between two cells, so that each cell has a cache line of its own.
+     */
+    private static final int STRIDE = 8;
+
+    /**
+     * Value of a cell that has been folded, so that a credit still holding its generation moves on to the next.
+     */
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private volatile long baseMinorUnits;
+
+    private volatile Credits credits;
+
+    /**
+     * Odd while the cells are being folded into the base.
+     */
+    private volatile int folds;
+
+    public HotAccount(String accountId, BigDecimal balance) {
+        super(accountId);
+        this.baseMinorUnits = MinorUnits.toMinorUnits(balance);
+        this.credits = new Credits(baseMinorUnits);
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        return MinorUnits.toBigDecimal(minorUnits());
+    }
+
+    /**
+     * Sets the balance under the account lock. A concurrent credit is either overwritten or added to the new balance.
+     */
+    @Override
+    public void setBalance(BigDecimal balance) {
+        long units = MinorUnits.toMinorUnits(balance);
+        getLock().lock();
+        try {
+            folds++;
+            credits.close();
+            baseMinorUnits = units;
+            credits = new Credits(units);
+            folds++;
+        } finally {
+            getLock().unlock();
+        }
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isLockFreeCredit() {
+        return true;
+    }
+
+    @Override
+    public boolean credit(BigDecimal amount, long timeout, TimeUnit unit) {
+        applyCredit(amount);
+        return true;
+    }
+
+    /**
+     * Folds the credit cells into the base balance, then subtracts the amount from it if it covers the amount. The
+     * caller must hold {@link #getLock()}.
+     */
+    @Override
+    public boolean applyDebit(BigDecimal amount) {
+        long units = MinorUnits.toMinorUnits(amount);
+        long base = fold();
+        boolean covered = base >= units;
+        if (covered) {
+            base -= units;
+            baseMinorUnits = base;
+        }
+        credits = new Credits(base);
+        return covered;
+    }
+
+    /**
+     * Adds the amount to the cell of the calling thread. Does not need the account lock, unless the cell has used
+     * up its share of the headroom.
+     *
+     * @throws ArithmeticException if the balance would overflow
+     */
+    @Override
+    public void applyCredit(BigDecimal amount) {
+        long units = MinorUnits.toMinorUnits(amount);
+        int cell = cellOfCurrentThread();
+        while (true) {
+            Credits current = credits;
+            long value = current.cells.get(cell);
+            if (value == CLOSED) {
+                // a debit is folding the cells and is about to open the next ones
+                Thread.onSpinWait();
+            } else if (units <= current.share - value) {
+                if (current.cells.compareAndSet(cell, value, value + units)) {
+                    return;
+                }
+            } else if (getLock().tryLock()) {
+                try {
+                    creditBase(units);
+                    return;
+                } finally {
+                    getLock().unlock();
+                }
+            } else {
+                // the lock holder folds or sets the balance, either of which opens fresh cells
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Folds the cells and adds the amount to the base. The caller must hold {@link #getLock()}.
+     */
+    private void creditBase(long units) {
+        long base = fold();
+        if (units > Long.MAX_VALUE - base) {
+            credits = new Credits(base);
+            throw new ArithmeticException("Balance of account " + getAccountId() + " would overflow");
+        }
+        baseMinorUnits = base + units;
+        credits = new Credits(base + units);
+    }
+
+    /**
+     * Closes the cells and adds their sum to the base. The caller must hold {@link #getLock()} and open new cells.
+     *
+     * @return the new base
+     */
+    private long fold() {
+        folds++;
+        long base = baseMinorUnits + credits.close();
+        baseMinorUnits = base;
+        folds++;
+        return base;
+    }
+
+    private long minorUnits() {
+        while (true) {
+            int before = folds;
+            long units = baseMinorUnits + credits.sum();
+            if ((before & 1) == 0 && before == folds) {
+                return units;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private static int cellOfCurrentThread() {
+        long id = Thread.currentThread().threadId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & (CELLS - 1)) * STRIDE;
+    }
+
+    /**
+     * Credit cells opened by one fold, each allowed an equal share of the headroom above the base at that time.
+     * Cells only grow until they are closed, and closed cells are never reopened.
+     */
+    private static final class Credits {
+
+        private final AtomicLongArray cells = new AtomicLongArray(CELLS * STRIDE);
+
+        private final long share;
+
+        private Credits(long base) {
+            this.share = (Long.MAX_VALUE - Math.max(0, base)) / CELLS;
+        }
+
+        private long sum() {
+            long sum = 0;
+            for (int i = 0; i < cells.length(); i += STRIDE) {
+                long value = cells.get(i);
+                if (value != CLOSED) {
+                    sum += value;
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * @return sum of the cells, each read as it is closed
+         */
+        private long close() {
+            long sum = 0;
+            for (int i = 0; i < cells.length(); i += STRIDE) {
+                long value = cells.getAndSet(i, CLOSED);
+                if (value != CLOSED) {
+                    sum += value;
+                }
+            }
+            return sum;
+        }
+    }
+}
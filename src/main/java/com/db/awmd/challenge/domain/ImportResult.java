@@ -0,0 +1,32 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk account import. Only the first {@link #MAX_ERRORS} rejections are described.
+ */
+@Data
+public class ImportResult {
+
+    public static final int MAX_ERRORS = 100;
+
+    private long created;
+
+    private long rejected;
+
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * @param line   Line of the rejected account in the imported body, starting at 1
+     * @param reason Why the account was rejected
+     */
+    public void reject(long line, String reason) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("Line " + line + ": " + reason);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.exception.ValidationException;
+
+import java.math.BigDecimal;
+
+/**
+ * Conversions between {@link BigDecimal} amounts and fixed-point minor units held in a {@code long}.
+ */
+public final class MinorUnits {
+
+    /**
+     * Number of decimal places kept by a minor unit amount, i.e. cents.
+     */
+    public static final int SCALE = 2;
+
+    /**
+     * Minor units in one unit, 10 to the power of {@link #SCALE}.
+     */
+    private static final long MINOR_UNITS_PER_UNIT = 100;
+
+    private MinorUnits() {
+    }
+
+    /**
+     * @param amount Amount to be converted
+     * @return the amount expressed in minor units
+     * @throws ValidationException if the amount has more than {@link #SCALE} decimal places or does not fit a long
+     */
+    public static long toMinorUnits(BigDecimal amount) {
+        if (amount.scale() == 0 && amount.precision() < 19) {
+            // whole amounts, as parsed by parseAmount, convert without an intermediate BigDecimal
+            try {
+                return Math.multiplyExact(amount.longValue(), MINOR_UNITS_PER_UNIT);
+            } catch (ArithmeticException e) {
+                throw new ValidationException("Amount out of range");
+            }
+        }
+        if (amount.scale() > SCALE && amount.stripTrailingZeros().scale() > SCALE) {
+            throw new ValidationException("Amount supports at most " + SCALE + " decimal places");
+        }
+        try {
+            return amount.movePointRight(SCALE).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new ValidationException("Amount out of range");
+        }
+    }
+
+    public static BigDecimal toBigDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    /**
+     * Parses a plain decimal amount such as {@code 10} or {@code 0.01} in a single pass over its characters,
+     * without the intermediate copies of {@link BigDecimal#BigDecimal(String)}. Whole amounts up to 10 come from
+     * the cache of {@link BigDecimal#valueOf(long)}. Other notations, or more than 18 digits, are handed to
+     * {@link BigDecimal#BigDecimal(String)}.
+     *
+     * @param text Amount as received, for instance from a path variable
+     * @return the amount, with as many decimal places as the text has
+     * @throws ValidationException if the text is not a number
+     */
+    public static BigDecimal parseAmount(String text) {
+        int length = text.length();
+        int start = length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+') ? 1 : 0;
+        long unscaled = 0;
+        int digits = 0;
+        int scale = -1;
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > 18) {
+                    return parseSlowly(text);
+                }
+                unscaled = unscaled * 10 + (c - '0');
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return parseSlowly(text);
+            }
+        }
+        if (digits == 0) {
+            throw new ValidationException("Amount is not a number: " + text);
+        }
+        if (start == 1 && text.charAt(0) == '-') {
+            unscaled = -unscaled;
+        }
+        return scale <= 0 ? BigDecimal.valueOf(unscaled) : BigDecimal.valueOf(unscaled, scale);
+    }
+
+    private static BigDecimal parseSlowly(String text) {
+        try {
+            return new BigDecimal(text);
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Amount is not a number: " + text);
+        }
+    }
+}
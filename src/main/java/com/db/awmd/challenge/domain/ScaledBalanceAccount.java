@@ -0,0 +1,86 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Account whose balance is held as minor units in an atomic long. Debits are compare-and-set loops and
+ * credits are atomic adds, so neither allocates nor needs the account lock.
+ */
+public class ScaledBalanceAccount extends Account {
+
+    private final AtomicLong minorUnits;
+
+    public ScaledBalanceAccount(String accountId, BigDecimal balance) {
+        super(accountId);
+        this.minorUnits = new AtomicLong(MinorUnits.toMinorUnits(balance));
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+        return MinorUnits.toBigDecimal(minorUnits.get());
+    }
+
+    @Override
+    public void setBalance(BigDecimal balance) {
+        minorUnits.set(MinorUnits.toMinorUnits(balance));
+    }
+
+    @JsonIgnore
+    public long getMinorUnits() {
+        return minorUnits.get();
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isLockFree() {
+        return true;
+    }
+
+    @Override
+    public boolean debit(BigDecimal amount, long timeout, TimeUnit unit) {
+        return applyDebit(amount);
+    }
+
+    @Override
+    public boolean credit(BigDecimal amount, long timeout, TimeUnit unit) {
+        applyCredit(amount);
+        return true;
+    }
+
+    @Override
+    public boolean applyDebit(BigDecimal amount) {
+        return debitMinorUnits(MinorUnits.toMinorUnits(amount));
+    }
+
+    @Override
+    public void applyCredit(BigDecimal amount) {
+        creditMinorUnits(MinorUnits.toMinorUnits(amount));
+    }
+
+    /**
+     * @param units Minor units to be debited
+     * @return true if the balance was debited, false on insufficient funds
+     */
+    public boolean debitMinorUnits(long units) {
+        long current;
+        do {
+            current = minorUnits.get();
+            if (current < units) {
+                return false;
+            }
+        } while (!minorUnits.compareAndSet(current, current - units));
+        return true;
+    }
+
+    /**
+     * @param units Minor units to be credited
+     * @throws ArithmeticException if the balance would overflow, in which case it is left unchanged
+     */
+    public void creditMinorUnits(long units) {
+        minorUnits.accumulateAndGet(units, Math::addExact);
+    }
+}
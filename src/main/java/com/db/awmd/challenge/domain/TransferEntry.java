@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Completed transfer as recorded in the ledger.
+ */
+@Data
+public class TransferEntry {
+
+    /**
+     * Position of the transfer in the ledger, increasing with time.
+     */
+    private final long sequence;
+
+    private final String fromAccountId;
+
+    private final String toAccountId;
+
+    private final BigDecimal amount;
+
+    /**
+     * Time the transfer completed, in milliseconds since the epoch.
+     */
+    private final long timestamp;
+}
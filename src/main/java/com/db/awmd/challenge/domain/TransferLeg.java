@@ -0,0 +1,39 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * One side of a transfer between accounts owned by different nodes, prepared on the node owning its account.
+ */
+@Data
+public class TransferLeg {
+
+    private final String accountId;
+
+    /**
+     * Account on the other side of the transfer, owned by another node.
+     */
+    private final String counterpartyId;
+
+    private final BigDecimal amount;
+
+    /**
+     * True if the account is debited, false if it is credited.
+     */
+    private final boolean debit;
+
+    @JsonCreator
+    public TransferLeg(@JsonProperty("accountId") String accountId,
+                       @JsonProperty("counterpartyId") String counterpartyId,
+                       @JsonProperty("amount") BigDecimal amount,
+                       @JsonProperty("debit") boolean debit) {
+        this.accountId = accountId;
+        this.counterpartyId = counterpartyId;
+        this.amount = amount;
+        this.debit = debit;
+    }
+}
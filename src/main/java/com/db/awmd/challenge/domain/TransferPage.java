@@ -0,0 +1,19 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Page of transfers of an account, newest first.
+ */
+@Data
+public class TransferPage {
+
+    private final List<TransferEntry> transfers;
+
+    /**
+     * Cursor of the next, older page, or null if this is the last one.
+     */
+    private final Long nextCursor;
+}
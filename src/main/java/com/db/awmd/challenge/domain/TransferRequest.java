@@ -0,0 +1,29 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Single transfer of a batch request.
+ */
+@Data
+public class TransferRequest {
+
+    private final String fromAccountId;
+
+    private final String toAccountId;
+
+    private final BigDecimal amount;
+
+    @JsonCreator
+    public TransferRequest(@JsonProperty("fromAccountId") String fromAccountId,
+                           @JsonProperty("toAccountId") String toAccountId,
+                           @JsonProperty("amount") BigDecimal amount) {
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        this.amount = amount;
+    }
+}
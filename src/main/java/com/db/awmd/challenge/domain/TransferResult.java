@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Per-item result of a batch transfer.
+ */
+@Data
+public class TransferResult {
+
+    private final String fromAccountId;
+
+    private final String toAccountId;
+
+    private final BigDecimal amount;
+
+    private final TransferStatus status;
+
+    public TransferResult(TransferRequest request, TransferStatus status) {
+        this.fromAccountId = request.getFromAccountId();
+        this.toAccountId = request.getToAccountId();
+        this.amount = request.getAmount();
+        this.status = status;
+    }
+}
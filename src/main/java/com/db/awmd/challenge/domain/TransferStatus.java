@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * Outcome of a single transfer.
+ */
+public enum TransferStatus {
+
+    COMPLETED,
+
+    ACCOUNT_NOT_FOUND,
+
+    INVALID_AMOUNT,
+
+    INSUFFICIENT_FUNDS,
+
+    BUSY,
+
+    RATE_LIMITED,
+
+    /**
+     * Applied, but the journal failed to make it durable, so it may be lost on restart. It must not be retried.
+     */
+    NOT_DURABLE
+}
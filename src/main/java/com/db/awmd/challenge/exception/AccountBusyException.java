@@ -0,0 +1,12 @@
+package com.db.awmd.challenge.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class AccountBusyException extends RuntimeException {
+
+    public AccountBusyException(String message) {
+        super(message);
+    }
+}
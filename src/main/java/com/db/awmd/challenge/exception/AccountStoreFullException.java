@@ -0,0 +1,12 @@
+package com.db.awmd.challenge.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.INSUFFICIENT_STORAGE)
+public class AccountStoreFullException extends RuntimeException {
+
+    public AccountStoreFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.db.awmd.challenge.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.ACCEPTED)
+public class TransferNotDurableException extends RuntimeException {
+
+    public TransferNotDurableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,22 @@
+package com.db.awmd.challenge.journal;
+
+/**
+ * When a journaled change is acknowledged to the caller.
+ */
+public enum Durability {
+
+    /**
+     * As soon as it is queued. The journal is fsynced in the background, so a crash loses the last changes.
+     */
+    ASYNC,
+
+    /**
+     * Once it has been fsynced together with every other change queued meanwhile.
+     */
+    GROUP,
+
+    /**
+     * Once it has been fsynced on its own. Only meant as a baseline for measuring group commit.
+     */
+    SYNC
+}
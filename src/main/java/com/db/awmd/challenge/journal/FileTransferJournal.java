@@ -0,0 +1,447 @@
+package com.db.awmd.challenge.journal;
+
+import com.db.awmd.challenge.exception.JournalException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal kept in segment files of a local directory.
+ * <p>
+ * Records are queued by the callers and written by a single writer thread, which drains everything queued
+ * meanwhile (up to the maximum batch size) and fsyncs it at once, so many transfers share one fsync. Each
+ * record is framed as length, CRC32 and payload; replay stops at the first torn or corrupt record of a segment.
+ * A new segment is started on every restart and whenever the current one exceeds the segment size.
+ * <p>
+ * Closed segments are periodically folded into a memory-mapped {@link JournalSnapshot}, so a restart only
+ * loads the snapshot and replays the segments written after it.
+ */
+@Slf4j
+public class FileTransferJournal implements TransferJournal, Closeable {
+
+    static final String SEGMENT_PREFIX = "journal-";
+
+    static final String SEGMENT_SUFFIX = ".log";
+
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    private static final CompletableFuture<Void> QUEUED = CompletableFuture.completedFuture(null);
+
+    private final Path directory;
+
+    private final Durability durability;
+
+    private final int maxBatchSize;
+
+    private final long segmentSize;
+
+    private final long flushIntervalNanos;
+
+    private final BlockingQueue<Entry> queue;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+    private final CRC32 crc = new CRC32();
+
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    private volatile ScheduledExecutorService snapshotScheduler;
+
+    /**
+     * Held while a snapshot is taken; a lock rather than a monitor, as the snapshot waits for the writer.
+     */
+    private final Lock snapshotLock = new ReentrantLock();
+
+    private FileChannel channel;
+
+    /**
+     * Segment opened at startup; earlier segments are the ones to replay.
+     */
+    private final long firstSegment;
+
+    private volatile long segment;
+
+    private long segmentBytes;
+
+    private final LongAdder appended = new LongAdder();
+
+    private final LongAdder fsyncs = new LongAdder();
+
+    private final LongAdder batches = new LongAdder();
+
+    public FileTransferJournal(Path directory, Durability durability, int maxBatchSize, int queueCapacity,
+                               long segmentSize, long flushIntervalMillis) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.durability = durability;
+        this.maxBatchSize = durability == Durability.SYNC ? 1 : maxBatchSize;
+        this.segmentSize = segmentSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        List<Path> segments = segments();
+        this.firstSegment = segments.isEmpty() ? 0 : segmentIndex(segments.get(segments.size() - 1)) + 1;
+        this.segment = firstSegment;
+        openSegment();
+        this.writer = new Thread(this::writeLoop, "transfer-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public CompletableFuture<Void> append(JournalRecord record) {
+        if (!running) {
+            throw new JournalException("Journal is closed", null);
+        }
+        Entry entry = new Entry(record, durability == Durability.ASYNC ? null : new CompletableFuture<>());
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return entry.written == null ? QUEUED : entry.written;
+    }
+
+    /**
+     * Loads the snapshot, if any, and replays only the segments written after it.
+     */
+    @Override
+    public void replay(BiConsumer<String, BigDecimal> restoredAccount) {
+        long start = System.nanoTime();
+        JournalState state = new JournalState();
+        long snapshotSegment = JournalSnapshot.read(directory, state);
+        for (Path segment : segments()) {
+            long index = segmentIndex(segment);
+            if (index >= snapshotSegment && index < firstSegment) {
+                read(segment, state);
+            }
+        }
+        state.forEachPendingDelta((accountId, delta) ->
+                log.warn("Ignoring journaled transfers of unknown account {}", accountId));
+        state.forEach(restoredAccount);
+        log.info("Replayed {} accounts from journal {} in {} ms", state.size(), directory,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Folds every closed segment into a new snapshot and deletes them. The journal is first switched to a new
+     * segment, so the snapshot only reads immutable files and never blocks appends or the transfers behind them.
+     */
+    public void snapshot() throws InterruptedException {
+        snapshotLock.lock();
+        try {
+            Entry roll = new Entry(null, new CompletableFuture<>());
+            queue.put(roll);
+            TransferJournal.await(roll.written);
+            long nextSegment = segment;
+
+            JournalState state = new JournalState();
+            long snapshotSegment = JournalSnapshot.read(directory, state);
+            List<Path> folded = new ArrayList<>();
+            for (Path segment : segments()) {
+                long index = segmentIndex(segment);
+                if (index < nextSegment) {
+                    if (index >= snapshotSegment) {
+                        read(segment, state);
+                    }
+                    folded.add(segment);
+                }
+            }
+            JournalSnapshot.write(directory, nextSegment, state);
+            for (Path segment : folded) {
+                try {
+                    Files.deleteIfExists(segment);
+                } catch (IOException e) {
+                    log.warn("Failed to delete folded journal segment {}", segment, e);
+                }
+            }
+            log.info("Snapshot of {} accounts covers journal up to segment {}", state.size(), nextSegment);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Takes a {@link #snapshot()} at a fixed interval.
+     */
+    public void scheduleSnapshots(long intervalMillis) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transfer-journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.error("Failed to snapshot journal {}", directory, e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        this.snapshotScheduler = scheduler;
+    }
+
+    /**
+     * Stops accepting records, writes and fsyncs everything queued, and closes the current segment.
+     */
+    @Override
+    public void close() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return records written so far
+     */
+    public long getAppended() {
+        return appended.sum();
+    }
+
+    /**
+     * @return fsyncs performed so far
+     */
+    public long getFsyncs() {
+        return fsyncs.sum();
+    }
+
+    /**
+     * @return write batches performed so far; appended divided by batches is the average group size
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * Reads every valid record of a segment into the state.
+     */
+    static void read(Path segment, JournalState state) {
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer data = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            CRC32 checksum = new CRC32();
+            while (data.remaining() >= FRAME_HEADER_SIZE) {
+                int length = data.getInt();
+                int expectedCrc = data.getInt();
+                if (length <= 0 || length > data.remaining()) {
+                    log.warn("Truncated record in journal segment {}", segment);
+                    return;
+                }
+                ByteBuffer payload = data.slice();
+                payload.limit(length);
+                checksum.reset();
+                checksum.update(payload.duplicate());
+                if ((int) checksum.getValue() != expectedCrc) {
+                    log.warn("Corrupt record in journal segment {}", segment);
+                    return;
+                }
+                JournalRecord record;
+                try {
+                    record = JournalRecord.decode(payload);
+                } catch (IllegalArgumentException e) {
+                    log.warn("Undecodable record in journal segment {}", segment, e);
+                    return;
+                }
+                state.apply(record);
+                data.position(data.position() + length);
+            }
+        } catch (IOException e) {
+            throw new JournalException("Failed to read journal segment " + segment, e);
+        }
+    }
+
+    /**
+     * @return the journal segments, oldest first
+     */
+    List<Path> segments() {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            files.forEach(segments::add);
+        } catch (IOException e) {
+            throw new JournalException("Failed to list journal " + directory, e);
+        }
+        segments.sort((a, b) -> Long.compare(segmentIndex(a), segmentIndex(b)));
+        return segments;
+    }
+
+    static long segmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    Path segmentPath(long index) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private void openSegment() throws IOException {
+        channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentBytes = 0;
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(maxBatchSize);
+        long lastForce = System.nanoTime();
+        boolean dirty = false;
+        while (running || !queue.isEmpty()) {
+            Entry first;
+            try {
+                first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            try {
+                if (first == null) {
+                    if (dirty) {
+                        force();
+                        dirty = false;
+                        lastForce = System.nanoTime();
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                writeBatch(batch);
+                if (durability != Durability.ASYNC || System.nanoTime() - lastForce >= flushIntervalNanos) {
+                    force();
+                    dirty = false;
+                    lastForce = System.nanoTime();
+                } else {
+                    dirty = true;
+                }
+                if (segmentBytes >= segmentSize || containsRoll(batch)) {
+                    rollSegment();
+                    dirty = false;
+                }
+                for (Entry entry : batch) {
+                    entry.complete(null);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to write journal batch of {}", batch.size(), e);
+                buffer.clear();
+                for (Entry entry : batch) {
+                    entry.complete(e);
+                }
+            }
+            batch.clear();
+        }
+        try {
+            force();
+            channel.close();
+        } catch (IOException e) {
+            log.error("Failed to close journal segment", e);
+        }
+    }
+
+    private void writeBatch(List<Entry> batch) throws IOException {
+        int records = 0;
+        for (Entry entry : batch) {
+            JournalRecord record = entry.record;
+            if (record == null) {
+                continue;
+            }
+            records++;
+            if (buffer.remaining() < FRAME_HEADER_SIZE + record.maxEncodedSize()) {
+                flushBuffer();
+            }
+            int start = buffer.position();
+            buffer.position(start + FRAME_HEADER_SIZE);
+            record.encode(buffer);
+            int length = buffer.position() - start - FRAME_HEADER_SIZE;
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(start + FRAME_HEADER_SIZE).limit(start + FRAME_HEADER_SIZE + length);
+            crc.reset();
+            crc.update(payload);
+            buffer.putInt(start, length);
+            buffer.putInt(start + 4, (int) crc.getValue());
+        }
+        flushBuffer();
+        appended.add(records);
+        batches.increment();
+    }
+
+    private static boolean containsRoll(List<Entry> batch) {
+        for (Entry entry : batch) {
+            if (entry.record == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rollSegment() throws IOException {
+        force();
+        channel.close();
+        segment++;
+        openSegment();
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segmentBytes += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void force() throws IOException {
+        channel.force(false);
+        fsyncs.increment();
+    }
+
+    private static final class Entry {
+
+        /**
+         * Record to be written, or null to request a new segment.
+         */
+        private final JournalRecord record;
+
+        private final CompletableFuture<Void> written;
+
+        private Entry(JournalRecord record, CompletableFuture<Void> written) {
+            this.record = record;
+            this.written = written;
+        }
+
+        private void complete(Throwable failure) {
+            if (written == null) {
+                return;
+            }
+            if (failure == null) {
+                written.complete(null);
+            } else {
+                written.completeExceptionally(failure);
+            }
+        }
+    }
+}
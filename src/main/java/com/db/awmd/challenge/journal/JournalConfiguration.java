@@ -0,0 +1,34 @@
+package com.db.awmd.challenge.journal;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+@Configuration
+public class JournalConfiguration {
+
+    @Bean
+    public TransferJournal transferJournal(@Value("${challenge.journal.enabled:false}") boolean enabled,
+                                           @Value("${challenge.journal.directory:journal}") String directory,
+                                           @Value("${challenge.journal.durability:GROUP}") Durability durability,
+                                           @Value("${challenge.journal.max-batch-size:1024}") int maxBatchSize,
+                                           @Value("${challenge.journal.queue-capacity:65536}") int queueCapacity,
+                                           @Value("${challenge.journal.segment-size:67108864}") long segmentSize,
+                                           @Value("${challenge.journal.flush-interval-ms:10}") long flushIntervalMillis,
+                                           @Value("${challenge.journal.snapshot-interval-ms:60000}")
+                                                   long snapshotIntervalMillis)
+            throws IOException {
+        if (!enabled) {
+            return TransferJournal.NONE;
+        }
+        FileTransferJournal journal = new FileTransferJournal(Paths.get(directory), durability, maxBatchSize,
+                queueCapacity, segmentSize, flushIntervalMillis);
+        if (snapshotIntervalMillis > 0) {
+            journal.scheduleSnapshots(snapshotIntervalMillis);
+        }
+        return journal;
+    }
+}
@@ -0,0 +1,119 @@
+package com.db.awmd.challenge.journal;
+
+import com.db.awmd.challenge.exception.ValidationException;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Change recorded in the journal: an account creation or a completed transfer.
+ */
+@Data
+public class JournalRecord {
+
+    public enum Type {
+        CREATED, TRANSFERRED
+    }
+
+    /**
+     * Longest account id in UTF-8 bytes, as ids are length prefixed with an unsigned short.
+     */
+    public static final int MAX_ID_BYTES = 0xFFFF;
+
+    private final Type type;
+
+    private final String accountId;
+
+    /**
+     * Credited account of a transfer, null for a creation.
+     */
+    private final String toAccountId;
+
+    /**
+     * Initial balance of a creation, or transferred amount.
+     */
+    private final BigDecimal amount;
+
+    /**
+     * @throws ValidationException if the account id is longer than {@link #MAX_ID_BYTES}
+     */
+    public static JournalRecord created(String accountId, BigDecimal balance) {
+        checkId(accountId);
+        return new JournalRecord(Type.CREATED, accountId, null, balance);
+    }
+
+    /**
+     * @throws ValidationException if an account id is longer than {@link #MAX_ID_BYTES}
+     */
+    public static JournalRecord transferred(String fromAccountId, String toAccountId, BigDecimal amount) {
+        checkId(fromAccountId);
+        checkId(toAccountId);
+        return new JournalRecord(Type.TRANSFERRED, fromAccountId, toAccountId, amount);
+    }
+
+    private static void checkId(String accountId) {
+        // a char takes at most 3 UTF-8 bytes, so only long ids need encoding
+        if (accountId.length() > MAX_ID_BYTES / 3
+                && accountId.getBytes(StandardCharsets.UTF_8).length > MAX_ID_BYTES) {
+            throw new ValidationException("Account id is longer than " + MAX_ID_BYTES + " bytes");
+        }
+    }
+
+    /**
+     * Writes the record payload: type, account ids as length prefixed UTF-8, then the amount as scale and
+     * length prefixed unscaled value.
+     */
+    void encode(ByteBuffer buffer) {
+        buffer.put((byte) type.ordinal());
+        putString(buffer, accountId);
+        if (type == Type.TRANSFERRED) {
+            putString(buffer, toAccountId);
+        }
+        byte[] unscaled = amount.unscaledValue().toByteArray();
+        buffer.putInt(amount.scale());
+        buffer.putShort((short) unscaled.length);
+        buffer.put(unscaled);
+    }
+
+    /**
+     * @return upper bound of the encoded payload size
+     */
+    int maxEncodedSize() {
+        int size = 1 + 2 + 3 * accountId.length() + 4 + 2 + amount.unscaledValue().bitLength() / 8 + 1;
+        return toAccountId == null ? size : size + 2 + 3 * toAccountId.length();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the payload is not a valid record
+     */
+    static JournalRecord decode(ByteBuffer buffer) {
+        try {
+            Type type = Type.values()[buffer.get()];
+            String accountId = getString(buffer);
+            String toAccountId = type == Type.TRANSFERRED ? getString(buffer) : null;
+            int scale = buffer.getInt();
+            byte[] unscaled = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(unscaled);
+            return new JournalRecord(type, accountId, toAccountId, new BigDecimal(new BigInteger(unscaled), scale));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NumberFormatException e) {
+            // BigInteger rejects an empty magnitude with NumberFormatException
+            throw new IllegalArgumentException("Malformed journal record", e);
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
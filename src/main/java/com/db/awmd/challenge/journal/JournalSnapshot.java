@@ -0,0 +1,138 @@
+package com.db.awmd.challenge.journal;
+
+import com.db.awmd.challenge.exception.JournalException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary image of the journal state up to a segment, read and written through memory-mapped files.
+ * <p>
+ * Layout: magic, format version, first segment not covered, entry count, then per entry a kind byte (balance
+ * or pending delta), the length prefixed UTF-8 account id, the scale and the length prefixed unscaled value.
+ */
+final class JournalSnapshot {
+
+    static final String FILE_NAME = "snapshot.bin";
+
+    private static final int MAGIC = 0x41435348;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+    private static final byte BALANCE = 0;
+
+    private static final byte PENDING_DELTA = 1;
+
+    private JournalSnapshot() {
+    }
+
+    /**
+     * Writes the snapshot to a temporary file and atomically moves it in place once it is on disk.
+     *
+     * @param nextSegment First journal segment not folded into the state
+     */
+    static void write(Path directory, long nextSegment, JournalState state) {
+        List<Entry> entries = new ArrayList<>(state.size());
+        state.forEach((accountId, balance) -> entries.add(new Entry(BALANCE, accountId, balance)));
+        state.forEachPendingDelta((accountId, delta) -> entries.add(new Entry(PENDING_DELTA, accountId, delta)));
+        long size = HEADER_SIZE;
+        for (Entry entry : entries) {
+            size += entry.size();
+        }
+        Path temporary = directory.resolve(FILE_NAME + ".tmp");
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer data = file.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            data.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(nextSegment).putInt(entries.size());
+            for (Entry entry : entries) {
+                entry.put(data);
+            }
+            data.force();
+        } catch (IOException e) {
+            throw new JournalException("Failed to write journal snapshot", e);
+        }
+        try {
+            Files.move(temporary, directory.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new JournalException("Failed to install journal snapshot", e);
+        }
+    }
+
+    /**
+     * Loads the snapshot, if any, into the state.
+     *
+     * @return the first journal segment not covered by the snapshot, 0 without snapshot
+     */
+    static long read(Path directory, JournalState state) {
+        Path path = directory.resolve(FILE_NAME);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer data = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            if (data.getInt() != MAGIC || data.getInt() != FORMAT_VERSION) {
+                throw new JournalException("Unsupported journal snapshot " + path, null);
+            }
+            long nextSegment = data.getLong();
+            int count = data.getInt();
+            for (int i = 0; i < count; i++) {
+                byte kind = data.get();
+                byte[] id = new byte[data.getShort() & 0xFFFF];
+                data.get(id);
+                int scale = data.getInt();
+                byte[] unscaled = new byte[data.getShort() & 0xFFFF];
+                data.get(unscaled);
+                String accountId = new String(id, StandardCharsets.UTF_8);
+                BigDecimal value = new BigDecimal(new BigInteger(unscaled), scale);
+                if (kind == BALANCE) {
+                    state.restore(accountId, value);
+                } else {
+                    state.restorePendingDelta(accountId, value);
+                }
+            }
+            return nextSegment;
+        } catch (IOException e) {
+            throw new JournalException("Failed to read journal snapshot " + path, e);
+        }
+    }
+
+    private static final class Entry {
+
+        private final byte kind;
+
+        private final byte[] accountId;
+
+        private final int scale;
+
+        private final byte[] unscaled;
+
+        private Entry(byte kind, String accountId, BigDecimal value) {
+            this.kind = kind;
+            this.accountId = accountId.getBytes(StandardCharsets.UTF_8);
+            this.scale = value.scale();
+            this.unscaled = value.unscaledValue().toByteArray();
+        }
+
+        private long size() {
+            return 1 + 2 + accountId.length + 4 + 2 + unscaled.length;
+        }
+
+        private void put(MappedByteBuffer data) {
+            data.put(kind).putShort((short) accountId.length).put(accountId)
+                    .putInt(scale).putShort((short) unscaled.length).put(unscaled);
+        }
+    }
+}
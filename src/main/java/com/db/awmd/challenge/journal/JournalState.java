@@ -0,0 +1,67 @@
+package com.db.awmd.challenge.journal;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Account balances folded from journal records. Transfers are applied as deltas, so the result does not
+ * depend on the order in which concurrent transfers reached the journal, nor on a transfer being journaled
+ * before the creation of its accounts.
+ */
+public class JournalState {
+
+    private final Map<String, BigDecimal> balances = new LinkedHashMap<>();
+
+    private final Map<String, BigDecimal> deltas = new HashMap<>();
+
+    /**
+     * Seeds the balance of an account, e.g. from a snapshot.
+     */
+    public void restore(String accountId, BigDecimal balance) {
+        balances.put(accountId, balance);
+    }
+
+    /**
+     * Seeds transfers of an account whose creation has not been seen yet, e.g. from a snapshot.
+     */
+    public void restorePendingDelta(String accountId, BigDecimal delta) {
+        deltas.merge(accountId, delta, BigDecimal::add);
+    }
+
+    public void apply(JournalRecord record) {
+        if (record.getType() == JournalRecord.Type.CREATED) {
+            balances.putIfAbsent(record.getAccountId(), record.getAmount());
+        } else {
+            deltas.merge(record.getAccountId(), record.getAmount().negate(), BigDecimal::add);
+            deltas.merge(record.getToAccountId(), record.getAmount(), BigDecimal::add);
+        }
+    }
+
+    /**
+     * @param account Receives each created account id with its balance
+     */
+    public void forEach(BiConsumer<String, BigDecimal> account) {
+        for (Map.Entry<String, BigDecimal> balance : balances.entrySet()) {
+            BigDecimal delta = deltas.get(balance.getKey());
+            account.accept(balance.getKey(), delta == null ? balance.getValue() : balance.getValue().add(delta));
+        }
+    }
+
+    /**
+     * @param pendingDelta Receives the summed transfers of each account whose creation has not been seen yet
+     */
+    public void forEachPendingDelta(BiConsumer<String, BigDecimal> pendingDelta) {
+        for (Map.Entry<String, BigDecimal> delta : deltas.entrySet()) {
+            if (!balances.containsKey(delta.getKey())) {
+                pendingDelta.accept(delta.getKey(), delta.getValue());
+            }
+        }
+    }
+
+    public int size() {
+        return balances.size();
+    }
+}
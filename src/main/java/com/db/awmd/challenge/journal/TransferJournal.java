@@ -0,0 +1,77 @@
+package com.db.awmd.challenge.journal;
+
+import com.db.awmd.challenge.exception.JournalException;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * Durable record of account creations and completed transfers, replayed on startup.
+ */
+public interface TransferJournal {
+
+    /**
+     * Journal that records nothing, used when journaling is disabled.
+     */
+    TransferJournal NONE = new TransferJournal() {
+
+        private final CompletableFuture<Void> done = CompletableFuture.completedFuture(null);
+
+        @Override
+        public CompletableFuture<Void> append(JournalRecord record) {
+            return done;
+        }
+
+        @Override
+        public void replay(BiConsumer<String, BigDecimal> restoredAccount) {
+        }
+    };
+
+    /**
+     * Queues the record.
+     *
+     * @return a future completed once the record is as durable as the configured {@link Durability}
+     */
+    CompletableFuture<Void> append(JournalRecord record);
+
+    /**
+     * Appends the record of a change that is already applied, reporting a journal that cannot take it through the
+     * returned future instead of throwing, so the change is never mistaken for one that did not happen.
+     */
+    default CompletableFuture<Void> appendApplied(JournalRecord record) {
+        try {
+            return append(record);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Appends the record and waits until it is durable.
+     *
+     * @throws JournalException if the record could not be written
+     */
+    default void write(JournalRecord record) throws InterruptedException {
+        await(append(record));
+    }
+
+    /**
+     * Rebuilds the balance of every journaled account.
+     *
+     * @param restoredAccount Receives each account id with its balance
+     */
+    void replay(BiConsumer<String, BigDecimal> restoredAccount);
+
+    /**
+     * @throws JournalException if the record of the future could not be written
+     */
+    static void await(CompletableFuture<Void> appended) throws InterruptedException {
+        try {
+            appended.get();
+        } catch (ExecutionException e) {
+            throw new JournalException("Failed to write journal", e.getCause());
+        }
+    }
+}
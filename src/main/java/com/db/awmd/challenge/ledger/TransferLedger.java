@@ -0,0 +1,296 @@
+package com.db.awmd.challenge.ledger;
+
+import com.db.awmd.challenge.domain.TransferEntry;
+import com.db.awmd.challenge.domain.TransferPage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory history of completed transfers, queried per account.
+ * <p>
+ * Entries are stored column by column in chunks of primitive arrays: the ordinals of both accounts, the unscaled
+ * amount and its scale, and the timestamp. Recording a transfer allocates nothing once its chunk exists. Each
+ * account keeps an index of the sequence numbers of its transfers, also in primitive chunks.
+ * <p>
+ * The ledger retains a fixed number of entries in a ring of chunks; when it is full, the oldest chunk is dropped
+ * as a whole. Appends are serialized by a short lock, while queries take no lock: they read the published sizes,
+ * and check after reading an entry that it was not dropped meanwhile.
+ */
+@Component
+public class TransferLedger {
+
+    private static final int CHUNK_SHIFT = 16;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private static final int INDEX_CHUNK_SIZE = 1024;
+
+    /**
+     * Scale marking an amount that does not fit the columns and is kept in {@link #wideAmounts}.
+     */
+    private static final int WIDE_SCALE = Integer.MIN_VALUE;
+
+    private final int chunkCount;
+
+    private final int[][] fromColumn;
+
+    private final int[][] toColumn;
+
+    private final long[][] unscaledColumn;
+
+    private final int[][] scaleColumn;
+
+    private final long[][] timestampColumn;
+
+    private final Map<Long, BigDecimal> wideAmounts = new ConcurrentHashMap<>();
+
+    private final Map<String, AccountIndex> accounts = new ConcurrentHashMap<>();
+
+    private volatile AccountIndex[] byOrdinal = new AccountIndex[1024];
+
+    private final Lock appendLock = new ReentrantLock();
+
+    private volatile long size;
+
+    private volatile long firstRetained;
+
+    /**
+     * @param capacity Number of transfers retained, rounded up to whole chunks; 0 disables the ledger
+     */
+    public TransferLedger(@Value("${challenge.ledger.capacity:1048576}") int capacity) {
+        this.chunkCount = capacity <= 0 ? 0 : (capacity + CHUNK_SIZE - 1) >>> CHUNK_SHIFT;
+        this.fromColumn = new int[chunkCount][];
+        this.toColumn = new int[chunkCount][];
+        this.unscaledColumn = new long[chunkCount][];
+        this.scaleColumn = new int[chunkCount][];
+        this.timestampColumn = new long[chunkCount][];
+    }
+
+    /**
+     * Records a completed transfer.
+     */
+    public void record(String fromAccountId, String toAccountId, BigDecimal amount) {
+        if (chunkCount == 0) {
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        appendLock.lock();
+        try {
+            long sequence = size;
+            int chunk = (int) ((sequence >>> CHUNK_SHIFT) % chunkCount);
+            int offset = (int) (sequence & (CHUNK_SIZE - 1));
+            if (fromColumn[chunk] == null) {
+                allocate(chunk);
+            } else if (offset == 0) {
+                // the ring is full, drop the oldest chunk before overwriting it
+                firstRetained = sequence - (long) (chunkCount - 1) * CHUNK_SIZE;
+                wideAmounts.keySet().removeIf(wide -> wide < firstRetained);
+            }
+            AccountIndex from = index(fromAccountId);
+            AccountIndex to = index(toAccountId);
+            fromColumn[chunk][offset] = from.ordinal;
+            toColumn[chunk][offset] = to.ordinal;
+            timestampColumn[chunk][offset] = timestamp;
+            if (amount.scale() >= 0 && amount.unscaledValue().bitLength() < 64) {
+                unscaledColumn[chunk][offset] = amount.unscaledValue().longValue();
+                scaleColumn[chunk][offset] = amount.scale();
+            } else {
+                scaleColumn[chunk][offset] = WIDE_SCALE;
+                wideAmounts.put(sequence, amount);
+            }
+            from.add(sequence, firstRetained);
+            if (to != from) {
+                to.add(sequence, firstRetained);
+            }
+            size = sequence + 1;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @param accountId Account whose transfers are queried, in either direction
+     * @param cursor    Only transfers with a lower sequence are returned, null for the newest ones
+     * @param limit     Maximum number of transfers returned
+     * @return the transfers of the account, newest first
+     */
+    public TransferPage page(String accountId, Long cursor, int limit) {
+        AccountIndex index = accounts.get(accountId);
+        if (index == null) {
+            return new TransferPage(Collections.emptyList(), null);
+        }
+        long count = index.count;
+        Segments segments = index.segments;
+        long position = index.lastBefore(segments, count, cursor == null ? Long.MAX_VALUE : cursor);
+        List<TransferEntry> transfers = new ArrayList<>(Math.min(limit, 64));
+        while (position >= segments.base && transfers.size() < limit) {
+            TransferEntry entry = read(segments.get(position));
+            if (entry == null) {
+                break;
+            }
+            transfers.add(entry);
+            position--;
+        }
+        boolean more = position >= segments.base && segments.get(position) >= firstRetained;
+        Long nextCursor = more && !transfers.isEmpty() ? transfers.get(transfers.size() - 1).getSequence() : null;
+        return new TransferPage(transfers, nextCursor);
+    }
+
+    /**
+     * @return number of transfers recorded so far, including dropped ones
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the entry, or null if it has been dropped
+     */
+    private TransferEntry read(long sequence) {
+        if (sequence < firstRetained) {
+            return null;
+        }
+        int chunk = (int) ((sequence >>> CHUNK_SHIFT) % chunkCount);
+        int offset = (int) (sequence & (CHUNK_SIZE - 1));
+        AccountIndex[] ordinals = byOrdinal;
+        String fromAccountId = ordinals[fromColumn[chunk][offset]].accountId;
+        String toAccountId = ordinals[toColumn[chunk][offset]].accountId;
+        long timestamp = timestampColumn[chunk][offset];
+        int scale = scaleColumn[chunk][offset];
+        BigDecimal amount = scale == WIDE_SCALE ? wideAmounts.get(sequence)
+                : BigDecimal.valueOf(unscaledColumn[chunk][offset], scale);
+        if (sequence < firstRetained || amount == null) {
+            // overwritten while being read
+            return null;
+        }
+        return new TransferEntry(sequence, fromAccountId, toAccountId, amount, timestamp);
+    }
+
+    private void allocate(int chunk) {
+        fromColumn[chunk] = new int[CHUNK_SIZE];
+        toColumn[chunk] = new int[CHUNK_SIZE];
+        unscaledColumn[chunk] = new long[CHUNK_SIZE];
+        scaleColumn[chunk] = new int[CHUNK_SIZE];
+        timestampColumn[chunk] = new long[CHUNK_SIZE];
+    }
+
+    /**
+     * @return the index of the account, created if needed. The caller must hold the append lock.
+     */
+    private AccountIndex index(String accountId) {
+        AccountIndex index = accounts.get(accountId);
+        if (index == null) {
+            AccountIndex[] ordinals = byOrdinal;
+            int ordinal = accounts.size();
+            if (ordinal == ordinals.length) {
+                AccountIndex[] grown = new AccountIndex[ordinals.length * 2];
+                System.arraycopy(ordinals, 0, grown, 0, ordinals.length);
+                ordinals = grown;
+            }
+            index = new AccountIndex(accountId, ordinal);
+            ordinals[ordinal] = index;
+            byOrdinal = ordinals;
+            accounts.put(accountId, index);
+        }
+        return index;
+    }
+
+    /**
+     * Sequence numbers of the transfers of an account, in increasing order.
+     */
+    private static final class AccountIndex {
+
+        private final String accountId;
+
+        private final int ordinal;
+
+        private volatile Segments segments = new Segments(0, new long[][]{new long[INDEX_CHUNK_SIZE]});
+
+        private volatile long count;
+
+        private AccountIndex(String accountId, int ordinal) {
+            this.accountId = accountId;
+            this.ordinal = ordinal;
+        }
+
+        /**
+         * The caller must hold the append lock.
+         */
+        private void add(long sequence, long firstRetained) {
+            Segments current = segments;
+            long position = count;
+            if (position - current.base == (long) current.chunks.length * INDEX_CHUNK_SIZE) {
+                current = current.grow(firstRetained);
+                segments = current;
+            }
+            current.set(position, sequence);
+            count = position + 1;
+        }
+
+        /**
+         * @return position of the last transfer with a sequence below the cursor, or below the base if none
+         */
+        private long lastBefore(Segments segments, long count, long cursor) {
+            long low = segments.base;
+            long high = count - 1;
+            while (low <= high) {
+                long middle = (low + high) >>> 1;
+                if (segments.get(middle) < cursor) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high;
+        }
+    }
+
+    /**
+     * Chunks of an account index, the first one holding the position {@link #base}.
+     */
+    private static final class Segments {
+
+        private final long base;
+
+        private final long[][] chunks;
+
+        private Segments(long base, long[][] chunks) {
+            this.base = base;
+            this.chunks = chunks;
+        }
+
+        private long get(long position) {
+            long relative = position - base;
+            return chunks[(int) (relative / INDEX_CHUNK_SIZE)][(int) (relative % INDEX_CHUNK_SIZE)];
+        }
+
+        private void set(long position, long sequence) {
+            long relative = position - base;
+            chunks[(int) (relative / INDEX_CHUNK_SIZE)][(int) (relative % INDEX_CHUNK_SIZE)] = sequence;
+        }
+
+        /**
+         * @return segments with one more chunk, without the leading chunks holding only dropped transfers
+         */
+        private Segments grow(long firstRetained) {
+            int dropped = 0;
+            while (dropped < chunks.length && chunks[dropped][INDEX_CHUNK_SIZE - 1] < firstRetained) {
+                dropped++;
+            }
+            long[][] grown = new long[chunks.length - dropped + 1][];
+            System.arraycopy(chunks, dropped, grown, 0, chunks.length - dropped);
+            grown[grown.length - 1] = new long[INDEX_CHUNK_SIZE];
+            return new Segments(base + (long) dropped * INDEX_CHUNK_SIZE, grown);
+        }
+    }
+}
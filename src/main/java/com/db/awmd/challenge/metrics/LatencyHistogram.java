@@ -0,0 +1,72 @@
+package com.db.awmd.challenge.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Latency distribution recorded in nanoseconds. Recording is wait-free; reads swap out the values recorded since
+ * the previous read and fold them into the totals, one read at a time. Reads take a {@link ReentrantLock} rather
+ * than a monitor, so a virtual thread waiting for another read does not pin its carrier.
+ */
+class LatencyHistogram {
+
+    private static final double NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+
+    private final Recorder recorder = new Recorder(2);
+
+    private final Histogram total = new Histogram(2);
+
+    private final Lock readLock = new ReentrantLock();
+
+    private Histogram interval;
+
+    void record(long nanos) {
+        recorder.recordValue(Math.max(0, nanos));
+    }
+
+    /**
+     * @return count, and mean, percentiles and maximum in microseconds, of every value recorded so far
+     */
+    Map<String, Object> snapshot() {
+        readLock.lock();
+        try {
+            fold();
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("count", total.getTotalCount());
+            snapshot.put("meanMicros", total.getMean() / NANOS_PER_MICRO);
+            snapshot.put("p50Micros", micros(50));
+            snapshot.put("p90Micros", micros(90));
+            snapshot.put("p99Micros", micros(99));
+            snapshot.put("p999Micros", micros(99.9));
+            snapshot.put("maxMicros", total.getMaxValue() / NANOS_PER_MICRO);
+            return snapshot;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    long getCount() {
+        readLock.lock();
+        try {
+            fold();
+            return total.getTotalCount();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private void fold() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+    }
+
+    private double micros(double percentile) {
+        return total.getValueAtPercentile(percentile) / NANOS_PER_MICRO;
+    }
+}
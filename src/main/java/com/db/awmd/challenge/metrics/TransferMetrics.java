@@ -0,0 +1,247 @@
+package com.db.awmd.challenge.metrics;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Transfer latencies, outcomes and lock contention, cheap enough to record on every transfer.
+ * <p>
+ * Lock wait and hold times are kept per bucket of accounts, hashed by account id, so contention shows up without
+ * a histogram per account. Hot accounts are estimated from a sample of the transfers; once the maximum number of
+ * tracked accounts is reached, accounts not seen before are not tracked.
+ */
+@Component
+public class TransferMetrics {
+
+    private static final int TOP_ACCOUNTS = 10;
+
+    private final LatencyHistogram transferLatency = new LatencyHistogram();
+
+    private final Map<String, LatencyHistogram> endpointLatency = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram[] lockWait;
+
+    private final LatencyHistogram[] lockHold;
+
+    private final LongAdder[] outcomes = new LongAdder[TransferStatus.values().length];
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder lockTimeouts = new LongAdder();
+
+    private final LongAdder busyRetries = new LongAdder();
+
+    private final LongAdder admissionsDelayed = new LongAdder();
+
+    private final LongAdder admissionsRejected = new LongAdder();
+
+    private final int sampleRate;
+
+    private final int maxTrackedAccounts;
+
+    private final Map<String, LongAdder> sampledAccounts = new ConcurrentHashMap<>();
+
+    /**
+     * Values read when the metrics are rendered, in the order they were registered.
+     */
+    private final Map<String, Supplier<?>> gauges = new LinkedHashMap<>();
+
+    public TransferMetrics() {
+        this(64, 16, 10000);
+    }
+
+    /**
+     * @param lockBuckets        Number of account buckets lock times are kept for, rounded down to a power of two
+     * @param sampleRate         One in this many transfers counts towards the hot accounts, rounded down to a power
+     *                           of two
+     * @param maxTrackedAccounts Maximum number of accounts counted towards the hot accounts
+     */
+    @Autowired
+    public TransferMetrics(@Value("${challenge.metrics.lock-buckets:64}") int lockBuckets,
+                           @Value("${challenge.metrics.hot-account-sample-rate:16}") int sampleRate,
+                           @Value("${challenge.metrics.max-tracked-accounts:10000}") int maxTrackedAccounts) {
+        int buckets = Integer.highestOneBit(Math.max(1, lockBuckets));
+        this.lockWait = new LatencyHistogram[buckets];
+        this.lockHold = new LatencyHistogram[buckets];
+        for (int i = 0; i < buckets; i++) {
+            lockWait[i] = new LatencyHistogram();
+            lockHold[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+        this.sampleRate = Integer.highestOneBit(Math.max(1, sampleRate));
+        this.maxTrackedAccounts = maxTrackedAccounts;
+    }
+
+    /**
+     * @param status Outcome of the transfer, or null if it failed unexpectedly
+     * @param nanos  Time taken by the transfer
+     */
+    public void recordTransfer(TransferStatus status, long nanos) {
+        transferLatency.record(nanos);
+        recordOutcome(status);
+    }
+
+    /**
+     * @param status Outcome of a transfer, or null if it failed unexpectedly
+     */
+    public void recordOutcome(TransferStatus status) {
+        if (status == null) {
+            errors.increment();
+        } else {
+            outcomes[status.ordinal()].increment();
+        }
+    }
+
+    /**
+     * @param endpoint HTTP method and path pattern of the request
+     * @param nanos    Time taken to handle the request
+     */
+    public void recordRequest(String endpoint, long nanos) {
+        LatencyHistogram latency = endpointLatency.get(endpoint);
+        if (latency == null) {
+            latency = endpointLatency.computeIfAbsent(endpoint, key -> new LatencyHistogram());
+        }
+        latency.record(nanos);
+    }
+
+    public void recordLockWait(Account account, long nanos) {
+        lockWait[bucketOf(account)].record(nanos);
+    }
+
+    public void recordLockHold(Account account, long nanos) {
+        lockHold[bucketOf(account)].record(nanos);
+    }
+
+    public void recordLockTimeout() {
+        lockTimeouts.increment();
+    }
+
+    /**
+     * Counts a transfer tried again after finding its accounts busy.
+     */
+    public void recordBusyRetry() {
+        busyRetries.increment();
+    }
+
+    /**
+     * Counts a transfer held back until its client and accounts were within their rate limits.
+     */
+    public void recordAdmissionDelayed() {
+        admissionsDelayed.increment();
+    }
+
+    /**
+     * Counts a transfer rejected for exceeding the rate limit of its client or of one of its accounts.
+     */
+    public void recordAdmissionRejected() {
+        admissionsRejected.increment();
+    }
+
+    /**
+     * Counts a sample of the transfers towards the hot accounts.
+     */
+    public void recordAccess(Account debit, Account credit) {
+        if ((ThreadLocalRandom.current().nextInt() & (sampleRate - 1)) != 0) {
+            return;
+        }
+        count(debit.getAccountId());
+        count(credit.getAccountId());
+    }
+
+    /**
+     * @return every metric, as a tree of maps ready to be rendered as JSON
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("transferLatency", transferLatency.snapshot());
+        Map<String, Object> outcomeCounts = new LinkedHashMap<>();
+        for (TransferStatus status : TransferStatus.values()) {
+            outcomeCounts.put(status.name(), outcomes[status.ordinal()].sum());
+        }
+        outcomeCounts.put("ERROR", errors.sum());
+        snapshot.put("outcomes", outcomeCounts);
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        endpointLatency.forEach((endpoint, latency) -> endpoints.put(endpoint, latency.snapshot()));
+        snapshot.put("endpointLatency", endpoints);
+        snapshot.put("lockTimeouts", lockTimeouts.sum());
+        snapshot.put("busyRetries", busyRetries.sum());
+        snapshot.put("admissionsDelayed", admissionsDelayed.sum());
+        snapshot.put("admissionsRejected", admissionsRejected.sum());
+        snapshot.put("lockWait", bucketSnapshot(lockWait));
+        snapshot.put("lockHold", bucketSnapshot(lockHold));
+        snapshot.put("hotAccounts", hotAccounts());
+        synchronized (gauges) {
+            gauges.forEach((name, gauge) -> snapshot.put(name, gauge.get()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Adds a value kept elsewhere, such as a queue depth, to the snapshot, read each time the snapshot is taken.
+     * A gauge registered again under the same name replaces the previous one.
+     *
+     * @param name  Key of the value in the snapshot
+     * @param gauge Reads the current value, cheaply and without blocking
+     */
+    public void registerGauge(String name, Supplier<?> gauge) {
+        synchronized (gauges) {
+            gauges.put(name, gauge);
+        }
+    }
+
+    /**
+     * @return the most transferred accounts with their estimated number of transfers, busiest first
+     */
+    public Map<String, Long> hotAccounts() {
+        List<Map.Entry<String, Long>> counts = new ArrayList<>(sampledAccounts.size());
+        sampledAccounts.forEach((accountId, count) ->
+                counts.add(new AbstractMap.SimpleImmutableEntry<>(accountId, count.sum() * sampleRate)));
+        counts.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        Map<String, Long> hot = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> count : counts.subList(0, Math.min(TOP_ACCOUNTS, counts.size()))) {
+            hot.put(count.getKey(), count.getValue());
+        }
+        return hot;
+    }
+
+    private void count(String accountId) {
+        LongAdder count = sampledAccounts.get(accountId);
+        if (count == null) {
+            if (sampledAccounts.size() >= maxTrackedAccounts) {
+                return;
+            }
+            count = sampledAccounts.computeIfAbsent(accountId, key -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    private int bucketOf(Account account) {
+        int hash = account.getAccountId().hashCode();
+        return (hash ^ (hash >>> 16)) & (lockWait.length - 1);
+    }
+
+    private static Map<String, Object> bucketSnapshot(LatencyHistogram[] buckets) {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i].getCount() > 0) {
+                snapshot.put(Integer.toString(i), buckets[i].snapshot());
+            }
+        }
+        return snapshot;
+    }
+}
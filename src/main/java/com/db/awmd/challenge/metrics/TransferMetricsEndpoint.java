@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint exposing the {@link TransferMetrics} at /transfermetrics.
+ */
+@Component
+@Endpoint(id = "transfermetrics")
+public class TransferMetricsEndpoint {
+
+    private final TransferMetrics transferMetrics;
+
+    @Autowired
+    public TransferMetricsEndpoint(TransferMetrics transferMetrics) {
+        this.transferMetrics = transferMetrics;
+    }
+
+    @ReadOperation
+    public Map<String, Object> invoke() {
+        return transferMetrics.snapshot();
+    }
+}
@@ -0,0 +1,22 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+
+/**
+ * Repository giving each account a dense int handle, so that callers resolving an id once can look the account up
+ * again without hashing its id.
+ */
+public interface AccountHandles {
+
+  int NO_HANDLE = -1;
+
+  /**
+   * @return handle of the account, or {@link #NO_HANDLE} if there is no account with this id
+   */
+  int handleOf(String accountId);
+
+  /**
+   * @return the account with this handle, or null if there is none
+   */
+  Account getAccount(int handle);
+}
@@ -2,12 +2,32 @@ package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public interface AccountsRepository {
 
   void createAccount(Account account) throws DuplicateAccountIdException;
 
+  /**
+   * Creates a batch of accounts. An account that cannot be created does not stop the others. If the call throws
+   * nonetheless, the accounts passed to {@code created} before were created and stay.
+   *
+   * @param accounts Accounts to be created
+   * @param created  Receives each account as soon as it was created
+   * @param rejected Receives each account that was not created, with the reason
+   */
+  void createAccounts(List<Account> accounts, Consumer<Account> created,
+      BiConsumer<Account, RuntimeException> rejected);
+
   Account getAccount(String accountId);
 
+  /**
+   * Visits every account without blocking transfers or account creation. Accounts created during the visit may
+   * or may not be seen, and each balance is read as it is when its account is visited.
+   */
+  void forEachAccount(Consumer<Account> action);
+
   void clearAccounts();
 }
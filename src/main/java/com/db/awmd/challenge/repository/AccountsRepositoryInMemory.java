@@ -2,11 +2,16 @@ package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 @Repository
+@ConditionalOnProperty(name = "challenge.accounts.store", havingValue = "HEAP", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
   private final Map<String, Account> accounts = new ConcurrentHashMap<>();
@@ -20,11 +25,30 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
     }
   }
 
+  @Override
+  public void createAccounts(List<Account> accounts, Consumer<Account> created,
+      BiConsumer<Account, RuntimeException> rejected) {
+    for (Account account : accounts) {
+      try {
+        createAccount(account);
+      } catch (DuplicateAccountIdException e) {
+        rejected.accept(account, e);
+        continue;
+      }
+      created.accept(account);
+    }
+  }
+
   @Override
   public Account getAccount(String accountId) {
     return accounts.get(accountId);
   }
 
+  @Override
+  public void forEachAccount(Consumer<Account> action) {
+    accounts.values().forEach(action);
+  }
+
   @Override
   public void clearAccounts() {
     accounts.clear();
@@ -0,0 +1,208 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AccountStoreFullException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository interning account ids into dense int handles, assigned in creation order.
+ * <p>
+ * Accounts are kept in chunked arrays indexed by handle, and ids are mapped to handles by an open-addressing table
+ * of primitive ints holding the handle and the hash of its id. Compared to a map of String keys there is no entry
+ * object per account, and lookups by handle skip hashing altogether.
+ * <p>
+ * Lookups are lock-free: a handle is only visible once the volatile account count has been raised past it.
+ */
+@Repository
+@ConditionalOnProperty(name = "challenge.accounts.store", havingValue = "INTERNED")
+public class InternedAccountsRepository implements AccountsRepository, AccountHandles {
+
+  private static final int CHUNK_SHIFT = 14;
+
+  private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+  private final int capacity;
+
+  private final Account[][] chunks;
+
+  private final int[] handles;
+
+  private final int[] hashes;
+
+  private final int indexMask;
+
+  private final Lock writeLock = new ReentrantLock();
+
+  private volatile int size;
+
+  public InternedAccountsRepository(@Value("${challenge.accounts.interned.capacity:1048576}") int capacity) {
+    this.capacity = capacity;
+    this.chunks = new Account[(capacity + CHUNK_SIZE - 1) >>> CHUNK_SHIFT][];
+    int indexSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+    this.handles = new int[indexSize];
+    this.hashes = new int[indexSize];
+    this.indexMask = indexSize - 1;
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    writeLock.lock();
+    try {
+      insert(account);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Creates the batch under a single acquisition of the write lock.
+   */
+  @Override
+  public void createAccounts(List<Account> accounts, Consumer<Account> created,
+      BiConsumer<Account, RuntimeException> rejected) {
+    writeLock.lock();
+    try {
+      for (Account account : accounts) {
+        try {
+          insert(account);
+        } catch (DuplicateAccountIdException | AccountStoreFullException e) {
+          rejected.accept(account, e);
+          continue;
+        }
+        created.accept(account);
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public Account getAccount(String accountId) {
+    return getAccount(handleOf(accountId));
+  }
+
+  @Override
+  public int handleOf(String accountId) {
+    int hash = hash(accountId);
+    int published = size;
+    int position = hash & indexMask;
+    while (true) {
+      // each entry is read once: an empty entry filled in by a concurrent insert must not be read again, or the
+      // handle of another id would be returned
+      int handle = handles[position] - 1;
+      if (handle < 0) {
+        return NO_HANDLE;
+      }
+      if (matches(handle, published, position, accountId, hash)) {
+        return handle;
+      }
+      position = (position + 1) & indexMask;
+    }
+  }
+
+  @Override
+  public Account getAccount(int handle) {
+    if (handle < 0 || handle >= size) {
+      return null;
+    }
+    return chunks[handle >>> CHUNK_SHIFT][handle & (CHUNK_SIZE - 1)];
+  }
+
+  @Override
+  public void forEachAccount(Consumer<Account> action) {
+    int published = size;
+    for (int handle = 0; handle < published; handle++) {
+      action.accept(chunks[handle >>> CHUNK_SHIFT][handle & (CHUNK_SIZE - 1)]);
+    }
+  }
+
+  @Override
+  public void clearAccounts() {
+    writeLock.lock();
+    try {
+      Arrays.fill(handles, 0);
+      for (Account[] chunk : chunks) {
+        if (chunk != null) {
+          Arrays.fill(chunk, null);
+        }
+      }
+      size = 0;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * @return number of accounts stored
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Assigns the next handle to the account. The caller must hold the write lock.
+   */
+  private void insert(Account account) {
+    String accountId = account.getAccountId();
+    int hash = hash(accountId);
+    int position = probe(accountId, hash);
+    if (handles[position] != 0) {
+      throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+    }
+    int handle = size;
+    if (handle == capacity) {
+      throw new AccountStoreFullException("Interned account store is full, capacity " + capacity);
+    }
+    Account[] chunk = chunks[handle >>> CHUNK_SHIFT];
+    if (chunk == null) {
+      chunk = new Account[CHUNK_SIZE];
+      chunks[handle >>> CHUNK_SHIFT] = chunk;
+    }
+    chunk[handle & (CHUNK_SIZE - 1)] = account;
+    hashes[position] = hash;
+    handles[position] = handle + 1;
+    size = handle + 1;
+  }
+
+  /**
+   * The caller must hold the write lock.
+   *
+   * @return position of the id in the index, or of the empty entry where it would be inserted
+   */
+  private int probe(String accountId, int hash) {
+    int position = hash & indexMask;
+    while (true) {
+      int handle = handles[position] - 1;
+      if (handle < 0 || matches(handle, Integer.MAX_VALUE, position, accountId, hash)) {
+        return position;
+      }
+      position = (position + 1) & indexMask;
+    }
+  }
+
+  /**
+   * @param published Handles at or above this bound are being written concurrently and are skipped
+   */
+  private boolean matches(int handle, int published, int position, String accountId, int hash) {
+    if (handle >= published || hashes[position] != hash) {
+      return false;
+    }
+    // null only while racing with clearAccounts
+    Account account = chunks[handle >>> CHUNK_SHIFT][handle & (CHUNK_SIZE - 1)];
+    return account != null && account.getAccountId().equals(accountId);
+  }
+
+  private static int hash(String accountId) {
+    int hash = accountId.hashCode() * 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,324 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.exception.AccountStoreFullException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.ValidationException;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository keeping account ids and balances in direct memory, outside the Java heap.
+ * <p>
+ * Accounts are stored in fixed size slots of direct buffer chunks: the balance as minor units, then the id as
+ * UTF-16 chars. An open-addressing table, also off-heap, maps ids to slots. Balances are guarded by a fixed
+ * set of striped locks, and {@link #getAccount(String)} returns a short-lived view of the slot, so the heap
+ * holds no per-account object at all.
+ * <p>
+ * Lookups are lock-free: a slot is only visible once the volatile account count has been raised past it.
+ */
+@Repository
+@ConditionalOnProperty(name = "challenge.accounts.store", havingValue = "OFF_HEAP")
+public class OffHeapAccountsRepository implements AccountsRepository, AccountHandles {
+
+  static final int MAX_ID_LENGTH = 32;
+
+  private static final int BALANCE_OFFSET = 0;
+
+  private static final int ID_LENGTH_OFFSET = 8;
+
+  private static final int ID_OFFSET = 10;
+
+  private static final int SLOT_SIZE = 80;
+
+  private static final int CHUNK_SHIFT = 16;
+
+  private static final int CHUNK_SLOTS = 1 << CHUNK_SHIFT;
+
+  private final int capacity;
+
+  private final ByteBuffer[] chunks;
+
+  private final IntBuffer index;
+
+  private final int indexMask;
+
+  private final ReentrantLock[] stripes;
+
+  private final Lock writeLock = new ReentrantLock();
+
+  private volatile int size;
+
+  public OffHeapAccountsRepository(@Value("${challenge.accounts.off-heap.capacity:1048576}") int capacity,
+                                   @Value("${challenge.accounts.off-heap.lock-stripes:1024}") int lockStripes) {
+    this.capacity = capacity;
+    this.chunks = new ByteBuffer[(capacity + CHUNK_SLOTS - 1) >>> CHUNK_SHIFT];
+    int indexSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+    this.index = ByteBuffer.allocateDirect(indexSize * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    this.indexMask = indexSize - 1;
+    this.stripes = new ReentrantLock[Integer.highestOneBit(Math.max(1, lockStripes))];
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    writeLock.lock();
+    try {
+      insert(account);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Creates the batch under a single acquisition of the write lock.
+   */
+  @Override
+  public void createAccounts(List<Account> accounts, Consumer<Account> created,
+      BiConsumer<Account, RuntimeException> rejected) {
+    writeLock.lock();
+    try {
+      for (Account account : accounts) {
+        try {
+          insert(account);
+        } catch (DuplicateAccountIdException | ValidationException | AccountStoreFullException e) {
+          rejected.accept(account, e);
+          continue;
+        }
+        created.accept(account);
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public Account getAccount(String accountId) {
+    int slot = handleOf(accountId);
+    if (slot < 0) {
+      return null;
+    }
+    return new AccountView(this, accountId, slot);
+  }
+
+  /**
+   * @return slot of the account, which serves as its handle
+   */
+  @Override
+  public int handleOf(String accountId) {
+    if (accountId.length() > MAX_ID_LENGTH) {
+      return NO_HANDLE;
+    }
+    int published = size;
+    int position = position(accountId);
+    while (true) {
+      // each entry is read once: an empty entry filled in by a concurrent insert must not be read again, or the
+      // slot of another id would be returned
+      int slot = index.get(position) - 1;
+      if (slot < 0) {
+        return NO_HANDLE;
+      }
+      if (slot < published && idEquals(slot, accountId)) {
+        return slot;
+      }
+      position = (position + 1) & indexMask;
+    }
+  }
+
+  @Override
+  public Account getAccount(int handle) {
+    if (handle < 0 || handle >= size) {
+      return null;
+    }
+    return new AccountView(this, readId(handle), handle);
+  }
+
+  @Override
+  public void forEachAccount(Consumer<Account> action) {
+    int published = size;
+    for (int slot = 0; slot < published; slot++) {
+      action.accept(new AccountView(this, readId(slot), slot));
+    }
+  }
+
+  @Override
+  public void clearAccounts() {
+    writeLock.lock();
+    try {
+      for (int i = 0; i <= indexMask; i++) {
+        index.put(i, 0);
+      }
+      size = 0;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * @return number of accounts stored
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Writes the account to the next free slot. The caller must hold the write lock.
+   */
+  private void insert(Account account) {
+    String accountId = account.getAccountId();
+    if (accountId.length() > MAX_ID_LENGTH) {
+      throw new ValidationException("Account id longer than " + MAX_ID_LENGTH + " characters is not supported");
+    }
+    long balance = MinorUnits.toMinorUnits(account.getBalance());
+    int position = probe(accountId);
+    if (index.get(position) != 0) {
+      throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+    }
+    int slot = size;
+    if (slot == capacity) {
+      throw new AccountStoreFullException("Off-heap account store is full, capacity " + capacity);
+    }
+    ByteBuffer chunk = chunk(slot);
+    int offset = offset(slot);
+    chunk.putLong(offset + BALANCE_OFFSET, balance);
+    chunk.putShort(offset + ID_LENGTH_OFFSET, (short) accountId.length());
+    for (int i = 0; i < accountId.length(); i++) {
+      chunk.putChar(offset + ID_OFFSET + 2 * i, accountId.charAt(i));
+    }
+    index.put(position, slot + 1);
+    size = slot + 1;
+  }
+
+  /**
+   * The caller must hold the write lock.
+   *
+   * @return position of the id in the index, or of the empty entry where it would be inserted
+   */
+  private int probe(String accountId) {
+    int position = position(accountId);
+    while (true) {
+      int slot = index.get(position) - 1;
+      if (slot < 0 || idEquals(slot, accountId)) {
+        return position;
+      }
+      position = (position + 1) & indexMask;
+    }
+  }
+
+  /**
+   * @return first index position probed for the id
+   */
+  private int position(String accountId) {
+    int hash = accountId.hashCode() * 0x9E3779B9;
+    return (hash ^ (hash >>> 16)) & indexMask;
+  }
+
+  private boolean idEquals(int slot, String accountId) {
+    ByteBuffer chunk = chunk(slot);
+    int offset = offset(slot);
+    if (chunk.getShort(offset + ID_LENGTH_OFFSET) != accountId.length()) {
+      return false;
+    }
+    for (int i = 0; i < accountId.length(); i++) {
+      if (chunk.getChar(offset + ID_OFFSET + 2 * i) != accountId.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private String readId(int slot) {
+    ByteBuffer chunk = chunk(slot);
+    int offset = offset(slot);
+    char[] id = new char[chunk.getShort(offset + ID_LENGTH_OFFSET)];
+    for (int i = 0; i < id.length; i++) {
+      id[i] = chunk.getChar(offset + ID_OFFSET + 2 * i);
+    }
+    return new String(id);
+  }
+
+  private ByteBuffer chunk(int slot) {
+    int chunkIndex = slot >>> CHUNK_SHIFT;
+    ByteBuffer chunk = chunks[chunkIndex];
+    if (chunk == null) {
+      // only the writer reaches an unallocated chunk, readers are bounded by the published size
+      chunk = ByteBuffer.allocateDirect(CHUNK_SLOTS * SLOT_SIZE).order(ByteOrder.nativeOrder());
+      chunks[chunkIndex] = chunk;
+    }
+    return chunk;
+  }
+
+  private static int offset(int slot) {
+    return (slot & (CHUNK_SLOTS - 1)) * SLOT_SIZE;
+  }
+
+  private long minorUnits(int slot) {
+    return chunk(slot).getLong(offset(slot) + BALANCE_OFFSET);
+  }
+
+  private void setMinorUnits(int slot, long minorUnits) {
+    chunk(slot).putLong(offset(slot) + BALANCE_OFFSET, minorUnits);
+  }
+
+  /**
+   * View of an account slot. Balance changes must hold {@link #getLock()}, the stripe lock of the slot.
+   */
+  public static final class AccountView extends Account {
+
+    private final OffHeapAccountsRepository store;
+
+    private final int slot;
+
+    private AccountView(OffHeapAccountsRepository store, String accountId, int slot) {
+      super(accountId, store.stripes[slot & (store.stripes.length - 1)]);
+      this.store = store;
+      this.slot = slot;
+    }
+
+    @Override
+    public BigDecimal getBalance() {
+      return MinorUnits.toBigDecimal(store.minorUnits(slot));
+    }
+
+    @Override
+    public void setBalance(BigDecimal balance) {
+      store.setMinorUnits(slot, MinorUnits.toMinorUnits(balance));
+    }
+
+    @Override
+    @JsonIgnore
+    public int getLockRank() {
+      return slot & (store.stripes.length - 1);
+    }
+
+    @Override
+    public boolean applyDebit(BigDecimal amount) {
+      long units = MinorUnits.toMinorUnits(amount);
+      long current = store.minorUnits(slot);
+      if (current < units) {
+        return false;
+      }
+      store.setMinorUnits(slot, current - units);
+      return true;
+    }
+
+    @Override
+    public void applyCredit(BigDecimal amount) {
+      store.setMinorUnits(slot, Math.addExact(store.minorUnits(slot), MinorUnits.toMinorUnits(amount)));
+    }
+  }
+}
@@ -1,9 +1,29 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceMode;
+import com.db.awmd.challenge.domain.HotAccount;
+import com.db.awmd.challenge.domain.ScaledBalanceAccount;
+import com.db.awmd.challenge.exception.JournalException;
+import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.journal.JournalRecord;
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.repository.AccountHandles;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import jakarta.annotation.PostConstruct;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -12,16 +32,144 @@ public class AccountsService {
   @Getter
   private final AccountsRepository accountsRepository;
 
-  @Autowired
+  @Getter
+  private final BalanceMode balanceMode;
+
+  private final TransferJournal transferJournal;
+
+  private final Set<String> hotAccountIds;
+
   public AccountsService(AccountsRepository accountsRepository) {
+    this(accountsRepository, BalanceMode.DECIMAL, TransferJournal.NONE);
+  }
+
+  public AccountsService(AccountsRepository accountsRepository, BalanceMode balanceMode,
+                         TransferJournal transferJournal) {
+    this(accountsRepository, balanceMode, transferJournal, new String[0]);
+  }
+
+  /**
+   * @param hotAccountIds Accounts receiving many concurrent credits, kept as {@link HotAccount}
+   */
+  @Autowired
+  public AccountsService(AccountsRepository accountsRepository,
+                         @Value("${challenge.accounts.balance-mode:DECIMAL}") BalanceMode balanceMode,
+                         TransferJournal transferJournal,
+                         @Value("${challenge.accounts.hot-accounts:}") String[] hotAccountIds) {
     this.accountsRepository = accountsRepository;
+    this.balanceMode = balanceMode;
+    this.transferJournal = transferJournal;
+    this.hotAccountIds = new HashSet<>(Arrays.asList(hotAccountIds));
+  }
+
+  /**
+   * Restores the accounts recorded in the journal.
+   */
+  @PostConstruct
+  public void recoverAccounts() {
+    this.transferJournal.replay((accountId, balance) ->
+      this.accountsRepository.createAccount(toBalanceMode(new Account(accountId, balance))));
   }
 
+  /**
+   * Creates the account and journals its initial balance. The record is built before the account is published, as
+   * transfers to it may be applied and journaled before its creation is.
+   */
   public void createAccount(Account account) {
-    this.accountsRepository.createAccount(account);
+    Account created = toBalanceMode(account);
+    JournalRecord record = JournalRecord.created(created.getAccountId(), created.getBalance());
+    this.accountsRepository.createAccount(created);
+    try {
+      this.transferJournal.write(record);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new JournalException("Interrupted while journaling account " + created.getAccountId(), e);
+    }
+  }
+
+  /**
+   * Creates a batch of accounts, waiting once for all of them to be journaled. The accounts created are journaled
+   * even if the account store fails part way through the batch, so that none of them is lost on restart.
+   *
+   * @param accounts Accounts to be created
+   * @param rejected Receives each account that was not created, with the reason
+   * @return number of accounts created
+   */
+  public int createAccounts(List<Account> accounts, BiConsumer<Account, RuntimeException> rejected) {
+    List<Account> valid = new ArrayList<>(accounts.size());
+    Map<Account, JournalRecord> records = new IdentityHashMap<>(accounts.size() * 2);
+    Map<Account, Account> originals = new IdentityHashMap<>(accounts.size() * 2);
+    for (Account account : accounts) {
+      if (account.getAccountId() == null || account.getAccountId().isEmpty()) {
+        rejected.accept(account, new ValidationException("Account id is required"));
+      } else if (account.getBalance() == null || account.getBalance().signum() < 0) {
+        rejected.accept(account, new ValidationException("Initial balance must be positive."));
+      } else {
+        Account created = toBalanceMode(account);
+        try {
+          records.put(created, JournalRecord.created(created.getAccountId(), created.getBalance()));
+        } catch (ValidationException e) {
+          rejected.accept(account, e);
+          continue;
+        }
+        valid.add(created);
+        originals.put(created, account);
+      }
+    }
+    List<JournalRecord> inserted = new ArrayList<>(valid.size());
+    try {
+      this.accountsRepository.createAccounts(valid, account -> inserted.add(records.get(account)),
+          (account, reason) -> rejected.accept(originals.get(account), reason));
+    } finally {
+      journalCreated(inserted);
+    }
+    return inserted.size();
   }
 
   public Account getAccount(String accountId) {
     return this.accountsRepository.getAccount(accountId);
   }
+
+  /**
+   * @return handle of the account, or {@link AccountHandles#NO_HANDLE} if there is no account with this id
+   * @throws ValidationException if the account store does not hand out handles
+   */
+  public int getAccountHandle(String accountId) {
+    if (!(this.accountsRepository instanceof AccountHandles)) {
+      throw new ValidationException("Account handles are not supported by the configured account store");
+    }
+    return ((AccountHandles) this.accountsRepository).handleOf(accountId);
+  }
+
+  /**
+   * Visits every account without blocking transfers, see {@link AccountsRepository#forEachAccount(Consumer)}.
+   */
+  public void forEachAccount(Consumer<Account> action) {
+    this.accountsRepository.forEachAccount(action);
+  }
+
+  private void journalCreated(List<JournalRecord> records) {
+    CompletableFuture<Void> journaled = null;
+    for (JournalRecord record : records) {
+      journaled = this.transferJournal.append(record);
+    }
+    if (journaled != null) {
+      try {
+        TransferJournal.await(journaled);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new JournalException("Interrupted while journaling imported accounts", e);
+      }
+    }
+  }
+
+  private Account toBalanceMode(Account account) {
+    if (hotAccountIds.contains(account.getAccountId()) && account.getClass() == Account.class) {
+      return new HotAccount(account.getAccountId(), account.getBalance());
+    }
+    if (balanceMode == BalanceMode.SCALED && !(account instanceof ScaledBalanceAccount)) {
+      return new ScaledBalanceAccount(account.getAccountId(), account.getBalance());
+    }
+    return account;
+  }
 }
@@ -0,0 +1,133 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.OverloadedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the work of asynchronous requests on a fixed pool of workers, so that a transfer waiting for account locks
+ * holds a worker instead of a request thread.
+ * <p>
+ * Tasks still block: a transfer waiting for account locks or for the journal holds its worker all along, so once
+ * every worker waits on a few busy accounts, the other tasks queue behind them until they expire. The pool only
+ * moves the wait off the servlet threads and bounds it.
+ * <p>
+ * At most a configured number of tasks are admitted at a time, queued or running; beyond that, submissions fail
+ * straight away with {@link OverloadedException}. A task that waited in the queue longer than the queue timeout is
+ * failed the same way instead of being run, as its client has likely given up already.
+ * <p>
+ * With virtual threads enabled, every task runs on a virtual thread of its own instead, so a task blocked on
+ * account locks or on the journal only holds a carrier thread while it runs; the admissions alone bound the tasks
+ * in flight.
+ */
+@Component
+@Slf4j
+public class AsyncExecutor {
+
+    private final ExecutorService executor;
+
+    private final Semaphore admissions;
+
+    private final long queueTimeoutNanos;
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder expired = new LongAdder();
+
+    public AsyncExecutor(int threads, int maxConcurrent, long queueTimeoutMillis) {
+        this(threads, maxConcurrent, queueTimeoutMillis, false);
+    }
+
+    /**
+     * @param threads        Platform workers, ignored with virtual threads
+     * @param virtualThreads Run each task on a virtual thread of its own
+     */
+    @Autowired
+    public AsyncExecutor(@Value("${challenge.async.threads:16}") int threads,
+                         @Value("${challenge.async.max-concurrent:1000}") int maxConcurrent,
+                         @Value("${challenge.async.queue-timeout-ms:1000}") long queueTimeoutMillis,
+                         @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("async-worker-", 1).factory());
+        } else {
+            AtomicInteger count = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "async-worker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.admissions = new Semaphore(maxConcurrent);
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+    }
+
+    /**
+     * @return a future completed with the result of the task, or failed with its exception or with
+     * {@link OverloadedException} if it was not admitted or waited too long to start
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!admissions.tryAcquire()) {
+            rejected.increment();
+            result.completeExceptionally(new OverloadedException("Too many requests in flight, try again later"));
+            return result;
+        }
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> run(task, result, queuedAt));
+        } catch (RejectedExecutionException e) {
+            admissions.release();
+            result.completeExceptionally(new OverloadedException("Service is shutting down"));
+        }
+        return result;
+    }
+
+    /**
+     * @return number of tasks rejected because too many were in flight
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return number of tasks dropped because they waited in the queue longer than the queue timeout
+     */
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> void run(Callable<T> task, CompletableFuture<T> result, long queuedAt) {
+        try {
+            if (System.nanoTime() - queuedAt > queueTimeoutNanos) {
+                expired.increment();
+                log.warn("Dropped request queued for longer than {} ms",
+                        TimeUnit.NANOSECONDS.toMillis(queueTimeoutNanos));
+                result.completeExceptionally(new OverloadedException("Request waited too long, try again later"));
+                return;
+            }
+            result.complete(task.call());
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        } finally {
+            admissions.release();
+        }
+    }
+}
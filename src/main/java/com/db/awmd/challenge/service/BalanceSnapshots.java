@@ -0,0 +1,161 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Takes snapshots of all balances that are consistent with respect to transfers, while transfers go on.
+ * <p>
+ * Every transfer runs in an epoch, counted in flight from {@link #enter()} to {@link #exit(long)}. Taking a
+ * snapshot starts a new epoch and waits for the transfers of the previous one to finish; transfers of the new
+ * epoch wait for that too, usually microseconds, before touching any account. From then on, a transfer of the
+ * new epoch {@link #capture(long, Account) captures} the balance of each of its accounts before changing it, the
+ * first capture of an account winning. The snapshot then visits every account and uses the captured balance of
+ * the accounts changed meanwhile: it includes every transfer of the previous epochs and none of the new one.
+ * <p>
+ * Accounts created while a snapshot is taken may be included with their initial balance.
+ */
+@Component
+@Slf4j
+public class BalanceSnapshots {
+
+    private static final int STRIPES = 64;
+
+    /**
+     * Counters a cache line apart, so threads on different stripes do not share one.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * Transfers in flight, per epoch parity and per stripe of threads. A transfer enters and exits on the same
+     * thread, hence on the same stripe, so no stripe ever goes below zero and a zero sum means none in flight.
+     */
+    private final AtomicLongArray inFlight = new AtomicLongArray(2 * STRIPES * PADDING);
+
+    private final Lock snapshotLock = new ReentrantLock();
+
+    private volatile long epoch;
+
+    private volatile Capture capture;
+
+    /**
+     * Registers a transfer in the current epoch. Must be followed by {@link #exit(long)} on the same thread.
+     *
+     * @return the epoch of the transfer
+     */
+    public long enter() {
+        while (true) {
+            long current = epoch;
+            int index = index(current);
+            inFlight.incrementAndGet(index);
+            if (epoch == current) {
+                return current;
+            }
+            // a snapshot started meanwhile and may have missed this transfer, join the new epoch instead
+            inFlight.decrementAndGet(index);
+        }
+    }
+
+    public void exit(long epoch) {
+        inFlight.decrementAndGet(index(epoch));
+    }
+
+    /**
+     * Captures the balance of an account for the snapshot being taken, if any, before the transfer changes it.
+     *
+     * @param epoch   Epoch of the transfer, as returned by {@link #enter()}
+     * @param account Account about to be changed by the transfer
+     */
+    public void capture(long epoch, Account account) throws InterruptedException {
+        Capture current = capture;
+        if (current == null || epoch <= current.epoch) {
+            return;
+        }
+        current.drained.await();
+        current.balances.putIfAbsent(account.getAccountId(), account.getBalance());
+    }
+
+    /**
+     * Visits the balance of every account as it was at the end of the previous epoch.
+     *
+     * @param repository Accounts to be visited
+     * @param action     Receives a copy of each account with its snapshot balance
+     * @return the totals of the snapshot
+     */
+    public BalanceSnapshot snapshot(AccountsRepository repository, Consumer<Account> action) {
+        snapshotLock.lock();
+        Capture current = new Capture(epoch);
+        try {
+            long start = System.nanoTime();
+            capture = current;
+            epoch = current.epoch + 1;
+            awaitDrained(current.epoch);
+            current.drained.countDown();
+            log.debug("Snapshot of epoch {} waited {} us for transfers in flight", current.epoch,
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+
+            long[] accounts = new long[1];
+            BigDecimal[] total = {BigDecimal.ZERO};
+            repository.forEachAccount(account -> {
+                // a balance read before any capture of its account precedes every change of the new epoch
+                BigDecimal balance = account.getBalance();
+                BigDecimal captured = current.balances.get(account.getAccountId());
+                Account copy = new Account(account.getAccountId(), captured != null ? captured : balance);
+                accounts[0]++;
+                total[0] = total[0].add(copy.getBalance());
+                action.accept(copy);
+            });
+            log.info("Snapshot of epoch {}: {} accounts, {} captured, total {}", current.epoch, accounts[0],
+                    current.balances.size(), total[0]);
+            return new BalanceSnapshot(current.epoch, accounts[0], total[0], System.currentTimeMillis());
+        } finally {
+            capture = null;
+            current.drained.countDown();
+            snapshotLock.unlock();
+        }
+    }
+
+    private void awaitDrained(long epoch) {
+        int parity = (int) (epoch & 1) * STRIPES * PADDING;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            while (inFlight.get(parity + stripe * PADDING) > 0) {
+                LockSupport.parkNanos(1000);
+            }
+        }
+    }
+
+    private static int index(long epoch) {
+        int stripe = (int) (Thread.currentThread().threadId() & (STRIPES - 1));
+        return ((int) (epoch & 1) * STRIPES + stripe) * PADDING;
+    }
+
+    /**
+     * Balances captured for a snapshot, keyed by account id.
+     */
+    private static final class Capture {
+
+        private final long epoch;
+
+        private final CountDownLatch drained = new CountDownLatch(1);
+
+        private final Map<String, BigDecimal> balances = new ConcurrentHashMap<>();
+
+        private Capture(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
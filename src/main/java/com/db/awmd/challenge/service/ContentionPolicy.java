@@ -0,0 +1,94 @@
+package com.db.awmd.challenge.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How transfers deal with busy accounts: how long a transfer waits for its account locks, and how many times it is
+ * tried again, after a jittered exponential backoff, before the accounts are reported busy to the caller. Every
+ * attempt releases the locks it took, so a transfer backing off never holds up the others.
+ * <p>
+ * The backoff before attempt n + 1 is drawn uniformly between zero and {@code min(maxBackoff, backoff * 2^(n-1))},
+ * spreading out transfers that collided on the same accounts.
+ */
+@Component
+public class ContentionPolicy {
+
+    /**
+     * A single attempt waiting up to ten seconds for the locks.
+     */
+    public static final ContentionPolicy DEFAULT = new ContentionPolicy(10000, 1, 1, 100);
+
+    private final long lockTimeoutNanos;
+
+    private final int maxAttempts;
+
+    private final long backoffNanos;
+
+    private final long maxBackoffNanos;
+
+    /**
+     * @param lockTimeoutMillis Time an attempt waits for all its account locks
+     * @param maxAttempts       Attempts made before giving up, at least 1
+     * @param backoffMillis     Upper bound of the backoff before the second attempt, doubled for each later one
+     * @param maxBackoffMillis  Upper bound of any backoff
+     */
+    @Autowired
+    public ContentionPolicy(@Value("${challenge.transfer.contention.lock-timeout-ms:10000}") long lockTimeoutMillis,
+                            @Value("${challenge.transfer.contention.max-attempts:1}") int maxAttempts,
+                            @Value("${challenge.transfer.contention.backoff-ms:1}") long backoffMillis,
+                            @Value("${challenge.transfer.contention.max-backoff-ms:100}") long maxBackoffMillis) {
+        if (lockTimeoutMillis < 0 || maxAttempts < 1 || backoffMillis < 0 || maxBackoffMillis < backoffMillis) {
+            throw new IllegalArgumentException("Invalid contention policy: lock timeout " + lockTimeoutMillis
+                    + "ms, " + maxAttempts + " attempts, backoff " + backoffMillis + "ms up to " + maxBackoffMillis
+                    + "ms");
+        }
+        this.lockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(lockTimeoutMillis);
+        this.maxAttempts = maxAttempts;
+        this.backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+    }
+
+    /**
+     * @return time an attempt waits for all its account locks, in nanoseconds
+     */
+    public long getLockTimeoutNanos() {
+        return lockTimeoutNanos;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Waits before the next attempt, if there is one.
+     *
+     * @param failedAttempts Attempts made so far, all of which found the accounts busy
+     * @return true to try again, false to report the accounts busy
+     */
+    public boolean backOff(int failedAttempts) throws InterruptedException {
+        if (failedAttempts >= maxAttempts) {
+            return false;
+        }
+        long delay = backoffDelayNanos(failedAttempts);
+        if (delay > 0) {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(delay + 1));
+        }
+        return true;
+    }
+
+    /**
+     * @return upper bound of the backoff after the given number of failed attempts, in nanoseconds
+     */
+    public long backoffDelayNanos(int failedAttempts) {
+        int doublings = Math.min(failedAttempts - 1, 62);
+        if (backoffNanos > maxBackoffNanos >> doublings) {
+            return maxBackoffNanos;
+        }
+        return backoffNanos << doublings;
+    }
+}
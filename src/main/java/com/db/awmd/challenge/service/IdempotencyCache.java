@@ -0,0 +1,178 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.AccountBusyException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the outcome of transfers by idempotency key, so that a retried transfer is answered with the outcome of
+ * the first attempt instead of being applied again.
+ * <p>
+ * Keys expire after a fixed time to live. The cache is bounded by a ring of the most recently claimed keys: claiming
+ * a key evicts the oldest one, so the capacity should cover the peak transfer rate times the time to live. Evictions
+ * of keys that had not expired yet are counted by {@link #getEarlyEvictions()}.
+ * <p>
+ * Outcomes that leave the accounts untouched, such as {@link AccountBusyException}, are not remembered, so a retry
+ * runs the transfer again.
+ */
+@Component
+@Slf4j
+public class IdempotencyCache {
+
+    /**
+     * Transfer run for the first request of a key.
+     */
+    public interface Transfer {
+
+        void run() throws InterruptedException;
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries;
+
+    private final AtomicReferenceArray<Entry> ring;
+
+    private final AtomicLong claims = new AtomicLong();
+
+    private final long ttlNanos;
+
+    private final LongAdder duplicates = new LongAdder();
+
+    private final LongAdder earlyEvictions = new LongAdder();
+
+    public IdempotencyCache(@Value("${challenge.idempotency.capacity:100000}") int capacity,
+                            @Value("${challenge.idempotency.ttl-seconds:600}") long ttlSeconds) {
+        this.entries = new ConcurrentHashMap<>(capacity * 4 / 3 + 1);
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    /**
+     * Runs the transfer unless a request with the same key was seen before, in which case the outcome of that
+     * request is returned or thrown again, waiting for it if it is still in flight.
+     *
+     * @throws IdempotencyKeyReusedException when the key was used for a different transfer
+     */
+    public void run(String key, String fromAccountId, String toAccountId, BigDecimal amount, Transfer transfer)
+            throws InterruptedException {
+        long now = System.nanoTime();
+        Entry claimed = null;
+        while (true) {
+            Entry existing = entries.get(key);
+            if (existing != null && !existing.isExpired(now)) {
+                if (!existing.matches(fromAccountId, toAccountId, amount)) {
+                    throw new IdempotencyKeyReusedException(
+                            "Idempotency key " + key + " was used for another transfer");
+                }
+                duplicates.increment();
+                await(existing);
+                return;
+            }
+            if (claimed == null) {
+                claimed = new Entry(key, fromAccountId, toAccountId, amount, now + ttlNanos);
+            }
+            if (existing == null ? entries.putIfAbsent(key, claimed) == null : entries.replace(key, existing, claimed)) {
+                break;
+            }
+        }
+        track(claimed, now);
+
+        try {
+            transfer.run();
+            claimed.outcome.complete(null);
+        } catch (AccountBusyException | InterruptedException e) {
+            // nothing was applied, forget the key so a retry goes ahead
+            entries.remove(key, claimed);
+            claimed.outcome.completeExceptionally(e);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            claimed.outcome.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of requests answered from the cache
+     */
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    /**
+     * @return number of keys evicted before their time to live, a sign the capacity is too small
+     */
+    public long getEarlyEvictions() {
+        return earlyEvictions.sum();
+    }
+
+    private void track(Entry claimed, long now) {
+        int slot = (int) (claims.getAndIncrement() % ring.length());
+        Entry evicted = ring.getAndSet(slot, claimed);
+        if (evicted != null && entries.remove(evicted.key, evicted) && !evicted.isExpired(now)) {
+            earlyEvictions.increment();
+            log.debug("Evicted idempotency key {} before it expired", evicted.key);
+        }
+    }
+
+    private static void await(Entry entry) throws InterruptedException {
+        try {
+            entry.outcome.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    private static final class Entry {
+
+        private final String key;
+
+        private final String fromAccountId;
+
+        private final String toAccountId;
+
+        private final BigDecimal amount;
+
+        private final long expiresAtNanos;
+
+        private final CompletableFuture<Void> outcome = new CompletableFuture<>();
+
+        private Entry(String key, String fromAccountId, String toAccountId, BigDecimal amount, long expiresAtNanos) {
+            this.key = key;
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.amount = amount;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAtNanos > 0;
+        }
+
+        private boolean matches(String fromAccountId, String toAccountId, BigDecimal amount) {
+            return Objects.equals(this.fromAccountId, fromAccountId) && Objects.equals(this.toAccountId, toAccountId)
+                    && (this.amount == null ? amount == null : amount != null && this.amount.compareTo(amount) == 0);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Notification service that takes notifications off the request thread. Notifications are put on a bounded
+ * queue and delivered to the delegate by a single worker, which coalesces the notifications of each account
+ * found in a batch into one call.
+ * <p>
+ * With virtual threads enabled, the calls of a batch are made concurrently, each on a virtual thread of its own,
+ * and the worker waits for all of them before taking the next batch. Slow deliveries then overlap instead of
+ * adding up, while the notifications of an account are still delivered in order.
+ * <p>
+ * The queue depth, the lag of the last batch and the notifications delivered and dropped are published as gauges
+ * of the transfer metrics.
+ */
+@Primary
+@Service
+@ConditionalOnProperty(name = "challenge.notifications.async", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class NotificationDispatcher implements NotificationService {
+
+    /**
+     * What to do when a notification arrives and the queue is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Block the caller until there is room, pushing back on the transfer path.
+         */
+        BLOCK,
+
+        /**
+         * Discard the new notification.
+         */
+        DROP_NEWEST,
+
+        /**
+         * Discard the oldest queued notification to make room for the new one.
+         */
+        DROP_OLDEST
+    }
+
+    private final NotificationService delegate;
+
+    private final BlockingQueue<Notification> queue;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final int maxBatchSize;
+
+    private final Thread worker;
+
+    /**
+     * Runs the calls of a batch on virtual threads, null to make them on the worker.
+     */
+    private final ExecutorService deliveries;
+
+    private volatile boolean running = true;
+
+    private final LongAdder delivered = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder batches = new LongAdder();
+
+    private volatile long lastLagNanos;
+
+    @Autowired
+    public NotificationDispatcher(EmailNotificationService delegate, TransferMetrics transferMetrics,
+                                  @Value("${challenge.notifications.queue-capacity:10000}") int queueCapacity,
+                                  @Value("${challenge.notifications.overflow-policy:DROP_OLDEST}")
+                                          OverflowPolicy overflowPolicy,
+                                  @Value("${challenge.notifications.max-batch-size:256}") int maxBatchSize,
+                                  @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this((NotificationService) delegate, queueCapacity, overflowPolicy, maxBatchSize, virtualThreads);
+        registerGauges(transferMetrics);
+    }
+
+    public NotificationDispatcher(NotificationService delegate, int queueCapacity, OverflowPolicy overflowPolicy,
+                                  int maxBatchSize) {
+        this(delegate, queueCapacity, overflowPolicy, maxBatchSize, false);
+    }
+
+    /**
+     * @param virtualThreads Deliver the calls of each batch concurrently on virtual threads
+     */
+    public NotificationDispatcher(NotificationService delegate, int queueCapacity, OverflowPolicy overflowPolicy,
+                                  int maxBatchSize, boolean virtualThreads) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.overflowPolicy = overflowPolicy;
+        this.maxBatchSize = maxBatchSize;
+        this.worker = new Thread(this::deliverLoop, "notification-dispatcher");
+        this.worker.setDaemon(true);
+        this.deliveries = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("notification-", 1).factory()) : null;
+        this.worker.start();
+    }
+
+    @Override
+    public void notifyAboutTransfer(Account account, String transferDescription) {
+        enqueue(new Notification(account, transferDescription, null, null, false, System.nanoTime()));
+    }
+
+    /**
+     * Queues the parts of the description, which is built on the worker, and only if the notification is not
+     * dropped.
+     */
+    @Override
+    public void notifyAboutTransfer(Account account, Account counterparty, BigDecimal amount, boolean outgoing) {
+        enqueue(new Notification(account, null, counterparty, amount, outgoing, System.nanoTime()));
+    }
+
+    private void enqueue(Notification notification) {
+        if (queue.offer(notification)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(notification);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.increment();
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(notification)) {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                }
+                break;
+            default:
+                dropped.increment();
+        }
+    }
+
+    /**
+     * Publishes the queue depth, the lag of the last batch in microseconds and the notifications delivered and
+     * dropped in the snapshot of the given metrics.
+     */
+    public void registerGauges(TransferMetrics transferMetrics) {
+        transferMetrics.registerGauge("notificationQueueDepth", this::getQueueDepth);
+        transferMetrics.registerGauge("notificationLagMicros",
+                () -> TimeUnit.NANOSECONDS.toMicros(getLastLagNanos()));
+        transferMetrics.registerGauge("notificationsDelivered", this::getDelivered);
+        transferMetrics.registerGauge("notificationsDropped", this::getDropped);
+    }
+
+    /**
+     * Stops accepting work and delivers what is left on the queue.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(TimeUnit.SECONDS.toMillis(10));
+        if (deliveries != null) {
+            deliveries.shutdown();
+        }
+    }
+
+    /**
+     * @return notifications waiting for delivery
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return time the oldest notification of the last delivered batch spent queued, in nanoseconds
+     */
+    public long getLastLagNanos() {
+        return lastLagNanos;
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    private void deliverLoop() {
+        List<Notification> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Notification first = running ? queue.take() : queue.poll();
+                if (first == null) {
+                    break;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, maxBatchSize - 1);
+            deliver(batch);
+            batch.clear();
+        }
+    }
+
+    private void deliver(List<Notification> batch) {
+        lastLagNanos = System.nanoTime() - batch.get(0).enqueuedNanos;
+        Map<String, List<Notification>> byAccount = new LinkedHashMap<>();
+        for (Notification notification : batch) {
+            byAccount.computeIfAbsent(notification.account.getAccountId(), id -> new ArrayList<>(1)).add(notification);
+        }
+        if (deliveries == null) {
+            byAccount.values().forEach(this::deliverTo);
+        } else {
+            List<Future<?>> calls = new ArrayList<>(byAccount.size());
+            for (List<Notification> notifications : byAccount.values()) {
+                calls.add(deliveries.submit(() -> deliverTo(notifications)));
+            }
+            awaitAll(calls);
+        }
+        delivered.add(batch.size());
+        batches.increment();
+    }
+
+    private void deliverTo(List<Notification> notifications) {
+        try {
+            delegate.notifyAboutTransfer(notifications.get(0).account, describe(notifications));
+        } catch (RuntimeException e) {
+            log.error("Failed to deliver notification to owner of {}", notifications.get(0).account.getAccountId(), e);
+        }
+    }
+
+    /**
+     * Waits for the calls of a batch even if interrupted by {@link #close()}, which then takes effect at the next
+     * batch.
+     */
+    private static void awaitAll(List<Future<?>> calls) {
+        boolean interrupted = false;
+        for (Future<?> call : calls) {
+            while (true) {
+                try {
+                    call.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String describe(List<Notification> notifications) {
+        if (notifications.size() == 1) {
+            return notifications.get(0).description();
+        }
+        StringBuilder description = new StringBuilder();
+        for (Notification notification : notifications) {
+            if (description.length() > 0) {
+                description.append('\n');
+            }
+            description.append(notification.description());
+        }
+        return description.toString();
+    }
+
+    private static final class Notification {
+
+        private final Account account;
+
+        private final String description;
+
+        private final Account counterparty;
+
+        private final BigDecimal amount;
+
+        private final boolean outgoing;
+
+        private final long enqueuedNanos;
+
+        private Notification(Account account, String description, Account counterparty, BigDecimal amount,
+                             boolean outgoing, long enqueuedNanos) {
+            this.account = account;
+            this.description = description;
+            this.counterparty = counterparty;
+            this.amount = amount;
+            this.outgoing = outgoing;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        private String description() {
+            return description != null ? description
+                    : NotificationService.describeTransfer(counterparty, amount, outgoing);
+        }
+    }
+}
@@ -1,8 +1,27 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import java.math.BigDecimal;
 
 public interface NotificationService {
 
   void notifyAboutTransfer(Account account, String transferDescription);
+
+  /**
+   * Notifies the owner of an account about one leg of a transfer. Implementations that deliver later can keep the
+   * parts and build the description only when it is delivered.
+   *
+   * @param account      Account of the owner to be notified
+   * @param counterparty Account on the other side of the transfer
+   * @param amount       Amount transferred
+   * @param outgoing     True if the account was debited, false if it was credited
+   */
+  default void notifyAboutTransfer(Account account, Account counterparty, BigDecimal amount, boolean outgoing) {
+    notifyAboutTransfer(account, describeTransfer(counterparty, amount, outgoing));
+  }
+
+  static String describeTransfer(Account counterparty, BigDecimal amount, boolean outgoing) {
+    return "Amount " + amount + " has been transferred " + (outgoing ? "to" : "from") + " account id "
+      + counterparty.getAccountId();
+  }
 }
@@ -0,0 +1,366 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountBusyException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.journal.JournalRecord;
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transfer engine that locks the involved accounts in a global canonical order (by lock rank, then account id), so
+ * opposing transfers can never deadlock, and performs the balance check and both mutations inside a
+ * single critical section.
+ */
+@Component
+@ConditionalOnProperty(name = "challenge.transfer.engine", havingValue = "ORDERED_LOCK", matchIfMissing = true)
+@Slf4j
+public class OrderedLockTransferEngine implements TransferEngine {
+
+    static final Comparator<Account> LOCK_ORDER =
+            Comparator.comparingInt(Account::getLockRank).thenComparing(Account::getAccountId);
+
+    private final LongAdder lockAcquisitions = new LongAdder();
+
+    private final LongAdder lockWaitNanos = new LongAdder();
+
+    private final TransferMetrics transferMetrics;
+
+    private final ContentionPolicy contentionPolicy;
+
+    public OrderedLockTransferEngine() {
+        this(new TransferMetrics());
+    }
+
+    public OrderedLockTransferEngine(TransferMetrics transferMetrics) {
+        this(transferMetrics, ContentionPolicy.DEFAULT);
+    }
+
+    /**
+     * @param contentionPolicy Gives the time a transfer waits for its account locks
+     */
+    @Autowired
+    public OrderedLockTransferEngine(TransferMetrics transferMetrics, ContentionPolicy contentionPolicy) {
+        this.transferMetrics = transferMetrics;
+        this.contentionPolicy = contentionPolicy;
+    }
+
+    /**
+     * Locks the two accounts directly rather than through {@link #lockAll(Collection)}, so a single transfer
+     * allocates no lists.
+     */
+    @Override
+    public CompletableFuture<Void> transfer(Account debit, Account credit, BigDecimal amount, TransferJournal journal)
+            throws InterruptedException {
+        transferMetrics.recordAccess(debit, credit);
+        Account first = debit.isLockFree() ? null : debit;
+        Account second = credit.isLockFreeCredit() || credit.getAccountId().equals(debit.getAccountId())
+                ? null : credit;
+        if (first == null || (second != null && LOCK_ORDER.compare(first, second) > 0)) {
+            Account swapped = first;
+            first = second;
+            second = swapped;
+        }
+        if (first != null) {
+            long start = System.nanoTime();
+            long deadline = start + contentionPolicy.getLockTimeoutNanos();
+            lock(first, deadline);
+            if (second != null) {
+                try {
+                    lock(second, deadline);
+                } catch (InterruptedException | RuntimeException e) {
+                    first.getLock().unlock();
+                    throw e;
+                }
+            }
+            recordLocked(start);
+        }
+        long lockedAt = System.nanoTime();
+        try {
+            return applyTransfer(debit, credit, amount, journal);
+        } finally {
+            if (second != null) {
+                second.getLock().unlock();
+            }
+            if (first != null) {
+                first.getLock().unlock();
+                long held = System.nanoTime() - lockedAt;
+                transferMetrics.recordLockHold(first, held);
+                if (second != null) {
+                    transferMetrics.recordLockHold(second, held);
+                }
+            }
+        }
+    }
+
+    /**
+     * Locks every account of the batch in a single ordered pass and applies the transfers one by one. If the
+     * locks cannot be acquired in time, every transfer of the batch is marked {@link TransferStatus#BUSY}.
+     */
+    @Override
+    public void transferAll(List<PendingTransfer> transfers, TransferJournal journal) throws InterruptedException {
+        List<Account> accounts = new ArrayList<>(transfers.size() * 2);
+        for (PendingTransfer transfer : transfers) {
+            transferMetrics.recordAccess(transfer.getDebit(), transfer.getCredit());
+            accounts.addAll(accountsToLock(transfer.getDebit(), transfer.getCredit()));
+        }
+        List<Account> locked;
+        try {
+            locked = lockAll(accounts);
+        } catch (AccountBusyException e) {
+            transfers.forEach(transfer -> transfer.setStatus(TransferStatus.BUSY));
+            return;
+        }
+        long lockedAt = System.nanoTime();
+        try {
+            for (PendingTransfer transfer : transfers) {
+                transfer.setStatus(tryApplyTransfer(transfer, journal));
+            }
+        } finally {
+            release(locked, lockedAt);
+        }
+    }
+
+    /**
+     * Locks every account of the legs in a single ordered pass, then applies the legs netted per account.
+     * <p>
+     * Payments touching a lock-free account are refused: its lock does not keep other transfers from changing it,
+     * so they could see the payment half applied, or spend a credit before a failed payment takes it back.
+     *
+     * @throws ValidationException if an account of the legs is lock-free
+     */
+    @Override
+    public CompletableFuture<Void> transferAtomically(List<PendingTransfer> legs, TransferJournal journal)
+            throws InterruptedException {
+        List<Account> accounts = new ArrayList<>(legs.size() * 2);
+        for (PendingTransfer leg : legs) {
+            Account lockFree = leg.getDebit().isLockFree() ? leg.getDebit()
+                    : leg.getCredit().isLockFree() ? leg.getCredit() : null;
+            if (lockFree != null) {
+                throw new ValidationException("Multi-leg transfers are not supported for account "
+                        + lockFree.getAccountId() + ", whose balance is changed without locking");
+            }
+        }
+        for (PendingTransfer leg : legs) {
+            transferMetrics.recordAccess(leg.getDebit(), leg.getCredit());
+            accounts.add(leg.getDebit());
+            accounts.add(leg.getCredit());
+        }
+        List<Account> locked = lockAll(accounts);
+        long lockedAt = System.nanoTime();
+        try {
+            return PaymentLegs.apply(legs, journal);
+        } finally {
+            release(locked, lockedAt);
+        }
+    }
+
+    @Override
+    public void debit(Account account, BigDecimal amount) throws InterruptedException {
+        boolean locked = lockAlone(account, account.isLockFree());
+        try {
+            if (!account.applyDebit(amount)) {
+                log.info("Insufficient funds");
+                throw new InsufficientFundsException("Insufficient funds");
+            }
+        } finally {
+            if (locked) {
+                account.getLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public void credit(Account account, BigDecimal amount) throws InterruptedException {
+        boolean locked = lockAlone(account, account.isLockFreeCredit());
+        try {
+            account.applyCredit(amount);
+        } catch (ArithmeticException e) {
+            throw new ValidationException("Balance of account " + account.getAccountId() + " would overflow");
+        } finally {
+            if (locked) {
+                account.getLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * @return true if the account was locked, false if it needs no lock
+     */
+    private boolean lockAlone(Account account, boolean lockFree) throws InterruptedException {
+        if (lockFree) {
+            return false;
+        }
+        long start = System.nanoTime();
+        lock(account, start + contentionPolicy.getLockTimeoutNanos());
+        recordLocked(start);
+        return true;
+    }
+
+    private TransferStatus tryApplyTransfer(PendingTransfer transfer, TransferJournal journal) {
+        try {
+            transfer.setJournaled(applyTransfer(transfer.getDebit(), transfer.getCredit(), transfer.getAmount(),
+                    journal));
+            return TransferStatus.COMPLETED;
+        } catch (InsufficientFundsException e) {
+            return TransferStatus.INSUFFICIENT_FUNDS;
+        } catch (ValidationException e) {
+            return TransferStatus.INVALID_AMOUNT;
+        }
+    }
+
+    /**
+     * Applies both legs, journaling the transfer in between, and refunding the debit along with a reversing
+     * record if the credit cannot be applied.
+     *
+     * @return the future of the journal record
+     */
+    private CompletableFuture<Void> applyTransfer(Account debit, Account credit, BigDecimal amount,
+                                                  TransferJournal journal) {
+        if (!debit.applyDebit(amount)) {
+            log.info("Insufficient funds");
+            throw new InsufficientFundsException("Insufficient funds");
+        }
+        CompletableFuture<Void> journaled = journal.appendApplied(
+                JournalRecord.transferred(debit.getAccountId(), credit.getAccountId(), amount));
+        try {
+            credit.applyCredit(amount);
+        } catch (ArithmeticException e) {
+            refund(debit, credit, amount, journal);
+            throw new ValidationException("Balance of account " + credit.getAccountId() + " would overflow");
+        } catch (ValidationException e) {
+            refund(debit, credit, amount, journal);
+            throw e;
+        }
+        return journaled;
+    }
+
+    /**
+     * Journals the reversal of a transfer whose credit failed, before the refund lets the debit account spend it.
+     */
+    private static void refund(Account debit, Account credit, BigDecimal amount, TransferJournal journal) {
+        journal.appendApplied(JournalRecord.transferred(credit.getAccountId(), debit.getAccountId(), amount))
+                .whenComplete((written, failure) -> {
+                    if (failure != null) {
+                        log.error("Could not journal the reversal of a transfer of {} from account {} to {}",
+                                amount, debit.getAccountId(), credit.getAccountId(), failure);
+                    }
+                });
+        debit.applyCredit(amount);
+    }
+
+    /**
+     * Locks every distinct account in canonical order, sharing one timeout across all of them. Lock-free
+     * accounts are skipped, as their debits are compare-and-set loops and their credits atomic adds.
+     *
+     * @param accounts Accounts to be locked, in any order and possibly with duplicates
+     * @return the locked accounts, to be passed to {@link #unlockAll(List)}
+     * @throws AccountBusyException if any lock could not be acquired in time
+     */
+    List<Account> lockAll(Collection<Account> accounts) throws InterruptedException {
+        List<Account> ordered = new ArrayList<>(accounts.size());
+        for (Account account : accounts) {
+            if (!account.isLockFree()) {
+                ordered.add(account);
+            }
+        }
+        if (ordered.isEmpty()) {
+            return ordered;
+        }
+        ordered.sort(LOCK_ORDER);
+        List<Account> locked = new ArrayList<>(ordered.size());
+        long start = System.nanoTime();
+        long deadline = start + contentionPolicy.getLockTimeoutNanos();
+        try {
+            for (Account account : ordered) {
+                if (!locked.isEmpty() && locked.get(locked.size() - 1).getAccountId().equals(account.getAccountId())) {
+                    continue;
+                }
+                lock(account, deadline);
+                locked.add(account);
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            unlockAll(locked);
+            throw e;
+        }
+        recordLocked(start);
+        return locked;
+    }
+
+    /**
+     * @throws AccountBusyException if the lock could not be acquired by the deadline
+     */
+    private void lock(Account account, long deadline) throws InterruptedException {
+        long before = System.nanoTime();
+        if (!account.getLock().tryLock(deadline - before, TimeUnit.NANOSECONDS)) {
+            transferMetrics.recordLockTimeout();
+            log.debug("Timed out locking account {}", account.getAccountId());
+            throw new AccountBusyException("Account " + account.getAccountId() + " is busy, try again later");
+        }
+        transferMetrics.recordLockWait(account, System.nanoTime() - before);
+    }
+
+    private void recordLocked(long start) {
+        long waited = System.nanoTime() - start;
+        lockAcquisitions.increment();
+        lockWaitNanos.add(waited);
+    }
+
+    void unlockAll(List<Account> locked) {
+        for (int i = locked.size() - 1; i >= 0; i--) {
+            locked.get(i).getLock().unlock();
+        }
+    }
+
+    /**
+     * Unlocks the accounts, recording how long they were held.
+     */
+    private void release(List<Account> locked, long lockedAt) {
+        unlockAll(locked);
+        long held = System.nanoTime() - lockedAt;
+        for (Account account : locked) {
+            transferMetrics.recordLockHold(account, held);
+        }
+    }
+
+    /**
+     * @return number of lock passes performed so far
+     */
+    public long getLockAcquisitions() {
+        return lockAcquisitions.sum();
+    }
+
+    /**
+     * @return total time spent waiting for account locks, in nanoseconds
+     */
+    public long getLockWaitNanos() {
+        return lockWaitNanos.sum();
+    }
+
+    /**
+     * @return the accounts to be locked for a transfer, leaving out a credit account that needs no lock
+     */
+    private static List<Account> accountsToLock(Account debit, Account credit) {
+        List<Account> accounts = new ArrayList<>(2);
+        accounts.add(debit);
+        if (!credit.isLockFreeCredit()) {
+            accounts.add(credit);
+        }
+        return accounts;
+    }
+}
@@ -0,0 +1,327 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountBusyException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.journal.JournalRecord;
+import com.db.awmd.challenge.journal.TransferJournal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Transfer engine where accounts are hashed into partitions, each owned by a single worker thread that
+ * applies balance changes from its queue without taking account locks.
+ * <p>
+ * A transfer is first queued on the partition owning the debit account, which checks and debits the balance
+ * and journals the transfer. If the credit account lives in another partition the credit is then handed off to
+ * that partition's queue, and refunded through the debit partition should it fail. Accounts must only be
+ * mutated through this engine while it is active.
+ */
+@Component
+@ConditionalOnProperty(name = "challenge.transfer.engine", havingValue = "PARTITIONED")
+@Slf4j
+public class PartitionedTransferEngine implements TransferEngine {
+
+    private final Partition[] partitions;
+
+    /**
+     * Held by a multi-leg transfer while it parks the workers of several partitions.
+     */
+    private final ReentrantLock crossPartitionTransfers = new ReentrantLock();
+
+    public PartitionedTransferEngine(@Value("${challenge.transfer.partitions:0}") int partitionCount,
+                                     @Value("${challenge.transfer.partition-queue-capacity:10000}") int queueCapacity) {
+        int count = partitionCount > 0 ? partitionCount : Runtime.getRuntime().availableProcessors();
+        this.partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition(i, queueCapacity);
+        }
+        log.info("Started {} transfer partitions", count);
+    }
+
+    @Override
+    public CompletableFuture<Void> transfer(Account debit, Account credit, BigDecimal amount, TransferJournal journal)
+            throws InterruptedException {
+        return await(submit(debit, credit, amount, journal));
+    }
+
+    private static <T> T await(CompletableFuture<T> result) throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Queues every transfer on its debit partition before waiting for any of them, so the batch is applied by
+     * all partitions in parallel.
+     */
+    @Override
+    public void transferAll(List<PendingTransfer> transfers, TransferJournal journal) throws InterruptedException {
+        List<CompletableFuture<CompletableFuture<Void>>> results = new ArrayList<>(transfers.size());
+        for (PendingTransfer transfer : transfers) {
+            CompletableFuture<CompletableFuture<Void>> result;
+            try {
+                result = submit(transfer.getDebit(), transfer.getCredit(), transfer.getAmount(), journal);
+            } catch (AccountBusyException e) {
+                result = new CompletableFuture<>();
+                result.completeExceptionally(e);
+            }
+            results.add(result);
+        }
+        for (int i = 0; i < transfers.size(); i++) {
+            PendingTransfer transfer = transfers.get(i);
+            transfer.setStatus(statusOf(results.get(i)));
+            if (transfer.getStatus() == TransferStatus.COMPLETED) {
+                transfer.setJournaled(results.get(i).join());
+            }
+        }
+    }
+
+    /**
+     * Applies the legs on the worker of their partition if they all share one. Otherwise the worker of every
+     * involved partition is parked while the calling thread applies the legs; such transfers take turns, so two
+     * of them can never park each other's partitions.
+     */
+    @Override
+    public CompletableFuture<Void> transferAtomically(List<PendingTransfer> legs, TransferJournal journal)
+            throws InterruptedException {
+        TreeSet<Partition> involved = new TreeSet<>(Comparator.comparingInt(partition -> partition.index));
+        for (PendingTransfer leg : legs) {
+            involved.add(partitionOf(leg.getDebit()));
+            involved.add(partitionOf(leg.getCredit()));
+        }
+        if (involved.size() == 1) {
+            CompletableFuture<CompletableFuture<Void>> result = new CompletableFuture<>();
+            involved.first().admit(() -> {
+                try {
+                    result.complete(PaymentLegs.apply(legs, journal));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            return await(result);
+        }
+        crossPartitionTransfers.lockInterruptibly();
+        try {
+            CountDownLatch parked = new CountDownLatch(involved.size());
+            CountDownLatch released = new CountDownLatch(1);
+            try {
+                for (Partition partition : involved) {
+                    partition.admit(() -> {
+                        parked.countDown();
+                        awaitUninterruptibly(released);
+                    });
+                }
+                parked.await();
+                return PaymentLegs.apply(legs, journal);
+            } finally {
+                released.countDown();
+            }
+        } finally {
+            crossPartitionTransfers.unlock();
+        }
+    }
+
+    /**
+     * Parks a partition worker until the transfer holding it is done; the worker is never interrupted while
+     * the engine runs.
+     */
+    private static void awaitUninterruptibly(CountDownLatch released) {
+        boolean interrupted = false;
+        while (released.getCount() > 0) {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void debit(Account account, BigDecimal amount) throws InterruptedException {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        partitionOf(account).admit(() -> {
+            try {
+                if (account.applyDebit(amount)) {
+                    result.complete(null);
+                } else {
+                    log.info("Insufficient funds");
+                    result.completeExceptionally(new InsufficientFundsException("Insufficient funds"));
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        await(result);
+    }
+
+    /**
+     * Hands the credit off to the partition of the account, so it is accepted even when the partition is busy.
+     */
+    @Override
+    public void credit(Account account, BigDecimal amount) throws InterruptedException {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        partitionOf(account).handOff(() -> {
+            try {
+                account.applyCredit(amount);
+                result.complete(null);
+            } catch (ArithmeticException e) {
+                result.completeExceptionally(
+                        new ValidationException("Balance of account " + account.getAccountId() + " would overflow"));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        await(result);
+    }
+
+    /**
+     * Queues the transfer on the partition owning the debit account, which journals it once the debit is applied.
+     *
+     * @return a future completed with the future of the journal record once both legs are applied, or failed with
+     * the reason the transfer was rejected
+     * @throws AccountBusyException if the debit partition queue is full
+     */
+    public CompletableFuture<CompletableFuture<Void>> submit(Account debit, Account credit, BigDecimal amount,
+                                                             TransferJournal journal) {
+        CompletableFuture<CompletableFuture<Void>> result = new CompletableFuture<>();
+        Partition source = partitionOf(debit);
+        Partition target = partitionOf(credit);
+        source.admit(() -> {
+            boolean debited;
+            try {
+                debited = debit.applyDebit(amount);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            if (!debited) {
+                log.info("Insufficient funds");
+                result.completeExceptionally(new InsufficientFundsException("Insufficient funds"));
+                return;
+            }
+            CompletableFuture<Void> journaled = journal.appendApplied(
+                    JournalRecord.transferred(debit.getAccountId(), credit.getAccountId(), amount));
+            if (source == target) {
+                applyCredit(debit, credit, amount, journal, journaled, result, source);
+            } else {
+                target.handOff(() -> applyCredit(debit, credit, amount, journal, journaled, result, source));
+            }
+        });
+        return result;
+    }
+
+    private static TransferStatus statusOf(CompletableFuture<?> result) throws InterruptedException {
+        try {
+            result.get();
+            return TransferStatus.COMPLETED;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InsufficientFundsException) {
+                return TransferStatus.INSUFFICIENT_FUNDS;
+            }
+            if (e.getCause() instanceof AccountBusyException) {
+                return TransferStatus.BUSY;
+            }
+            return TransferStatus.INVALID_AMOUNT;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Partition partition : partitions) {
+            partition.executor.shutdown();
+        }
+    }
+
+    /**
+     * Applies the credit of a debited and journaled transfer. If it fails, the reversal is journaled before the
+     * refund is handed off, so the debit account cannot spend the refund ahead of its record.
+     */
+    private void applyCredit(Account debit, Account credit, BigDecimal amount, TransferJournal journal,
+                             CompletableFuture<Void> journaled, CompletableFuture<CompletableFuture<Void>> result,
+                             Partition source) {
+        try {
+            credit.applyCredit(amount);
+            result.complete(journaled);
+        } catch (ArithmeticException | ValidationException e) {
+            journal.appendApplied(JournalRecord.transferred(credit.getAccountId(), debit.getAccountId(), amount))
+                    .whenComplete((written, failure) -> {
+                        if (failure != null) {
+                            log.error("Could not journal the reversal of a transfer of {} from account {} to {}",
+                                    amount, debit.getAccountId(), credit.getAccountId(), failure);
+                        }
+                    });
+            source.handOff(() -> debit.applyCredit(amount));
+            result.completeExceptionally(e instanceof ValidationException ? e
+                    : new ValidationException("Balance of account " + credit.getAccountId() + " would overflow"));
+        }
+    }
+
+    private Partition partitionOf(Account account) {
+        int hash = account.getAccountId().hashCode();
+        return partitions[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % partitions.length];
+    }
+
+    /**
+     * Single worker thread with its queue. New transfers are bounded by the admission permits; hand-offs of
+     * already debited transfers are always accepted so money is never stranded between partitions.
+     */
+    private static final class Partition {
+
+        private final int index;
+
+        private final ExecutorService executor;
+
+        private final Semaphore admissions;
+
+        private Partition(int index, int queueCapacity) {
+            this.index = index;
+            this.admissions = new Semaphore(queueCapacity);
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "transfer-partition-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        private void admit(Runnable task) {
+            if (!admissions.tryAcquire()) {
+                throw new AccountBusyException("Transfer partition " + index + " is busy, try again later");
+            }
+            executor.execute(() -> {
+                admissions.release();
+                task.run();
+            });
+        }
+
+        private void handOff(Runnable task) {
+            executor.execute(task);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.journal.JournalRecord;
+import com.db.awmd.challenge.journal.TransferJournal;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Applies the legs of a multi-leg transfer as a single unit. The legs are netted per account, so each account is
+ * changed once; every net debit is applied before any net credit, and whatever was applied is undone if a debit is
+ * not covered or a credit would overflow. The caller keeps the accounts from being changed by anyone else
+ * meanwhile, by holding their locks or owning their partitions.
+ */
+@Slf4j
+final class PaymentLegs {
+
+    private PaymentLegs() {
+    }
+
+    /**
+     * Applies the legs, then appends each of them to the journal.
+     *
+     * @return a future completed once the journal records of every leg are durable
+     * @throws InsufficientFundsException if the net debit of an account is not covered, nothing being applied
+     * @throws ValidationException        if the balance of an account would overflow, nothing being applied
+     */
+    static CompletableFuture<Void> apply(List<PendingTransfer> legs, TransferJournal journal) {
+        apply(legs);
+        CompletableFuture<?>[] journaled = new CompletableFuture<?>[legs.size()];
+        for (int i = 0; i < legs.size(); i++) {
+            PendingTransfer leg = legs.get(i);
+            journaled[i] = journal.appendApplied(JournalRecord.transferred(leg.getDebit().getAccountId(),
+                    leg.getCredit().getAccountId(), leg.getAmount()));
+        }
+        return CompletableFuture.allOf(journaled);
+    }
+
+    private static void apply(List<PendingTransfer> legs) {
+        Map<String, Account> accounts = new LinkedHashMap<>();
+        Map<String, BigDecimal> net = new LinkedHashMap<>();
+        for (PendingTransfer leg : legs) {
+            accounts.putIfAbsent(leg.getDebit().getAccountId(), leg.getDebit());
+            accounts.putIfAbsent(leg.getCredit().getAccountId(), leg.getCredit());
+            net.merge(leg.getDebit().getAccountId(), leg.getAmount().negate(), BigDecimal::add);
+            net.merge(leg.getCredit().getAccountId(), leg.getAmount(), BigDecimal::add);
+        }
+
+        List<Account> debited = new ArrayList<>();
+        for (Map.Entry<String, BigDecimal> change : net.entrySet()) {
+            if (change.getValue().signum() < 0) {
+                Account account = accounts.get(change.getKey());
+                if (!account.applyDebit(change.getValue().negate())) {
+                    refund(debited, net);
+                    log.info("Insufficient funds");
+                    throw new InsufficientFundsException("Insufficient funds in account " + account.getAccountId());
+                }
+                debited.add(account);
+            }
+        }
+
+        List<Account> credited = new ArrayList<>();
+        for (Map.Entry<String, BigDecimal> change : net.entrySet()) {
+            if (change.getValue().signum() > 0) {
+                Account account = accounts.get(change.getKey());
+                try {
+                    account.applyCredit(change.getValue());
+                } catch (ArithmeticException | ValidationException e) {
+                    for (Account applied : credited) {
+                        if (!applied.applyDebit(net.get(applied.getAccountId()))) {
+                            log.error("Could not take back credit of {} from account {}",
+                                    net.get(applied.getAccountId()), applied.getAccountId());
+                        }
+                    }
+                    refund(debited, net);
+                    throw new ValidationException("Balance of account " + account.getAccountId() + " would overflow");
+                }
+                credited.add(account);
+            }
+        }
+    }
+
+    private static void refund(List<Account> debited, Map<String, BigDecimal> net) {
+        for (Account account : debited) {
+            account.applyCredit(net.get(account.getAccountId()).negate());
+        }
+    }
+}
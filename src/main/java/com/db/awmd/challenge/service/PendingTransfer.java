@@ -0,0 +1,29 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferStatus;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Validated transfer of a batch, handed to the {@link TransferEngine} which records its outcome and
+ * journal record.
+ */
+@Data
+public class PendingTransfer {
+
+    private final Account debit;
+
+    private final Account credit;
+
+    private final BigDecimal amount;
+
+    private TransferStatus status;
+
+    /**
+     * Completed once the journal record of the completed transfer is durable.
+     */
+    private CompletableFuture<Void> journaled;
+}
@@ -1,8 +1,20 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.TransferPage;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.AccountBusyException;
 import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.JournalException;
+import com.db.awmd.challenge.exception.TransferNotDurableException;
 import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.ledger.TransferLedger;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountHandles;
 import com.db.awmd.challenge.repository.AccountsRepository;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -10,10 +22,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Service class that handles the logic involved for the transaction related end points
@@ -22,16 +34,50 @@ import java.util.concurrent.locks.ReentrantLock;
 @Slf4j
 public class TransactionService {
 
+    /**
+     * Maximum number of transfers of a batch applied under a single lock pass.
+     */
+    public static final int BATCH_GROUP_SIZE = 256;
+
+    /**
+     * Maximum number of transfers returned by a history query.
+     */
+    public static final int MAX_HISTORY_PAGE_SIZE = 1000;
+
     @Getter
     private final AccountsRepository accountsInMemory;
 
-    private EmailNotificationService notificationService;
+    private NotificationService notificationService;
+
+    private final TransferEngine transferEngine;
+
+    private final TransferJournal transferJournal;
+
+    private final IdempotencyCache idempotencyCache;
 
+    private final TransferMetrics transferMetrics;
+
+    private final TransferLedger transferLedger;
+
+    private final BalanceSnapshots balanceSnapshots;
+
+    private final ContentionPolicy contentionPolicy;
 
     @Autowired
-    public TransactionService(AccountsRepository accountsRepository, EmailNotificationService notificationService) {
+    public TransactionService(AccountsRepository accountsRepository, NotificationService notificationService,
+                              TransferEngine transferEngine, TransferJournal transferJournal,
+                              IdempotencyCache idempotencyCache, TransferMetrics transferMetrics,
+                              TransferLedger transferLedger, BalanceSnapshots balanceSnapshots,
+                              ContentionPolicy contentionPolicy) {
         this.accountsInMemory = accountsRepository;
         this.notificationService = notificationService;
+        this.transferEngine = transferEngine;
+        this.transferJournal = transferJournal;
+        this.idempotencyCache = idempotencyCache;
+        this.transferMetrics = transferMetrics;
+        this.transferLedger = transferLedger;
+        this.balanceSnapshots = balanceSnapshots;
+        this.contentionPolicy = contentionPolicy;
     }
 
     /**
@@ -40,62 +86,381 @@ public class TransactionService {
      * @param fromAccountId From Account id
      * @param toAccountId   To Account id
      * @param amount        Amount to be transferred
+     * @throws TransferNotDurableException if the transfer was applied but could not be journaled
      */
     public void transfer(String fromAccountId, String toAccountId, BigDecimal amount) throws InterruptedException {
-        log.info("transfer money");
+        log.debug("transfer money");
+
+        long start = System.nanoTime();
+        applyTransfer(start, accountsInMemory.getAccount(fromAccountId), accountsInMemory.getAccount(toAccountId),
+                amount);
+    }
 
-        Account debit = accountsInMemory.getAccount(fromAccountId);
-        Account credit = accountsInMemory.getAccount(toAccountId);
-        // 1. Validate the account
-        validate(debit, credit, amount);
+    /**
+     * Transfers between accounts looked up by handle, skipping the hashing of their ids.
+     *
+     * @param fromHandle From Account handle, see {@link AccountHandles}
+     * @param toHandle   To Account handle
+     * @param amount     Amount to be transferred
+     * @throws ValidationException if the account store does not hand out handles
+     */
+    public void transfer(int fromHandle, int toHandle, BigDecimal amount) throws InterruptedException {
+        log.debug("transfer money by handle");
 
-        // 2. transfer the amount
-        runTransfer(debit, credit, amount);
-        // 3. Send notification
-        notificationService.notifyAboutTransfer(debit,"Amount " + amount + " has been transferred to account id " +
-                credit.getAccountId());
-        notificationService.notifyAboutTransfer(credit,"Amount " + amount + " has been transferred from account id " +
-                debit.getAccountId());
+        long start = System.nanoTime();
+        AccountHandles handles = accountHandles();
+        applyTransfer(start, handles.getAccount(fromHandle), handles.getAccount(toHandle), amount);
+    }
 
+    private void applyTransfer(long start, Account debit, Account credit, BigDecimal amount)
+            throws InterruptedException {
+        TransferStatus status = null;
+        try {
+            // 1. Validate the account
+            validate(debit, credit, amount);
 
+            // 2. transfer the amount, journaled by the engine in the order it is applied
+            CompletableFuture<Void> journaled;
+            for (int attempts = 1; ; attempts++) {
+                try {
+                    journaled = transferInEpoch(debit, credit, amount);
+                    break;
+                } catch (AccountBusyException e) {
+                    if (!contentionPolicy.backOff(attempts)) {
+                        throw e;
+                    }
+                    transferMetrics.recordBusyRetry();
+                }
+            }
+            transferLedger.record(debit.getAccountId(), credit.getAccountId(), amount);
+            status = awaitJournaled(journaled) ? TransferStatus.COMPLETED : TransferStatus.NOT_DURABLE;
+            // 3. Send notification
+            notifyAboutTransfer(debit, credit, amount);
+            if (status == TransferStatus.NOT_DURABLE) {
+                throw new TransferNotDurableException("Transfer from account " + debit.getAccountId()
+                        + " to account " + credit.getAccountId() + " was applied but could not be journaled,"
+                        + " do not retry it", null);
+            }
+        } catch (InsufficientFundsException e) {
+            status = TransferStatus.INSUFFICIENT_FUNDS;
+            throw e;
+        } catch (AccountBusyException e) {
+            status = TransferStatus.BUSY;
+            throw e;
+        } catch (ValidationException e) {
+            status = null == debit || null == credit ? TransferStatus.ACCOUNT_NOT_FOUND
+                    : TransferStatus.INVALID_AMOUNT;
+            throw e;
+        } finally {
+            transferMetrics.recordTransfer(status, System.nanoTime() - start);
+        }
     }
 
-    private void validate(Account debit, Account credit, BigDecimal amount) {
-        if (null == credit || null == debit) {
-            throw new ValidationException("Account not found");
+    /**
+     * Applies the transfer in an epoch of its own, left as soon as the balances changed so that a snapshot does not
+     * wait for backoff, journaling or notifications.
+     *
+     * @return the future of the journal record
+     */
+    private CompletableFuture<Void> transferInEpoch(Account debit, Account credit, BigDecimal amount)
+            throws InterruptedException {
+        long epoch = balanceSnapshots.enter();
+        try {
+            balanceSnapshots.capture(epoch, debit);
+            balanceSnapshots.capture(epoch, credit);
+            return transferEngine.transfer(debit, credit, amount, transferJournal);
+        } finally {
+            balanceSnapshots.exit(epoch);
+        }
+    }
+
+    /**
+     * @return the id of the account with the handle, or null if there is none
+     * @throws ValidationException if the account store does not hand out handles
+     */
+    public String getAccountId(int handle) {
+        Account account = accountHandles().getAccount(handle);
+        return account == null ? null : account.getAccountId();
+    }
+
+    /**
+     * @return the account store as {@link AccountHandles}
+     * @throws ValidationException if the account store does not hand out handles
+     */
+    private AccountHandles accountHandles() {
+        if (!(accountsInMemory instanceof AccountHandles)) {
+            throw new ValidationException("Account handles are not supported by the configured account store");
+        }
+        return (AccountHandles) accountsInMemory;
+    }
+
+    /**
+     * Performs the transfer at most once per idempotency key. A repeated key gets the outcome of its first transfer,
+     * without taking the account locks again.
+     *
+     * @param idempotencyKey Key chosen by the client for this transfer, or null to always transfer
+     * @param fromAccountId  From Account id
+     * @param toAccountId    To Account id
+     * @param amount         Amount to be transferred
+     */
+    public void transfer(String idempotencyKey, String fromAccountId, String toAccountId, BigDecimal amount)
+            throws InterruptedException {
+        if (idempotencyKey == null) {
+            transfer(fromAccountId, toAccountId, amount);
+            return;
+        }
+        idempotencyCache.run(idempotencyKey, fromAccountId, toAccountId, amount,
+                () -> transfer(fromAccountId, toAccountId, amount));
+    }
+
+    /**
+     * Validates and applies a batch of transfers. Transfers are applied in groups of {@link #BATCH_GROUP_SIZE}, each
+     * group taking the locks of its accounts in a single pass. A failing transfer does not affect the others, and a
+     * transfer applied but not journaled gets the status {@link TransferStatus#NOT_DURABLE}.
+     *
+     * @param requests Transfers to be applied, in order
+     * @return the result of each transfer, in request order
+     */
+    public List<TransferResult> transferBatch(List<TransferRequest> requests) throws InterruptedException {
+        log.info("transfer batch of {}", requests.size());
+
+        List<TransferResult> results = new ArrayList<>(requests.size());
+        for (int from = 0; from < requests.size(); from += BATCH_GROUP_SIZE) {
+            List<TransferRequest> group = requests.subList(from, Math.min(requests.size(), from + BATCH_GROUP_SIZE));
+            results.addAll(transferGroup(group));
+        }
+        return results;
+    }
+
+    private List<TransferResult> transferGroup(List<TransferRequest> requests) throws InterruptedException {
+        // 1. Validate each transfer, keeping the invalid ones out of the lock pass
+        PendingTransfer[] pending = new PendingTransfer[requests.size()];
+        List<PendingTransfer> valid = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            TransferRequest request = requests.get(i);
+            Account debit = request.getFromAccountId() == null ? null
+                    : accountsInMemory.getAccount(request.getFromAccountId());
+            Account credit = request.getToAccountId() == null ? null
+                    : accountsInMemory.getAccount(request.getToAccountId());
+            pending[i] = new PendingTransfer(debit, credit, request.getAmount());
+            if (null == debit || null == credit) {
+                pending[i].setStatus(TransferStatus.ACCOUNT_NOT_FOUND);
+            } else if (null == request.getAmount() || request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+                pending[i].setStatus(TransferStatus.INVALID_AMOUNT);
+            } else {
+                valid.add(pending[i]);
+            }
+        }
+
+        // 2. transfer the amounts, then wait for the whole group to be journaled
+        if (!valid.isEmpty()) {
+            transferAll(valid);
+            for (PendingTransfer transfer : valid) {
+                if (transfer.getStatus() == TransferStatus.COMPLETED) {
+                    transferLedger.record(transfer.getDebit().getAccountId(), transfer.getCredit().getAccountId(),
+                            transfer.getAmount());
+                }
+            }
+            for (PendingTransfer transfer : valid) {
+                if (transfer.getStatus() == TransferStatus.COMPLETED && !awaitJournaled(transfer.getJournaled())) {
+                    transfer.setStatus(TransferStatus.NOT_DURABLE);
+                }
+            }
         }
-        if (amount.compareTo(BigDecimal.ZERO) <= 0)
-            throw new ValidationException("Amount should be greater than 0");
 
+        // 3. Send notifications
+        List<TransferResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            if (pending[i].getStatus() == TransferStatus.COMPLETED
+                    || pending[i].getStatus() == TransferStatus.NOT_DURABLE) {
+                notifyAboutTransfer(pending[i].getDebit(), pending[i].getCredit(), pending[i].getAmount());
+            }
+            transferMetrics.recordOutcome(pending[i].getStatus());
+            results.add(new TransferResult(requests.get(i), pending[i].getStatus()));
+        }
+        return results;
     }
 
-    private void runTransfer(Account debit, Account credit, BigDecimal amount) throws InterruptedException {
-        Lock debitlock = debit.getLock();
+    /**
+     * Applies a multi-leg transfer, such as a split payment or a transfer with fees, as a single unit: either
+     * every leg is applied or none is. All legs are validated before any balance changes, and the accounts of all
+     * legs are locked once, in a single ordered pass.
+     *
+     * @param legs Transfers to be applied together, at most {@link #BATCH_GROUP_SIZE}
+     * @return the result of each leg, in request order: {@link TransferStatus#NOT_DURABLE} for every leg if the
+     * legs were applied but could not be journaled
+     * @throws ValidationException        if a leg names an unknown account or a non-positive amount, or if the
+     *                                    balance of an account would overflow
+     * @throws InsufficientFundsException if the net debit of an account is not covered
+     * @throws AccountBusyException       if the accounts could not be locked in time
+     */
+    public List<TransferResult> transferAtomically(List<TransferRequest> legs) throws InterruptedException {
+        log.info("transfer {} legs atomically", legs.size());
+
+        long start = System.nanoTime();
+        if (legs.isEmpty() || legs.size() > BATCH_GROUP_SIZE) {
+            throw new ValidationException("A multi-leg transfer should have between 1 and " + BATCH_GROUP_SIZE
+                    + " legs");
+        }
+        // 1. Validate every leg before touching any balance
+        List<PendingTransfer> pending = new ArrayList<>(legs.size());
+        for (int i = 0; i < legs.size(); i++) {
+            TransferRequest leg = legs.get(i);
+            Account debit = leg.getFromAccountId() == null ? null : accountsInMemory.getAccount(leg.getFromAccountId());
+            Account credit = leg.getToAccountId() == null ? null : accountsInMemory.getAccount(leg.getToAccountId());
+            if (null == debit || null == credit) {
+                throw new ValidationException("Leg " + (i + 1) + ": Account not found");
+            }
+            if (null == leg.getAmount() || leg.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+                throw new ValidationException("Leg " + (i + 1) + ": Amount should be greater than 0");
+            }
+            pending.add(new PendingTransfer(debit, credit, leg.getAmount()));
+        }
+
+        // 2. transfer the amounts, journaled by the engine before it releases the accounts
+        TransferStatus status = null;
         try {
-            if (debitlock.tryLock(10000, TimeUnit.MILLISECONDS)) {
-                Lock creditLock = credit.getLock();
+            CompletableFuture<Void> journaled;
+            for (int attempts = 1; ; attempts++) {
                 try {
-                    if (creditLock.tryLock(100, TimeUnit.MILLISECONDS)) {
-                        if (debit.debit(amount)) {
-                            credit.credit(amount);
-                        } else {
-                            log.info("Insufficient funds");
-                            throw new InsufficientFundsException("Insufficient funds");
-                        }
+                    journaled = transferAtomicallyInEpoch(pending);
+                    break;
+                } catch (AccountBusyException e) {
+                    if (!contentionPolicy.backOff(attempts)) {
+                        throw e;
                     }
-                } finally {
-                    creditLock.unlock();
+                    transferMetrics.recordBusyRetry();
                 }
             }
-        } catch (InterruptedException e) {
-            log.info("concurrency error - Something unexpected happened");
+            for (PendingTransfer leg : pending) {
+                transferLedger.record(leg.getDebit().getAccountId(), leg.getCredit().getAccountId(), leg.getAmount());
+            }
+            status = awaitJournaled(journaled) ? TransferStatus.COMPLETED : TransferStatus.NOT_DURABLE;
+        } catch (InsufficientFundsException e) {
+            status = TransferStatus.INSUFFICIENT_FUNDS;
+            throw e;
+        } catch (AccountBusyException e) {
+            status = TransferStatus.BUSY;
+            throw e;
+        } catch (ValidationException e) {
+            status = TransferStatus.INVALID_AMOUNT;
             throw e;
         } finally {
-            debitlock.unlock();
+            transferMetrics.recordTransfer(status, System.nanoTime() - start);
         }
 
+        // 3. Send notifications
+        List<TransferResult> results = new ArrayList<>(legs.size());
+        for (int i = 0; i < legs.size(); i++) {
+            notifyAboutTransfer(pending.get(i).getDebit(), pending.get(i).getCredit(), pending.get(i).getAmount());
+            results.add(new TransferResult(legs.get(i), status));
+        }
+        return results;
     }
 
-}
+    private CompletableFuture<Void> transferAtomicallyInEpoch(List<PendingTransfer> legs)
+            throws InterruptedException {
+        long epoch = balanceSnapshots.enter();
+        try {
+            capture(epoch, legs);
+            return transferEngine.transferAtomically(legs, transferJournal);
+        } finally {
+            balanceSnapshots.exit(epoch);
+        }
+    }
 
+    /**
+     * Applies the transfers, trying the busy ones again as long as the contention policy allows. Each attempt runs
+     * in an epoch of its own, so a snapshot does not wait for the backoff between them.
+     */
+    private void transferAll(List<PendingTransfer> transfers) throws InterruptedException {
+        List<PendingTransfer> attempt = transfers;
+        for (int attempts = 1; ; attempts++) {
+            long epoch = balanceSnapshots.enter();
+            try {
+                capture(epoch, attempt);
+                transferEngine.transferAll(attempt, transferJournal);
+            } finally {
+                balanceSnapshots.exit(epoch);
+            }
+            List<PendingTransfer> busy = new ArrayList<>();
+            for (PendingTransfer transfer : attempt) {
+                if (transfer.getStatus() == TransferStatus.BUSY) {
+                    busy.add(transfer);
+                }
+            }
+            if (busy.isEmpty() || !contentionPolicy.backOff(attempts)) {
+                return;
+            }
+            busy.forEach(transfer -> transferMetrics.recordBusyRetry());
+            attempt = busy;
+        }
+    }
 
+    /**
+     * Waits for the journal record of an applied transfer. A transfer that could not be journaled stays applied:
+     * undoing it now could fail, as other transfers may already have spent its credit.
+     *
+     * @return false if the journal failed to write the record, or the wait was interrupted
+     */
+    private static boolean awaitJournaled(CompletableFuture<Void> journaled) {
+        try {
+            TransferJournal.await(journaled);
+            return true;
+        } catch (JournalException e) {
+            log.error("Applied transfer could not be journaled", e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void capture(long epoch, List<PendingTransfer> transfers) throws InterruptedException {
+        for (PendingTransfer transfer : transfers) {
+            balanceSnapshots.capture(epoch, transfer.getDebit());
+            balanceSnapshots.capture(epoch, transfer.getCredit());
+        }
+    }
+
+    /**
+     * Pages through the completed transfers of an account, newest first.
+     *
+     * @param accountId Account id
+     * @param cursor    Cursor returned with the previous page, or null for the newest transfers
+     * @param limit     Maximum number of transfers, between 1 and {@link #MAX_HISTORY_PAGE_SIZE}
+     */
+    public TransferPage getTransfers(String accountId, Long cursor, int limit) {
+        if (limit < 1 || limit > MAX_HISTORY_PAGE_SIZE) {
+            throw new ValidationException("Limit should be between 1 and " + MAX_HISTORY_PAGE_SIZE);
+        }
+        return transferLedger.page(accountId, cursor, limit);
+    }
+
+    /**
+     * Visits every balance as of a single point in time, even while transfers run: each transfer is either
+     * included in every balance it touched or in none of them. Transfers are only held back for the time it takes
+     * the transfers in flight to finish, see {@link BalanceSnapshots}.
+     *
+     * @param action Receives a copy of each account with its snapshot balance
+     * @return the number of accounts and the total balance of the snapshot
+     */
+    public BalanceSnapshot snapshotBalances(Consumer<Account> action) {
+        return balanceSnapshots.snapshot(accountsInMemory, action);
+    }
+
+    private void notifyAboutTransfer(Account debit, Account credit, BigDecimal amount) {
+        notificationService.notifyAboutTransfer(debit, credit, amount, true);
+        notificationService.notifyAboutTransfer(credit, debit, amount, false);
+    }
+
+    private void validate(Account debit, Account credit, BigDecimal amount) {
+        if (null == credit || null == debit) {
+            throw new ValidationException("Account not found");
+        }
+        if (amount.compareTo(BigDecimal.ZERO) <= 0)
+            throw new ValidationException("Amount should be greater than 0");
+
+    }
+
+}
@@ -0,0 +1,234 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.exception.RateLimitedException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control in front of the transfer path: rate limits per client and per account, checked before a
+ * transfer takes any account lock. A client hammering a few accounts is turned away with 429 instead of queueing on
+ * their locks ahead of every other transfer touching them.
+ * <p>
+ * Each limit is a token bucket kept as a single long per key, the theoretical arrival time of the generic cell rate
+ * algorithm: a transfer is admitted unless it comes more than the burst ahead of the rate, and then moves the
+ * arrival time on by one interval with a compare-and-set. A bucket whose arrival time is in the past is full, so
+ * buckets left idle are dropped by a periodic sweep and created again on demand; past a maximum number of buckets,
+ * new keys are admitted without being tracked.
+ * <p>
+ * A transfer over a limit by less than the maximum wait reserves its tokens and is held back until they are due
+ * instead of being rejected.
+ */
+@Component
+@Slf4j
+public class TransferAdmission {
+
+    /**
+     * Admits every transfer.
+     */
+    public static final TransferAdmission DISABLED = new TransferAdmission(null, false, 0, 1, 0, 1, 0, 0, 0);
+
+    private final TransferMetrics transferMetrics;
+
+    private final boolean enabled;
+
+    private final Buckets accounts;
+
+    private final Buckets clients;
+
+    private final long maxWaitNanos;
+
+    private final long idleNanos;
+
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * @param accountRate    Transfers per second touching an account, 0 for no limit
+     * @param accountBurst   Transfers touching an account admitted at once after it was idle
+     * @param clientRate     Transfers per second of a client, 0 for no limit
+     * @param clientBurst    Transfers of a client admitted at once after it was idle
+     * @param maxWaitMillis  Time a transfer over a limit may be held back instead of being rejected
+     * @param idleMillis     Time a bucket is kept after it filled up again
+     * @param maxKeys        Buckets kept for each of clients and accounts
+     */
+    @Autowired
+    public TransferAdmission(TransferMetrics transferMetrics,
+                             @Value("${challenge.admission.enabled:false}") boolean enabled,
+                             @Value("${challenge.admission.account-rate:1000}") double accountRate,
+                             @Value("${challenge.admission.account-burst:100}") int accountBurst,
+                             @Value("${challenge.admission.client-rate:10000}") double clientRate,
+                             @Value("${challenge.admission.client-burst:1000}") int clientBurst,
+                             @Value("${challenge.admission.max-wait-ms:0}") long maxWaitMillis,
+                             @Value("${challenge.admission.idle-eviction-ms:60000}") long idleMillis,
+                             @Value("${challenge.admission.max-keys:4000000}") int maxKeys) {
+        if (accountRate < 0 || clientRate < 0 || accountBurst < 1 || clientBurst < 1 || maxWaitMillis < 0
+                || idleMillis < 0 || maxKeys < 0) {
+            throw new IllegalArgumentException("Invalid admission limits: accounts " + accountRate + "/s burst "
+                    + accountBurst + ", clients " + clientRate + "/s burst " + clientBurst + ", wait "
+                    + maxWaitMillis + "ms, idle " + idleMillis + "ms, " + maxKeys + " keys");
+        }
+        this.transferMetrics = transferMetrics;
+        this.enabled = enabled;
+        this.accounts = accountRate > 0 ? new Buckets("account", accountRate, accountBurst, maxKeys) : null;
+        this.clients = clientRate > 0 ? new Buckets("client", clientRate, clientBurst, maxKeys) : null;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        if (enabled) {
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "transfer-admission-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = Math.max(1, idleMillis);
+            sweeper.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.sweeper = null;
+        }
+    }
+
+    /**
+     * Takes a token of the client and of both accounts, waiting up to the maximum wait for them to be due. Tokens
+     * taken before a later bucket rejects the transfer are not given back, so a client retrying too early only
+     * delays itself.
+     *
+     * @param clientId Client sending the transfer
+     * @throws RateLimitedException if the client or an account is over its limit
+     */
+    public void admit(String clientId, String fromAccountId, String toAccountId) throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        long wait = take(clients, clientId, now);
+        wait = Math.max(wait, take(accounts, fromAccountId, now));
+        wait = Math.max(wait, take(accounts, toAccountId, now));
+        if (wait > 0) {
+            transferMetrics.recordAdmissionDelayed();
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Drops the buckets that have been full for longer than the idle time.
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        if (clients != null) {
+            evicted += clients.evictIdle(now - idleNanos);
+        }
+        if (accounts != null) {
+            evicted += accounts.evictIdle(now - idleNanos);
+        }
+        log.debug("Evicted {} idle admission buckets", evicted);
+    }
+
+    /**
+     * @return number of buckets kept, of clients and accounts
+     */
+    public long size() {
+        return (clients == null ? 0 : clients.buckets.mappingCount())
+                + (accounts == null ? 0 : accounts.buckets.mappingCount());
+    }
+
+    /**
+     * @return number of transfers admitted without tracking their key, as there were too many buckets already
+     */
+    public long getUntracked() {
+        return (clients == null ? 0 : clients.untracked.sum()) + (accounts == null ? 0 : accounts.untracked.sum());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdown();
+        }
+    }
+
+    private long take(Buckets buckets, String key, long now) {
+        if (buckets == null || key == null) {
+            return 0;
+        }
+        long wait = buckets.reserve(key, now, maxWaitNanos);
+        if (wait < 0) {
+            transferMetrics.recordAdmissionRejected();
+            throw new RateLimitedException("Too many transfers for " + buckets.kind + " " + key + ", try again in "
+                    + Math.max(1, TimeUnit.NANOSECONDS.toMillis(-wait)) + " ms");
+        }
+        return wait;
+    }
+
+    /**
+     * Token buckets of one kind of key, all with the same rate and burst.
+     */
+    private static final class Buckets {
+
+        private final String kind;
+
+        private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+        private final long intervalNanos;
+
+        /**
+         * How far ahead of the rate the arrival time may be, the burst less one interval.
+         */
+        private final long toleranceNanos;
+
+        private final int maxKeys;
+
+        private final LongAdder untracked = new LongAdder();
+
+        private Buckets(String kind, double rate, int burst, int maxKeys) {
+            this.kind = kind;
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+            this.toleranceNanos = intervalNanos * (burst - 1);
+            this.maxKeys = maxKeys;
+        }
+
+        /**
+         * @return nanoseconds until the reserved token is due, 0 if it is due already; or, if that would be longer
+         * than the maximum wait, minus the time until a token is due, nothing being reserved
+         */
+        private long reserve(String key, long now, long maxWaitNanos) {
+            AtomicLong bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.size() >= maxKeys) {
+                    untracked.increment();
+                    return 0;
+                }
+                bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+            }
+            while (true) {
+                long arrival = bucket.get();
+                long start = arrival - now > 0 ? arrival : now;
+                long wait = start - toleranceNanos - now;
+                if (wait > maxWaitNanos) {
+                    return -wait;
+                }
+                if (bucket.compareAndSet(arrival, start + intervalNanos)) {
+                    return Math.max(0, wait);
+                }
+            }
+        }
+
+        /**
+         * A transfer that looked up a bucket just before it was dropped takes its token from the dropped bucket,
+         * which at worst admits one transfer beyond the burst.
+         */
+        private int evictIdle(long idleSince) {
+            int before = buckets.size();
+            buckets.values().removeIf(bucket -> bucket.get() - idleSince < 0);
+            return before - buckets.size();
+        }
+    }
+}
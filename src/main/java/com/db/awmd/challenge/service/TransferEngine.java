@@ -0,0 +1,77 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.journal.TransferJournal;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Moves money between two already validated accounts.
+ * <p>
+ * Transfers are appended to the journal in the order they are applied: once the debit is applied and before the
+ * credit is. A transfer spending the credit of another is therefore always
+ * journaled after it, so no prefix of the journal left by a crash restores a negative balance. A journal failing
+ * to take the record does not undo the transfer, it fails the returned future.
+ */
+public interface TransferEngine {
+
+    /**
+     * Debits the amount from one account and credits it to the other as a single unit of work.
+     *
+     * @param debit  Account to be debited
+     * @param credit Account to be credited
+     * @param amount  Amount to be transferred, greater than zero
+     * @param journal Journal the transfer is appended to
+     * @return a future completed once the journal record is durable
+     * @throws com.db.awmd.challenge.exception.InsufficientFundsException if the debit account does not cover the amount
+     * @throws com.db.awmd.challenge.exception.AccountBusyException       if the accounts could not be locked in time
+     */
+    CompletableFuture<Void> transfer(Account debit, Account credit, BigDecimal amount, TransferJournal journal)
+            throws InterruptedException;
+
+    /**
+     * Applies a batch of transfers, recording the outcome of each one on the transfer itself, along with the
+     * future of its journal record if it completed.
+     *
+     * @param transfers Validated transfers
+     * @param journal   Journal the completed transfers are appended to
+     */
+    void transferAll(List<PendingTransfer> transfers, TransferJournal journal) throws InterruptedException;
+
+    /**
+     * Applies every transfer or none of them, as a single multi-leg transfer. No other transfer sees some of the
+     * legs applied and not the others. The outcome is not recorded on the transfers. Every leg is appended to the
+     * journal once all of them are applied, before any account is released.
+     *
+     * @param legs    Validated transfers, an account may appear in several of them
+     * @param journal Journal the legs are appended to
+     * @return a future completed once the journal records of every leg are durable
+     * @throws com.db.awmd.challenge.exception.InsufficientFundsException if the net debit of an account is not covered
+     * @throws com.db.awmd.challenge.exception.ValidationException        if the balance of an account would overflow
+     * @throws com.db.awmd.challenge.exception.AccountBusyException       if the accounts could not be locked in time
+     */
+    CompletableFuture<Void> transferAtomically(List<PendingTransfer> legs, TransferJournal journal)
+            throws InterruptedException;
+
+    /**
+     * Debits a single account, for a transfer whose credit account lives on another node.
+     *
+     * @param account Account to be debited
+     * @param amount  Amount to be debited, greater than zero
+     * @throws com.db.awmd.challenge.exception.InsufficientFundsException if the account does not cover the amount
+     * @throws com.db.awmd.challenge.exception.AccountBusyException       if the account could not be locked in time
+     */
+    void debit(Account account, BigDecimal amount) throws InterruptedException;
+
+    /**
+     * Credits a single account, for a transfer whose debit account lives on another node or to refund a debit.
+     *
+     * @param account Account to be credited
+     * @param amount  Amount to be credited, greater than zero
+     * @throws com.db.awmd.challenge.exception.ValidationException  if the balance would overflow
+     * @throws com.db.awmd.challenge.exception.AccountBusyException if the account could not be locked in time
+     */
+    void credit(Account account, BigDecimal amount) throws InterruptedException;
+}
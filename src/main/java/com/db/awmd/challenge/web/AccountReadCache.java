@@ -0,0 +1,113 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Account;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Read-through cache of the JSON of single accounts, for clients polling balances. Each account read publishes an
+ * immutable {@link PublishedBalance} holding the balance, its serialized JSON and its ETag. A later read checks the
+ * live balance, a single lock-free read, against the published one and reuses the published JSON while they are
+ * equal, so nothing needs to be told about transfers and a stale balance is never served.
+ * <p>
+ * The ETag is derived from the balance itself, its unscaled value and scale, so equal balances always get equal
+ * tags, whether or not the account is kept published. It is prefixed by a hash of the account id and a salt drawn
+ * at start-up, so an ETag handed out before a restart does not match a balance published after it.
+ */
+@Component
+public class AccountReadCache {
+
+    private final ConcurrentMap<String, PublishedBalance> published = new ConcurrentHashMap<>();
+
+    private final long salt = ThreadLocalRandom.current().nextLong();
+
+    private final ObjectMapper objectMapper;
+
+    private final int capacity;
+
+    /**
+     * @param capacity Accounts kept published; reads of further accounts are serialized every time
+     */
+    @Autowired
+    public AccountReadCache(ObjectMapper objectMapper,
+                            @Value("${challenge.accounts.read-cache.capacity:100000}") int capacity) {
+        this.objectMapper = objectMapper;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the published balance of the account, published anew if its balance has changed since
+     */
+    public PublishedBalance get(Account account) throws JsonProcessingException {
+        BigDecimal balance = account.getBalance();
+        PublishedBalance current = published.get(account.getAccountId());
+        if (current != null && (current.balance == balance || current.balance.equals(balance))) {
+            return current;
+        }
+        PublishedBalance next = new PublishedBalance(balance, etagOf(account.getAccountId(), balance),
+                objectMapper.writeValueAsBytes(new Account(account.getAccountId(), balance)));
+        if (current != null || published.size() < capacity) {
+            published.put(account.getAccountId(), next);
+        }
+        return next;
+    }
+
+    public int size() {
+        return published.size();
+    }
+
+    private String etagOf(String accountId, BigDecimal balance) {
+        long prefix = salt ^ accountId.hashCode() * 0x9E3779B97F4A7C15L;
+        return "\"" + Long.toHexString(prefix) + "." + balance.unscaledValue().toString(16) + "." + balance.scale()
+                + "\"";
+    }
+
+    /**
+     * Balance of an account as of a single read, with its JSON.
+     */
+    public static final class PublishedBalance {
+
+        private final BigDecimal balance;
+
+        @Getter
+        private final byte[] json;
+
+        @Getter
+        private final String etag;
+
+        private PublishedBalance(BigDecimal balance, String etag, byte[] json) {
+            this.balance = balance;
+            this.json = json;
+            this.etag = etag;
+        }
+
+        /**
+         * @param ifNoneMatch If-None-Match header of the request, may be null
+         * @return true if the client already holds this balance
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals(etag) || tag.equals("*")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
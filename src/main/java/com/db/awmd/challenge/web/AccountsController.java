@@ -1,11 +1,39 @@
 package com.db.awmd.challenge.web;
 
+import com.db.awmd.challenge.cluster.ClusterCoordinator;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.ImportResult;
+import com.db.awmd.challenge.domain.TransferPage;
+import com.db.awmd.challenge.exception.AccountBusyException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountHandles;
 import com.db.awmd.challenge.service.AccountsService;
-import javax.validation.Valid;
+import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.web.AccountReadCache.PublishedBalance;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -13,19 +41,42 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/v1/accounts")
 @Slf4j
 public class AccountsController {
 
+  public static final String TEXT_CSV_VALUE = "text/csv";
+
+  /**
+   * Number of imported accounts created at a time.
+   */
+  static final int IMPORT_GROUP_SIZE = 1000;
+
   private final AccountsService accountsService;
 
+  private final TransactionService transactionService;
+
+  private final ClusterCoordinator clusterCoordinator;
+
+  private final ObjectMapper objectMapper;
+
+  private final AccountReadCache accountReadCache;
+
   @Autowired
-  public AccountsController(AccountsService accountsService) {
+  public AccountsController(AccountsService accountsService, TransactionService transactionService,
+      ClusterCoordinator clusterCoordinator, ObjectMapper objectMapper, AccountReadCache accountReadCache) {
     this.accountsService = accountsService;
+    this.transactionService = transactionService;
+    this.clusterCoordinator = clusterCoordinator;
+    this.objectMapper = objectMapper;
+    this.accountReadCache = accountReadCache;
   }
 
   @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -33,7 +84,7 @@ public class AccountsController {
     log.info("Creating account {}", account);
 
     try {
-    this.accountsService.createAccount(account);
+      this.clusterCoordinator.createAccount(account);
     } catch (DuplicateAccountIdException daie) {
       return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
     }
@@ -41,10 +92,219 @@ public class AccountsController {
     return new ResponseEntity<>(HttpStatus.CREATED);
   }
 
+  /**
+   * Imports newline delimited JSON accounts, one per line. The body is read and imported group by group, so
+   * memory use does not depend on the number of accounts. A malformed line ends the import. Accounts stored on
+   * another node of the cluster are created there one by one.
+   */
+  @PostMapping(path = "/import", consumes = TransactionController.APPLICATION_NDJSON_VALUE,
+    produces = MediaType.APPLICATION_JSON_VALUE)
+  public ImportResult importAccounts(HttpServletRequest request) throws IOException {
+    log.info("Importing accounts");
+
+    ImportGroup group = new ImportGroup(this.accountsService, this.clusterCoordinator);
+    long line = 0;
+    try (MappingIterator<Account> accounts =
+           objectMapper.readerFor(Account.class).readValues(request.getInputStream())) {
+      while (accounts.hasNextValue()) {
+        line++;
+        group.add(line, accounts.nextValue());
+      }
+    } catch (JsonProcessingException e) {
+      group.flush();
+      group.result.reject(line + 1, "Malformed account, import stopped: " + e.getOriginalMessage());
+    }
+    group.flush();
+    return group.result;
+  }
+
+  /**
+   * Imports CSV accounts, one {@code accountId,balance} row per line, with an optional header row. The body is
+   * read and imported group by group, so memory use does not depend on the number of accounts.
+   */
+  @PostMapping(path = "/import", consumes = TEXT_CSV_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+  public ImportResult importAccountsCsv(HttpServletRequest request) throws IOException {
+    log.info("Importing accounts from CSV");
+
+    ImportGroup group = new ImportGroup(this.accountsService, this.clusterCoordinator);
+    try (BufferedReader rows = new BufferedReader(
+      new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8))) {
+      long line = 0;
+      String row;
+      while ((row = rows.readLine()) != null) {
+        line++;
+        if (row.isEmpty() || (line == 1 && row.startsWith("accountId"))) {
+          continue;
+        }
+        int comma = row.indexOf(',');
+        if (comma < 0 || row.indexOf(',', comma + 1) >= 0) {
+          group.result.reject(line, "Expected accountId,balance");
+          continue;
+        }
+        try {
+          BigDecimal balance = new BigDecimal(row.substring(comma + 1).trim());
+          group.add(line, new Account(row.substring(0, comma).trim(), balance));
+        } catch (NumberFormatException e) {
+          group.result.reject(line, "Invalid balance");
+        }
+      }
+    }
+    group.flush();
+    return group.result;
+  }
+
+  /**
+   * Streams every account stored on this node with its balance, as CSV if asked for and as newline delimited JSON
+   * otherwise. Accounts are read without blocking transfers, so balances are not a consistent snapshot across
+   * accounts unless asked for.
+   */
+  @GetMapping
+  public ResponseEntity<StreamingResponseBody> exportAccounts(
+    @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+    @RequestParam(defaultValue = "false") boolean consistent) {
+    log.info("Exporting accounts, consistent {}", consistent);
+
+    Consumer<Consumer<Account>> forEachAccount =
+      consistent ? this.transactionService::snapshotBalances : this.accountsService::forEachAccount;
+
+    if (accept != null && accept.contains(TEXT_CSV_VALUE)) {
+      return ResponseEntity.ok().contentType(MediaType.parseMediaType(TEXT_CSV_VALUE)).body(output -> {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        writer.write("accountId,balance\n");
+        forEachAccount.accept(account -> {
+          try {
+            writer.write(account.getAccountId() + "," + account.getBalance().toPlainString() + "\n");
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+        writer.flush();
+      });
+    }
+    return ResponseEntity.ok().contentType(MediaType.parseMediaType(TransactionController.APPLICATION_NDJSON_VALUE))
+      .body(output -> {
+        try (SequenceWriter writer = objectMapper.writerFor(Account.class).withRootValueSeparator("\n")
+          .writeValues(output)) {
+          forEachAccount.accept(account -> {
+            try {
+              writer.write(account);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+        }
+      });
+  }
+
+  /**
+   * @return the number of accounts stored on this node and their total balance as of a single point in time,
+   * taken while transfers run
+   */
+  @GetMapping(path = "/snapshot", produces = MediaType.APPLICATION_JSON_VALUE)
+  public BalanceSnapshot snapshotBalances() {
+    log.info("Taking a balance snapshot");
+    return this.transactionService.snapshotBalances(account -> {
+    });
+  }
+
+  /**
+   * @return the handle of the account, for transfers by handle on this node; an account stored on another node
+   * is rejected
+   */
+  @GetMapping(path = "/{accountId}/handle")
+  public ResponseEntity<Object> getAccountHandle(@PathVariable String accountId) {
+    this.clusterCoordinator.checkLocal(accountId, "Handles are only valid on the node storing the account: ");
+    int handle = this.accountsService.getAccountHandle(accountId);
+    if (handle == AccountHandles.NO_HANDLE) {
+      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    }
+    return new ResponseEntity<>(handle, HttpStatus.OK);
+  }
+
+  /**
+   * Pages through the completed transfers of an account, newest first. The nextCursor of a page is passed as
+   * cursor to get the following one.
+   */
+  @GetMapping(path = "/{accountId}/transfers", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<TransferPage> getTransfers(@PathVariable String accountId,
+      @RequestParam(required = false) Long cursor, @RequestParam(defaultValue = "50") int limit) {
+    if (accountsService.getAccount(accountId) == null) {
+      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    }
+    return new ResponseEntity<>(transactionService.getTransfers(accountId, cursor, limit), HttpStatus.OK);
+  }
+
+  /**
+   * Returns the account with its balance and an ETag; a request whose If-None-Match holds the ETag of the current
+   * balance gets 304 Not Modified. Accounts stored on this node are served from the {@link AccountReadCache}.
+   */
   @GetMapping(path = "/{accountId}")
-  public Account getAccount(@PathVariable String accountId) {
-    log.info("Retrieving account for id {}", accountId);
-    return this.accountsService.getAccount(accountId);
+  public ResponseEntity<Object> getAccount(@PathVariable String accountId,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+      throws JsonProcessingException {
+    log.debug("Retrieving account for id {}", accountId);
+
+    if (!this.clusterCoordinator.isLocal(accountId)) {
+      return new ResponseEntity<>(this.clusterCoordinator.getAccount(accountId), HttpStatus.OK);
+    }
+    Account account = this.accountsService.getAccount(accountId);
+    if (account == null) {
+      return new ResponseEntity<>(HttpStatus.OK);
+    }
+    PublishedBalance published = this.accountReadCache.get(account);
+    if (published.matches(ifNoneMatch)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(published.getEtag()).build();
+    }
+    return ResponseEntity.ok().eTag(published.getEtag()).contentType(MediaType.APPLICATION_JSON)
+      .body(published.getJson());
   }
 
+  /**
+   * Accounts waiting to be created together, with the line each was read from.
+   */
+  private static final class ImportGroup {
+
+    private final AccountsService accountsService;
+
+    private final ClusterCoordinator clusterCoordinator;
+
+    private final ImportResult result = new ImportResult();
+
+    private final List<Account> accounts = new ArrayList<>(IMPORT_GROUP_SIZE);
+
+    private final Map<Account, Long> lines = new IdentityHashMap<>(IMPORT_GROUP_SIZE * 2);
+
+    private ImportGroup(AccountsService accountsService, ClusterCoordinator clusterCoordinator) {
+      this.accountsService = accountsService;
+      this.clusterCoordinator = clusterCoordinator;
+    }
+
+    private void add(long line, Account account) {
+      if (!clusterCoordinator.isLocal(account.getAccountId())) {
+        try {
+          clusterCoordinator.createAccount(account);
+          result.setCreated(result.getCreated() + 1);
+        } catch (DuplicateAccountIdException | AccountBusyException e) {
+          result.reject(line, e.getMessage());
+        }
+        return;
+      }
+      accounts.add(account);
+      lines.put(account, line);
+      if (accounts.size() == IMPORT_GROUP_SIZE) {
+        flush();
+      }
+    }
+
+    private void flush() {
+      if (accounts.isEmpty()) {
+        return;
+      }
+      int created = accountsService.createAccounts(accounts,
+        (account, reason) -> result.reject(lines.get(account), reason.getMessage()));
+      result.setCreated(result.getCreated() + created);
+      accounts.clear();
+      lines.clear();
+    }
+  }
 }
@@ -0,0 +1,130 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.cluster.ClusterCoordinator;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.service.AsyncExecutor;
+import com.db.awmd.challenge.service.TransferAdmission;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import java.math.BigDecimal;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Asynchronous variants of the account and transfer endpoints. The request thread is released as soon as the work
+ * is queued on the {@link AsyncExecutor}, so requests waiting for busy accounts do not exhaust the servlet pool.
+ * Requests are routed through the {@link ClusterCoordinator} like their blocking counterparts.
+ */
+@RestController
+@RequestMapping("/v1/async")
+@Slf4j
+public class AsyncController {
+
+    private final ClusterCoordinator clusterCoordinator;
+
+    private final AsyncExecutor asyncExecutor;
+
+    private final TransferAdmission transferAdmission;
+
+    @Autowired
+    public AsyncController(ClusterCoordinator clusterCoordinator, AsyncExecutor asyncExecutor,
+                           TransferAdmission transferAdmission) {
+        this.clusterCoordinator = clusterCoordinator;
+        this.asyncExecutor = asyncExecutor;
+        this.transferAdmission = transferAdmission;
+    }
+
+    @PostMapping(path = "/accounts", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<Object>> createAccount(@RequestBody @Valid Account account) {
+        log.info("Creating account {} asynchronously", account);
+
+        return defer(() -> {
+            try {
+                this.clusterCoordinator.createAccount(account);
+            } catch (DuplicateAccountIdException daie) {
+                return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
+            }
+            return new ResponseEntity<>(HttpStatus.CREATED);
+        });
+    }
+
+    @GetMapping(path = "/accounts/{accountId}")
+    public DeferredResult<ResponseEntity<Object>> getAccount(@PathVariable String accountId) {
+        return defer(() -> new ResponseEntity<>(this.clusterCoordinator.getAccount(accountId), HttpStatus.OK));
+    }
+
+    /**
+     * POST method to start fund transfer between two accounts without holding a request thread
+     *
+     * @param fromAccountId  From Account id (debit)
+     * @param toAccountId    To Account id (credit)
+     * @param amount         Amount to be transferred
+     * @param idempotencyKey Optional key, a repeated key gets the outcome of the first transfer
+     * @param clientId       Optional client the transfer is rate limited against
+     * @return result completed once the transfer is applied
+     */
+    @PostMapping(path = "/transaction/transfer/{fromAccountId}/{toAccountId}/{amount}",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<Object>> transfer(@PathVariable String fromAccountId,
+                                                           @PathVariable String toAccountId,
+                                                           @PathVariable("amount") String amountText,
+                                                           @RequestHeader(value = TransactionController
+                                                                   .IDEMPOTENCY_KEY_HEADER, required = false)
+                                                                   String idempotencyKey,
+                                                           @RequestHeader(value = TransactionController
+                                                                   .CLIENT_ID_HEADER, required = false)
+                                                                   String clientId,
+                                                           HttpServletRequest request) {
+        log.debug("Transferring money asynchronously from {} to {}", fromAccountId, toAccountId);
+
+        BigDecimal amount = MinorUnits.parseAmount(amountText);
+        String client = TransactionController.clientOf(clientId, request);
+        try {
+            this.transferAdmission.admit(client, fromAccountId, toAccountId);
+        } catch (InterruptedException exception) {
+            return completed(new ResponseEntity<>(exception.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR));
+        }
+        return defer(() -> {
+            this.clusterCoordinator.transfer(idempotencyKey, client, fromAccountId, toAccountId, amount);
+            return new ResponseEntity<>(HttpStatus.OK);
+        });
+    }
+
+    private static DeferredResult<ResponseEntity<Object>> completed(ResponseEntity<Object> response) {
+        DeferredResult<ResponseEntity<Object>> result = new DeferredResult<>();
+        result.setResult(response);
+        return result;
+    }
+
+    /**
+     * Exceptions of the task are passed on unwrapped, so they map to the same responses as on the blocking
+     * endpoints.
+     */
+    private DeferredResult<ResponseEntity<Object>> defer(Callable<ResponseEntity<Object>> task) {
+        DeferredResult<ResponseEntity<Object>> result = new DeferredResult<>();
+        asyncExecutor.submit(task).whenComplete((response, failure) -> {
+            if (failure == null) {
+                result.setResult(response);
+            } else {
+                result.setErrorResult(failure instanceof CompletionException ? failure.getCause() : failure);
+            }
+        });
+        return result;
+    }
+}
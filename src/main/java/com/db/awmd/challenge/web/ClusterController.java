@@ -0,0 +1,78 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.cluster.ClusterTopology;
+import com.db.awmd.challenge.cluster.TransferParticipant;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Endpoints called by the other nodes of the cluster to prepare, commit and abort their transfers on this node,
+ * and to inspect the legs waiting for a decision.
+ */
+@RestController
+@RequestMapping("/v1/cluster")
+@ConditionalOnProperty(name = "challenge.cluster.enabled", havingValue = "true")
+@Slf4j
+public class ClusterController {
+
+    private final ClusterTopology topology;
+
+    private final TransferParticipant participant;
+
+    @Autowired
+    public ClusterController(ClusterTopology topology, TransferParticipant participant) {
+        this.topology = topology;
+        this.participant = participant;
+    }
+
+    @PostMapping(path = "/transfers/{transferId}/prepare", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public TransferStatus prepare(@PathVariable String transferId, @RequestBody TransferLeg leg)
+            throws InterruptedException {
+        return participant.prepare(transferId, leg);
+    }
+
+    @PostMapping(path = "/transfers/{transferId}/commit")
+    public void commit(@PathVariable String transferId) throws InterruptedException {
+        participant.commit(transferId);
+    }
+
+    @PostMapping(path = "/transfers/{transferId}/abort")
+    public void abort(@PathVariable String transferId) throws InterruptedException {
+        participant.abort(transferId);
+    }
+
+    /**
+     * @return the legs prepared on this node and still waiting for a decision
+     */
+    @GetMapping(path = "/transfers", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<Map<String, Object>> inDoubt() {
+        return participant.inDoubt();
+    }
+
+    /**
+     * @return the node owning the account
+     */
+    @GetMapping(path = "/accounts/{accountId}/owner", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> ownerOf(@PathVariable String accountId) {
+        int owner = topology.ownerOf(accountId);
+        Map<String, Object> node = new LinkedHashMap<>();
+        node.put("node", owner);
+        node.put("url", topology.urlOf(owner));
+        return node;
+    }
+}
@@ -0,0 +1,30 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Controller class exposing transfer latencies, outcomes and lock contention
+ */
+@RestController
+@RequestMapping("/v1/metrics")
+public class MetricsController {
+
+    private final TransferMetrics transferMetrics;
+
+    @Autowired
+    public MetricsController(TransferMetrics transferMetrics) {
+        this.transferMetrics = transferMetrics;
+    }
+
+    @GetMapping(path = "/transfers", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> transfers() {
+        return transferMetrics.snapshot();
+    }
+}
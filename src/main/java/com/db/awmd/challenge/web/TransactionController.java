@@ -1,6 +1,16 @@
 package com.db.awmd.challenge.web;
 
+import com.db.awmd.challenge.cluster.ClusterCoordinator;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.RateLimitedException;
 import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmission;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -8,7 +18,11 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.math.BigDecimal;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Controller class that handles requests related to transactions
@@ -18,11 +32,41 @@ import java.math.BigDecimal;
 @Slf4j
 public class TransactionController {
 
+    /**
+     * Newline delimited JSON, one transfer per line.
+     */
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    /**
+     * Header carrying a client chosen key, so that a retried transfer is applied only once.
+     */
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    /**
+     * Header naming the client a transfer is rate limited against; without it, the client is its address.
+     */
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
     private final TransactionService txnService;
 
+    private final ClusterCoordinator clusterCoordinator;
+
+    private final ObjectMapper objectMapper;
+
+    private final TransferAdmission transferAdmission;
+
+    public TransactionController(TransactionService txnService, ClusterCoordinator clusterCoordinator,
+                                 ObjectMapper objectMapper) {
+        this(txnService, clusterCoordinator, objectMapper, TransferAdmission.DISABLED);
+    }
+
     @Autowired
-    public TransactionController(TransactionService txnService) {
+    public TransactionController(TransactionService txnService, ClusterCoordinator clusterCoordinator,
+                                 ObjectMapper objectMapper, TransferAdmission transferAdmission) {
         this.txnService = txnService;
+        this.clusterCoordinator = clusterCoordinator;
+        this.objectMapper = objectMapper;
+        this.transferAdmission = transferAdmission;
     }
 
     /**
@@ -31,20 +75,186 @@ public class TransactionController {
      * @param fromAccountId From Account id (debit)
      * @param toAccountId   To Account id (credit)
      * @param amount        Amount to be transferred
+     * @param idempotencyKey Optional key, a repeated key gets the outcome of the first transfer
+     * @param clientId       Optional client the transfer is rate limited against
      * @return ResponseEntity
      */
     @ResponseStatus(HttpStatus.OK)
     @PostMapping(path = "/transfer/{fromAccountId}/{toAccountId}/{amount}",
             produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Object> transfer(@PathVariable String fromAccountId, @PathVariable String toAccountId,
-                                           @PathVariable BigDecimal amount) {
-        log.info("Transferring money");
+                                           @PathVariable String amount,
+                                           @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false)
+                                                   String idempotencyKey,
+                                           @RequestHeader(value = CLIENT_ID_HEADER, required = false)
+                                                   String clientId,
+                                           HttpServletRequest request) {
+        log.debug("Transferring money from {} to {}", fromAccountId, toAccountId);
 
         try {
-            this.txnService.transfer(fromAccountId, toAccountId, amount);
+            clientId = clientOf(clientId, request);
+            this.transferAdmission.admit(clientId, fromAccountId, toAccountId);
+            this.clusterCoordinator.transfer(idempotencyKey, clientId, fromAccountId, toAccountId,
+                    MinorUnits.parseAmount(amount));
         } catch (InterruptedException exception) {
             return new ResponseEntity<>(exception.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
         return null;
     }
+
+    /**
+     * POST method to start fund transfer between two accounts identified by handle
+     *
+     * @param fromHandle From Account handle (debit)
+     * @param toHandle   To Account handle (credit)
+     * @param amount     Amount to be transferred
+     * @param clientId   Optional client the transfer is rate limited against
+     * @return ResponseEntity
+     */
+    @PostMapping(path = "/transfer/handles/{fromHandle}/{toHandle}/{amount}",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Object> transferByHandle(@PathVariable int fromHandle, @PathVariable int toHandle,
+                                                   @PathVariable String amount,
+                                                   @RequestHeader(value = CLIENT_ID_HEADER, required = false)
+                                                           String clientId,
+                                                   HttpServletRequest request) {
+        try {
+            this.transferAdmission.admit(clientOf(clientId, request), this.txnService.getAccountId(fromHandle),
+                    this.txnService.getAccountId(toHandle));
+            this.txnService.transfer(fromHandle, toHandle, MinorUnits.parseAmount(amount));
+        } catch (InterruptedException exception) {
+            return new ResponseEntity<>(exception.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        return new ResponseEntity<>(HttpStatus.OK);
+    }
+
+    /**
+     * POST method to apply a JSON array of transfers
+     *
+     * @param transfers Transfers to be applied
+     * @param clientId  Optional client the transfers are rate limited against
+     * @return the result of each transfer, in request order
+     */
+    @PostMapping(path = "/transfers", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Object> transfers(@RequestBody List<TransferRequest> transfers,
+                                            @RequestHeader(value = CLIENT_ID_HEADER, required = false)
+                                                    String clientId,
+                                            HttpServletRequest request) {
+        log.info("Transferring batch of {}", transfers.size());
+
+        try {
+            return new ResponseEntity<>(admitAndTransfer(clientOf(clientId, request), transfers), HttpStatus.OK);
+        } catch (InterruptedException exception) {
+            return new ResponseEntity<>(exception.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * POST method to apply a JSON array of transfers as a single multi-leg transfer: either every leg is applied
+     * or none is. Every account has to be stored on this node. Each leg is rate limited like a single transfer,
+     * and the payment is turned away if any leg is over a limit.
+     *
+     * @param legs     Transfers to be applied together
+     * @param clientId Optional client the legs are rate limited against
+     * @return the result of each leg, in request order
+     */
+    @PostMapping(path = "/payments", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Object> payment(@RequestBody List<TransferRequest> legs,
+                                          @RequestHeader(value = CLIENT_ID_HEADER, required = false)
+                                                  String clientId,
+                                          HttpServletRequest request) {
+        log.info("Transferring {} legs atomically", legs.size());
+
+        try {
+            String client = clientOf(clientId, request);
+            for (TransferRequest leg : legs) {
+                this.transferAdmission.admit(client, leg.getFromAccountId(), leg.getToAccountId());
+            }
+            return new ResponseEntity<>(this.clusterCoordinator.transferAtomically(legs), HttpStatus.OK);
+        } catch (InterruptedException exception) {
+            return new ResponseEntity<>(exception.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * POST method to apply a stream of newline delimited JSON transfers. The body is read and answered group by
+     * group, so memory use does not depend on the number of transfers.
+     *
+     * @param clientId Optional client the transfers are rate limited against
+     * @param request  Request whose body holds one transfer per line
+     * @param response Response receiving one result per line, in request order
+     */
+    @PostMapping(path = "/transfers", consumes = APPLICATION_NDJSON_VALUE, produces = APPLICATION_NDJSON_VALUE)
+    public void transfersStream(@RequestHeader(value = CLIENT_ID_HEADER, required = false) String clientId,
+                                HttpServletRequest request, HttpServletResponse response)
+            throws IOException, InterruptedException {
+        log.info("Transferring batch stream");
+
+        String client = clientOf(clientId, request);
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        try (MappingIterator<TransferRequest> transfers =
+                     objectMapper.readerFor(TransferRequest.class).readValues(request.getInputStream());
+             SequenceWriter results = objectMapper.writerFor(TransferResult.class).withRootValueSeparator("\n")
+                     .writeValues(response.getOutputStream())) {
+            List<TransferRequest> group = new ArrayList<>(TransactionService.BATCH_GROUP_SIZE);
+            while (transfers.hasNextValue()) {
+                group.add(transfers.nextValue());
+                if (group.size() == TransactionService.BATCH_GROUP_SIZE) {
+                    writeResults(results, client, group);
+                }
+            }
+            writeResults(results, client, group);
+        }
+    }
+
+    private void writeResults(SequenceWriter results, String clientId, List<TransferRequest> group)
+            throws IOException, InterruptedException {
+        if (group.isEmpty()) {
+            return;
+        }
+        results.writeAll(admitAndTransfer(clientId, group));
+        results.flush();
+        group.clear();
+    }
+
+    /**
+     * Applies the transfers of a batch admitted by the rate limits; the others are not applied and get
+     * {@link TransferStatus#RATE_LIMITED}.
+     */
+    private List<TransferResult> admitAndTransfer(String clientId, List<TransferRequest> transfers)
+            throws InterruptedException {
+        List<TransferRequest> admitted = new ArrayList<>(transfers.size());
+        TransferResult[] refused = null;
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequest transfer = transfers.get(i);
+            try {
+                this.transferAdmission.admit(clientId, transfer.getFromAccountId(), transfer.getToAccountId());
+                admitted.add(transfer);
+            } catch (RateLimitedException e) {
+                if (refused == null) {
+                    refused = new TransferResult[transfers.size()];
+                }
+                refused[i] = new TransferResult(transfer, TransferStatus.RATE_LIMITED);
+            }
+        }
+        List<TransferResult> applied = this.clusterCoordinator.transferBatch(clientId, admitted);
+        if (refused == null) {
+            return applied;
+        }
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        int next = 0;
+        for (TransferResult result : refused) {
+            results.add(result != null ? result : applied.get(next++));
+        }
+        return results;
+    }
+
+    /**
+     * @return the client named by the {@link #CLIENT_ID_HEADER} header, or else the address of the caller
+     */
+    static String clientOf(String clientId, HttpServletRequest request) {
+        return clientId != null && !clientId.isEmpty() ? clientId : request.getRemoteAddr();
+    }
 }
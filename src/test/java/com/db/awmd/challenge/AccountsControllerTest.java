@@ -1,24 +1,35 @@
 package com.db.awmd.challenge;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.web.AccountReadCache;
+import com.db.awmd.challenge.web.AccountReadCache.PublishedBalance;
+import com.db.awmd.challenge.web.AccountsController;
+import com.db.awmd.challenge.web.TransactionController;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.math.BigDecimal;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.context.WebApplicationContext;
 
 @RunWith(SpringRunner.class)
@@ -101,4 +112,140 @@ public class AccountsControllerTest {
       .andExpect(
         content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
   }
+
+  @Test
+  public void getAccountNotModified() throws Exception {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal("10.5")));
+    this.accountsService.createAccount(new Account("Id-2", BigDecimal.ONE));
+
+    String etag = this.mockMvc.perform(get("/v1/accounts/Id-1"))
+      .andExpect(status().isOk())
+      .andExpect(content().string("{\"accountId\":\"Id-1\",\"balance\":10.5}"))
+      .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    this.mockMvc.perform(get("/v1/accounts/Id-1").header(HttpHeaders.IF_NONE_MATCH, etag))
+      .andExpect(status().isNotModified())
+      .andExpect(header().string(HttpHeaders.ETAG, etag));
+
+    this.mockMvc.perform(post("/v1/transaction/transfer/Id-1/Id-2/2")).andExpect(status().isOk());
+
+    this.mockMvc.perform(get("/v1/accounts/Id-1").header(HttpHeaders.IF_NONE_MATCH, etag))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.balance").value(8.5));
+    assertThat(this.mockMvc.perform(get("/v1/accounts/Id-1")).andReturn().getResponse().getHeader(HttpHeaders.ETAG))
+      .isNotEqualTo(etag);
+  }
+
+  @Test
+  public void readCacheTagsEqualBalancesEquallyBeyondCapacity() throws Exception {
+    AccountReadCache cache = new AccountReadCache(new ObjectMapper(), 0);
+    Account account = new Account("Id-1", new BigDecimal("10.50"));
+
+    PublishedBalance first = cache.get(account);
+    PublishedBalance second = cache.get(account);
+
+    assertThat(cache.size()).isZero();
+    assertThat(second.matches(first.getEtag())).isTrue();
+    assertThat(cache.get(new Account("Id-1", new BigDecimal("10.5"))).matches(first.getEtag())).isFalse();
+    account.setBalance(new BigDecimal("9.50"));
+    assertThat(cache.get(account).matches(first.getEtag())).isFalse();
+  }
+
+  @Test
+  public void importAccounts() throws Exception {
+    this.accountsService.createAccount(new Account("Id-2", BigDecimal.ONE));
+
+    this.mockMvc.perform(post("/v1/accounts/import").contentType(TransactionController.APPLICATION_NDJSON_VALUE)
+      .content("{\"accountId\":\"Id-1\",\"balance\":10}\n" +
+        "{\"accountId\":\"Id-2\",\"balance\":20}\n" +
+        "{\"accountId\":\"Id-3\",\"balance\":-1}\n" +
+        "{\"accountId\":\"Id-4\",\"balance\":40.5}\n"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.created").value(2))
+      .andExpect(jsonPath("$.rejected").value(2))
+      .andExpect(jsonPath("$.errors[0]").value("Line 3: Initial balance must be positive."))
+      .andExpect(jsonPath("$.errors[1]").value("Line 2: Account id Id-2 already exists!"));
+
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("10");
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("1");
+    assertThat(accountsService.getAccount("Id-4").getBalance()).isEqualByComparingTo("40.5");
+  }
+
+  @Test
+  public void importAccountsCsv() throws Exception {
+    StringBuilder body = new StringBuilder("accountId,balance\n");
+    for (int i = 0; i < 2500; i++) {
+      body.append("Id-").append(i).append(',').append(i).append('\n');
+    }
+    body.append("Id-x,abc\nId-y\n");
+
+    this.mockMvc.perform(post("/v1/accounts/import").contentType(AccountsController.TEXT_CSV_VALUE)
+      .content(body.toString()))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.created").value(2500))
+      .andExpect(jsonPath("$.errors[0]").value("Line 2502: Invalid balance"))
+      .andExpect(jsonPath("$.errors[1]").value("Line 2503: Expected accountId,balance"));
+
+    assertThat(accountsService.getAccount("Id-2499").getBalance()).isEqualByComparingTo("2499");
+  }
+
+  @Test
+  public void exportAccounts() throws Exception {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal("10.5")));
+    this.accountsService.createAccount(new Account("Id-2", new BigDecimal("20")));
+
+    MvcResult ndjson = this.mockMvc.perform(get("/v1/accounts")).andExpect(request().asyncStarted()).andReturn();
+    this.mockMvc.perform(asyncDispatch(ndjson)).andExpect(status().isOk());
+    assertThat(ndjson.getResponse().getContentType()).isEqualTo(TransactionController.APPLICATION_NDJSON_VALUE);
+    assertThat(ndjson.getResponse().getContentAsString().split("\n")).containsExactlyInAnyOrder(
+      "{\"accountId\":\"Id-1\",\"balance\":10.5}", "{\"accountId\":\"Id-2\",\"balance\":20}");
+
+    MvcResult csv = this.mockMvc.perform(get("/v1/accounts").accept(AccountsController.TEXT_CSV_VALUE))
+      .andExpect(request().asyncStarted()).andReturn();
+    this.mockMvc.perform(asyncDispatch(csv)).andExpect(status().isOk());
+    assertThat(csv.getResponse().getContentAsString().split("\n"))
+      .startsWith("accountId,balance").contains("Id-1,10.5", "Id-2,20").hasSize(3);
+  }
+
+  @Test
+  public void snapshotBalances() throws Exception {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal("10.5")));
+    this.accountsService.createAccount(new Account("Id-2", new BigDecimal("20")));
+
+    this.mockMvc.perform(get("/v1/accounts/snapshot"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.accounts").value(2))
+      .andExpect(jsonPath("$.total").value(30.5));
+
+    MvcResult csv = this.mockMvc.perform(get("/v1/accounts?consistent=true").accept(AccountsController.TEXT_CSV_VALUE))
+      .andExpect(request().asyncStarted()).andReturn();
+    this.mockMvc.perform(asyncDispatch(csv)).andExpect(status().isOk());
+    assertThat(csv.getResponse().getContentAsString().split("\n")).contains("Id-1,10.5", "Id-2,20").hasSize(3);
+  }
+
+  @Test
+  public void getTransfers() throws Exception {
+    this.accountsService.createAccount(new Account("Ledger-1", new BigDecimal(100)));
+    this.accountsService.createAccount(new Account("Ledger-2", new BigDecimal(100)));
+    this.mockMvc.perform(post("/v1/transaction/transfer/Ledger-1/Ledger-2/10")).andExpect(status().isOk());
+    this.mockMvc.perform(post("/v1/transaction/transfer/Ledger-2/Ledger-1/3")).andExpect(status().isOk());
+    this.mockMvc.perform(post("/v1/transaction/transfer/Ledger-1/Ledger-2/1")).andExpect(status().isOk());
+
+    MvcResult firstPage = this.mockMvc.perform(get("/v1/accounts/Ledger-1/transfers?limit=2"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.transfers.length()").value(2))
+      .andExpect(jsonPath("$.transfers[0].amount").value(1))
+      .andExpect(jsonPath("$.transfers[1].fromAccountId").value("Ledger-2"))
+      .andExpect(jsonPath("$.transfers[1].amount").value(3))
+      .andReturn();
+    String cursor = firstPage.getResponse().getContentAsString().replaceAll(".*\"nextCursor\":(\\d+).*", "$1");
+
+    this.mockMvc.perform(get("/v1/accounts/Ledger-1/transfers?limit=2&cursor=" + cursor))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.transfers.length()").value(1))
+      .andExpect(jsonPath("$.transfers[0].toAccountId").value("Ledger-2"))
+      .andExpect(jsonPath("$.transfers[0].amount").value(10))
+      .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    this.mockMvc.perform(get("/v1/accounts/Ledger-3/transfers")).andExpect(status().isNotFound());
+    this.mockMvc.perform(get("/v1/accounts/Ledger-1/transfers?limit=0")).andExpect(status().isBadRequest());
+  }
 }
@@ -1,12 +1,27 @@
 package com.db.awmd.challenge;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.junit.Assert.fail;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceMode;
+import com.db.awmd.challenge.exception.AccountStoreFullException;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.journal.JournalRecord;
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.InternedAccountsRepository;
 import com.db.awmd.challenge.service.AccountsService;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,6 +44,15 @@ public class AccountsServiceTest {
     assertThat(this.accountsService.getAccount("Id-123")).isEqualTo(account);
   }
 
+  @Test
+  public void accountsWithSameIdAndBalanceAreEqual() {
+    Account account = new Account("Id-124", new BigDecimal(1000));
+    Account copy = new Account("Id-124", new BigDecimal(1000));
+
+    assertThat(copy).isEqualTo(account).hasSameHashCodeAs(account);
+    assertThat(account.toString()).doesNotContain("lock");
+  }
+
   @Test
   public void addAccount_failsOnDuplicateId() throws Exception {
     String uniqueId = "Id-" + System.currentTimeMillis();
@@ -43,4 +67,88 @@ public class AccountsServiceTest {
     }
 
   }
+
+  @Test
+  public void addAccount_journalsInitialBalanceEvenIfCreditedOnceVisible() throws Exception {
+    List<JournalRecord> records = new ArrayList<>();
+    TransferJournal journal = new TransferJournal() {
+      @Override
+      public CompletableFuture<Void> append(JournalRecord record) {
+        records.add(record);
+        return CompletableFuture.completedFuture(null);
+      }
+
+      @Override
+      public void replay(BiConsumer<String, BigDecimal> restoredAccount) {
+      }
+    };
+    // credits every account as soon as it is published, like a transfer racing the creation
+    AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory() {
+      @Override
+      public void createAccount(Account account) {
+        super.createAccount(account);
+        account.applyCredit(BigDecimal.ONE);
+      }
+    };
+    AccountsService service = new AccountsService(repository, BalanceMode.DECIMAL, journal);
+
+    service.createAccount(new Account("Id-1", new BigDecimal(10)));
+    service.createAccounts(Collections.singletonList(new Account("Id-2", new BigDecimal(20))), (account, e) -> {
+    });
+
+    assertThat(records).extracting(JournalRecord::getAmount)
+        .usingElementComparator(BigDecimal::compareTo).containsExactly(new BigDecimal(10), new BigDecimal(20));
+  }
+
+  @Test
+  public void createAccounts_rejectsAccountsBeyondStoreCapacity() throws Exception {
+    List<JournalRecord> records = new ArrayList<>();
+    AccountsService service = new AccountsService(new InternedAccountsRepository(2), BalanceMode.DECIMAL,
+        recordingJournal(records));
+    Map<String, RuntimeException> rejected = new HashMap<>();
+
+    int created = service.createAccounts(Arrays.asList(new Account("Id-1", BigDecimal.ONE),
+        new Account("Id-2", BigDecimal.ONE), new Account("Id-3", BigDecimal.ONE)),
+        (account, e) -> rejected.put(account.getAccountId(), e));
+
+    assertThat(created).isEqualTo(2);
+    assertThat(rejected.get("Id-3")).isInstanceOf(AccountStoreFullException.class);
+    assertThat(records).extracting(JournalRecord::getAccountId).containsExactly("Id-1", "Id-2");
+  }
+
+  @Test
+  public void createAccounts_journalsAccountsCreatedBeforeStoreFails() throws Exception {
+    List<JournalRecord> records = new ArrayList<>();
+    AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory() {
+      @Override
+      public void createAccount(Account account) {
+        if (account.getAccountId().equals("Id-2")) {
+          throw new IllegalStateException("Store failed");
+        }
+        super.createAccount(account);
+      }
+    };
+    AccountsService service = new AccountsService(repository, BalanceMode.DECIMAL, recordingJournal(records));
+
+    Throwable thrown = catchThrowable(() -> service.createAccounts(Arrays.asList(new Account("Id-1", BigDecimal.ONE),
+        new Account("Id-2", BigDecimal.ONE)), (account, e) -> {
+    }));
+
+    assertThat(thrown).isInstanceOf(IllegalStateException.class);
+    assertThat(records).extracting(JournalRecord::getAccountId).containsExactly("Id-1");
+  }
+
+  private static TransferJournal recordingJournal(List<JournalRecord> records) {
+    return new TransferJournal() {
+      @Override
+      public CompletableFuture<Void> append(JournalRecord record) {
+        records.add(record);
+        return CompletableFuture.completedFuture(null);
+      }
+
+      @Override
+      public void replay(BiConsumer<String, BigDecimal> restoredAccount) {
+      }
+    };
+  }
 }
@@ -0,0 +1,91 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.OverloadedException;
+import com.db.awmd.challenge.service.AsyncExecutor;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class AsyncExecutorTest {
+
+    private AsyncExecutor executor;
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void completesWithResultOrFailure() throws Exception {
+        executor = new AsyncExecutor(2, 10, 1000);
+
+        CompletableFuture<String> failed = executor.submit(() -> {
+            throw new InsufficientFundsException("Insufficient funds");
+        });
+
+        assertThat(executor.submit(() -> "done").get(10, TimeUnit.SECONDS)).isEqualTo("done");
+        assertThat(catchThrowable(() -> failed.get(10, TimeUnit.SECONDS)))
+                .isInstanceOf(ExecutionException.class).hasCauseInstanceOf(InsufficientFundsException.class);
+    }
+
+    @Test
+    public void rejectsBeyondConcurrencyLimit() throws Exception {
+        executor = new AsyncExecutor(1, 2, 10000);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Boolean> running = executor.submit(() -> release.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = executor.submit(() -> true);
+        CompletableFuture<Boolean> rejected = executor.submit(() -> true);
+
+        assertThat(catchThrowable(rejected::get)).hasCauseInstanceOf(OverloadedException.class);
+        release.countDown();
+        assertThat(running.get(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(queued.get(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(executor.getRejected()).isEqualTo(1);
+        assertThat(executor.submit(() -> true).get(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void dropsTasksQueuedPastTimeout() throws Exception {
+        executor = new AsyncExecutor(1, 10, 20);
+
+        CompletableFuture<Void> slow = executor.submit(() -> {
+            Thread.sleep(100);
+            return null;
+        });
+        CompletableFuture<Boolean> expired = executor.submit(() -> true);
+
+        slow.get(10, TimeUnit.SECONDS);
+        assertThat(catchThrowable(() -> expired.get(10, TimeUnit.SECONDS)))
+                .hasCauseInstanceOf(OverloadedException.class);
+        assertThat(executor.getExpired()).isEqualTo(1);
+    }
+
+    @Test
+    public void runsEachTaskOnVirtualThread() throws Exception {
+        executor = new AsyncExecutor(1, 10, 1000, true);
+        CountDownLatch started = new CountDownLatch(2);
+
+        List<CompletableFuture<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            tasks.add(executor.submit(() -> {
+                started.countDown();
+                return started.await(10, TimeUnit.SECONDS) && Thread.currentThread().isVirtual();
+            }));
+        }
+
+        for (CompletableFuture<Boolean> task : tasks) {
+            assertThat(task.get(10, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceSnapshot;
+import com.db.awmd.challenge.domain.HotAccount;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.journal.JournalRecord;
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.TransactionService;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static com.db.awmd.challenge.TransactionServiceBuilder.transactionService;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BalanceSnapshotsTest {
+
+    private static final int ACCOUNTS = 64;
+
+    private final AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+
+    private final TransactionService transactionService =
+            transactionService(repository).build();
+
+    @Test
+    public void snapshotOfIdleAccounts() {
+        repository.createAccount(new Account("12", new BigDecimal("10.50")));
+        repository.createAccount(new Account("13", new BigDecimal(20)));
+        Map<String, BigDecimal> balances = new HashMap<>();
+
+        BalanceSnapshot snapshot = transactionService.snapshotBalances(
+                account -> balances.put(account.getAccountId(), account.getBalance()));
+
+        assertThat(snapshot.getAccounts()).isEqualTo(2);
+        assertThat(snapshot.getTotal()).isEqualByComparingTo("30.50");
+        assertThat(balances.get("12")).isEqualByComparingTo("10.50");
+        assertThat(transactionService.snapshotBalances(account -> {
+        }).getEpoch()).isEqualTo(snapshot.getEpoch() + 1);
+    }
+
+    @Test
+    public void snapshotDoesNotWaitForTransfersBeingJournaled() throws Exception {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        TransferJournal slowJournal = new TransferJournal() {
+            @Override
+            public CompletableFuture<Void> append(JournalRecord record) {
+                return durable;
+            }
+
+            @Override
+            public void replay(BiConsumer<String, BigDecimal> restoredAccount) {
+            }
+        };
+        TransactionService journaled = transactionService(repository).transferJournal(slowJournal).build();
+        repository.createAccount(new Account("12", new BigDecimal(100)));
+        repository.createAccount(new Account("13", new BigDecimal(100)));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> transfer = executor.submit(() -> {
+            journaled.transfer("12", "13", BigDecimal.TEN);
+            return null;
+        });
+        while (repository.getAccount("13").getBalance().compareTo(new BigDecimal(110)) != 0) {
+            Thread.sleep(1);
+        }
+
+        Future<BalanceSnapshot> snapshot = executor.submit(() -> journaled.snapshotBalances(account -> {
+        }));
+        assertThat(snapshot.get(10, TimeUnit.SECONDS).getTotal()).isEqualByComparingTo("200");
+        assertThat(transfer.isDone()).isFalse();
+        durable.complete(null);
+        transfer.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    @Test
+    public void snapshotsReconcileWhileTransfersRun() throws Exception {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            repository.createAccount(i == 0 ? new HotAccount("Id-0", new BigDecimal(100))
+                    : new Account("Id-" + i, new BigDecimal(100)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            boolean batches = t % 2 == 0;
+            workers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 20000; i++) {
+                    String from = "Id-" + random.nextInt(ACCOUNTS);
+                    String to = "Id-" + random.nextInt(ACCOUNTS);
+                    BigDecimal amount = new BigDecimal(random.nextInt(1, 30));
+                    if (batches) {
+                        transactionService.transferBatch(
+                                Collections.singletonList(new TransferRequest(from, to, amount)));
+                        continue;
+                    }
+                    try {
+                        transactionService.transfer(from, to, amount);
+                    } catch (InsufficientFundsException e) {
+                        // expected now and then with random amounts
+                    }
+                }
+                return null;
+            }));
+        }
+
+        int snapshots = 0;
+        while (workers.stream().anyMatch(worker -> !worker.isDone())) {
+            BigDecimal[] visited = {BigDecimal.ZERO};
+            BalanceSnapshot snapshot = transactionService.snapshotBalances(account -> {
+                assertThat(account.getBalance().signum()).isGreaterThanOrEqualTo(0);
+                visited[0] = visited[0].add(account.getBalance());
+            });
+            assertThat(snapshot.getTotal()).isEqualByComparingTo(new BigDecimal(100 * ACCOUNTS));
+            assertThat(visited[0]).isEqualByComparingTo(snapshot.getTotal());
+            snapshots++;
+        }
+        for (Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(snapshots).isGreaterThan(1);
+    }
+}
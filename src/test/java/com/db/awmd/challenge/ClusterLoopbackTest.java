@@ -0,0 +1,205 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.cluster.ClusterTopology;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.web.TransactionController;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Two nodes of a cluster in one JVM, talking to each other over loopback.
+ */
+public class ClusterLoopbackTest {
+
+    private static final int NODES = 2;
+
+    private static final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+
+    private static String[] urls = new String[NODES];
+
+    private static ClusterTopology topology;
+
+    private final RestTemplate rest = new RestTemplate();
+
+    @BeforeClass
+    public static void startNodes() throws IOException {
+        for (int node = 0; node < NODES; node++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                urls[node] = "http://127.0.0.1:" + socket.getLocalPort();
+            }
+        }
+        String nodes = String.join(",", urls);
+        for (int node = 0; node < NODES; node++) {
+            contexts.add(new SpringApplicationBuilder(DevChallengeApplication.class).run(
+                    "--server.port=" + urls[node].substring(urls[node].lastIndexOf(':') + 1),
+                    "--challenge.cluster.enabled=true", "--challenge.cluster.nodes=" + nodes,
+                    "--challenge.cluster.self=" + node, "--management.endpoints.enabled-by-default=false", "--spring.jmx.enabled=false"));
+        }
+        topology = new ClusterTopology(true, urls, 0, 128);
+    }
+
+    @AfterClass
+    public static void stopNodes() {
+        contexts.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    public void spreadsAccountsOverNodes() {
+        int[] owned = new int[NODES];
+        for (int i = 0; i < 10000; i++) {
+            owned[topology.ownerOf("Spread-" + i)]++;
+        }
+
+        assertThat(owned[0]).isBetween(3500, 6500);
+        assertThat(owned[1]).isEqualTo(10000 - owned[0]);
+    }
+
+    @Test
+    public void storesAccountsOnTheirOwnerWhicheverNodeIsAsked() {
+        String accountId = idOwnedBy(1, "Owned-");
+        rest.postForEntity(urls[0] + "/v1/accounts", new Account(accountId, new BigDecimal(10)), Void.class);
+
+        assertThat(rest.getForObject(urls[0] + "/v1/accounts/" + accountId, Account.class).getBalance())
+                .isEqualByComparingTo("10");
+        assertThat(contexts.get(1).getBean(AccountsService.class)
+                .getAccount(accountId)).isNotNull();
+        assertThat(contexts.get(0).getBean(AccountsService.class)
+                .getAccount(accountId)).isNull();
+    }
+
+    @Test
+    public void transfersAcrossNodes() {
+        String from = idOwnedBy(0, "Cross-from-");
+        String to = idOwnedBy(1, "Cross-to-");
+        createAccount(from, 100);
+        createAccount(to, 100);
+
+        rest.postForEntity(urls[1] + "/v1/transaction/transfer/" + from + "/" + to + "/12.5", null, Void.class);
+        try {
+            rest.postForEntity(urls[0] + "/v1/transaction/transfer/" + from + "/" + to + "/1000", null, Void.class);
+            fail("Insufficient funds expected");
+        } catch (HttpStatusCodeException e) {
+            assertThat(e.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        assertThat(balanceOf(from)).isEqualByComparingTo("87.5");
+        assertThat(balanceOf(to)).isEqualByComparingTo("112.5");
+        assertThat(rest.getForObject(urls[0] + "/v1/cluster/transfers", Map[].class)).isEmpty();
+        assertThat(rest.getForObject(urls[1] + "/v1/cluster/transfers", Map[].class)).isEmpty();
+        Map<?, ?> history = rest.getForObject(urls[1] + "/v1/accounts/" + to + "/transfers", Map.class);
+        assertThat((List<?>) history.get("transfers")).hasSize(1);
+    }
+
+    @Test
+    public void routesBatchesAndImportsToOwners() {
+        String local = idOwnedBy(0, "Batch-local-");
+        String remote = idOwnedBy(1, "Batch-remote-");
+        HttpHeaders ndjson = new HttpHeaders();
+        ndjson.setContentType(MediaType.parseMediaType(TransactionController.APPLICATION_NDJSON_VALUE));
+        Map<?, ?> imported = rest.postForObject(urls[0] + "/v1/accounts/import", new HttpEntity<>(
+                "{\"accountId\":\"" + local + "\",\"balance\":100}\n{\"accountId\":\"" + remote
+                        + "\",\"balance\":100}\n", ndjson), Map.class);
+        assertThat(imported.get("created")).isEqualTo(2);
+
+        Map<?, ?>[] results = rest.postForObject(urls[0] + "/v1/transaction/transfers", Arrays.asList(
+                new TransferRequest(local, remote, new BigDecimal(10)),
+                new TransferRequest(remote, remote + "-missing", new BigDecimal(1)),
+                new TransferRequest(remote, local, new BigDecimal(500))), Map[].class);
+
+        assertThat(results).extracting(result -> (Object) result.get("status")).containsExactly(
+                TransferStatus.COMPLETED.name(), TransferStatus.ACCOUNT_NOT_FOUND.name(),
+                TransferStatus.INSUFFICIENT_FUNDS.name());
+        assertThat(balanceOf(local)).isEqualByComparingTo("90");
+        assertThat(balanceOf(remote)).isEqualByComparingTo("110");
+        try {
+            rest.postForEntity(urls[0] + "/v1/transaction/payments",
+                    Arrays.asList(new TransferRequest(local, remote, BigDecimal.ONE)), Void.class);
+            fail("Remote leg expected to be rejected");
+        } catch (HttpStatusCodeException e) {
+            assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+            assertThat(e.getResponseBodyAsString()).contains("is stored on node 1");
+        }
+    }
+
+    @Test
+    public void concurrentTransfersAcrossNodesConserveMoney() throws Exception {
+        List<String> accounts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            accounts.add(idOwnedBy(i % NODES, "Load-" + i + "-"));
+            createAccount(accounts.get(i), 100);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            workers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 100; i++) {
+                    String url = urls[random.nextInt(NODES)] + "/v1/transaction/transfer/"
+                            + accounts.get(random.nextInt(accounts.size())) + "/"
+                            + accounts.get(random.nextInt(accounts.size())) + "/" + random.nextInt(1, 40);
+                    try {
+                        rest.postForEntity(url, null, Void.class);
+                    } catch (HttpStatusCodeException e) {
+                        // insufficient funds now and then with random amounts
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get(120, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (String account : accounts) {
+            assertThat(balanceOf(account).signum()).isGreaterThanOrEqualTo(0);
+            total = total.add(balanceOf(account));
+        }
+        assertThat(total).isEqualByComparingTo("800");
+    }
+
+    private void createAccount(String accountId, int balance) {
+        rest.postForEntity(urls[0] + "/v1/accounts", new Account(accountId, new BigDecimal(balance)), Void.class);
+    }
+
+    private BigDecimal balanceOf(String accountId) {
+        return rest.getForObject(urls[0] + "/v1/accounts/" + accountId, Account.class).getBalance();
+    }
+
+    private static String idOwnedBy(int node, String prefix) {
+        for (int i = 0; ; i++) {
+            if (topology.ownerOf(prefix + i) == node) {
+                return prefix + i;
+            }
+        }
+    }
+}
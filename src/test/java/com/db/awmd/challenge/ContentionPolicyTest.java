@@ -0,0 +1,122 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.AccountBusyException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.ContentionPolicy;
+import com.db.awmd.challenge.service.TransactionService;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ContentionPolicyTest {
+
+    @Test
+    public void doublesBackoffUpToMaximum() throws Exception {
+        ContentionPolicy policy = new ContentionPolicy(10, 3, 2, 5);
+
+        assertThat(policy.backoffDelayNanos(1)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(2));
+        assertThat(policy.backoffDelayNanos(2)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(4));
+        assertThat(policy.backoffDelayNanos(3)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+        assertThat(policy.backoffDelayNanos(100)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+        assertThat(policy.backOff(1)).isTrue();
+        assertThat(policy.backOff(2)).isTrue();
+        assertThat(policy.backOff(3)).isFalse();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoAttempts() {
+        new ContentionPolicy(10, 0, 1, 10);
+    }
+
+    @Test
+    public void reportsBusyAccountAfterLastAttempt() throws Exception {
+        TransferMetrics metrics = new TransferMetrics();
+        TransactionService transactionService = transactionService(new ContentionPolicy(5, 3, 1, 2), metrics);
+        Account locked = transactionService.getAccountsInMemory().getAccount("Id-1");
+
+        holdLock(locked, 5000, () -> {
+            try {
+                transactionService.transfer("Id-1", "Id-2", BigDecimal.ONE);
+                fail("Busy account expected");
+            } catch (AccountBusyException e) {
+                assertThat(e.getMessage()).isEqualTo("Account Id-1 is busy, try again later");
+            }
+        });
+
+        assertThat(metrics.snapshot().get("busyRetries")).isEqualTo(2L);
+        assertThat(metrics.snapshot().get("lockTimeouts")).isEqualTo(3L);
+        assertThat(locked.getBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    public void retriesUntilAccountIsReleased() throws Exception {
+        TransactionService transactionService =
+                transactionService(new ContentionPolicy(5, 1000, 1, 5), new TransferMetrics());
+        Account locked = transactionService.getAccountsInMemory().getAccount("Id-2");
+
+        holdLock(locked, 50, () -> transactionService.transfer("Id-1", "Id-2", BigDecimal.ONE));
+
+        assertThat(locked.getBalance()).isEqualByComparingTo("11");
+    }
+
+    @Test
+    public void failsCreditOnBusyAccount() throws Exception {
+        Account account = new Account("Id-1", BigDecimal.TEN);
+
+        holdLock(account, 5000, () -> {
+            try {
+                account.credit(BigDecimal.ONE, 1, TimeUnit.MILLISECONDS);
+                fail("Busy account expected");
+            } catch (AccountBusyException e) {
+                assertThat(account.getBalance()).isEqualByComparingTo("10");
+            }
+        });
+    }
+
+    private static TransactionService transactionService(ContentionPolicy policy, TransferMetrics metrics) {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        repository.createAccount(new Account("Id-1", BigDecimal.TEN));
+        repository.createAccount(new Account("Id-2", BigDecimal.TEN));
+        return TransactionServiceBuilder.transactionService(repository).transferMetrics(metrics)
+                .contentionPolicy(policy).build();
+    }
+
+    /**
+     * Runs the action while another thread holds the lock of the account for up to the given time.
+     */
+    private static void holdLock(Account account, long millis, Action action) throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            account.getLock().lock();
+            try {
+                locked.countDown();
+                done.await(millis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                account.getLock().unlock();
+            }
+        });
+        holder.start();
+        locked.await();
+        try {
+            action.run();
+        } finally {
+            done.countDown();
+            holder.join();
+        }
+    }
+
+    private interface Action {
+
+        void run() throws Exception;
+    }
+}
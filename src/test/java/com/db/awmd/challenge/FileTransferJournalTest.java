@@ -0,0 +1,197 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.journal.Durability;
+import com.db.awmd.challenge.journal.FileTransferJournal;
+import com.db.awmd.challenge.journal.JournalRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileTransferJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysAccountsAndTransfers() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        FileTransferJournal journal = open(directory, Durability.GROUP);
+        journal.write(JournalRecord.created("12", new BigDecimal("100.50")));
+        journal.write(JournalRecord.created("13", new BigDecimal("100")));
+        journal.write(JournalRecord.transferred("12", "13", new BigDecimal("0.50")));
+        journal.write(JournalRecord.transferred("13", "12", new BigDecimal("30")));
+        journal.close();
+
+        Map<String, BigDecimal> balances = replay(directory);
+
+        assertThat(balances).hasSize(2);
+        assertThat(balances.get("12")).isEqualByComparingTo("130");
+        assertThat(balances.get("13")).isEqualByComparingTo("70.50");
+    }
+
+    @Test
+    public void groupCommitSharesFsyncsAcrossConcurrentWriters() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        FileTransferJournal journal = open(directory, Durability.GROUP);
+        journal.write(JournalRecord.created("12", new BigDecimal(1000000)));
+        journal.write(JournalRecord.created("13", new BigDecimal(0)));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    journal.write(JournalRecord.transferred("12", "13", BigDecimal.ONE));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        journal.close();
+
+        assertThat(journal.getAppended()).isEqualTo(4002);
+        assertThat(journal.getFsyncs()).isLessThan(journal.getAppended());
+        Map<String, BigDecimal> balances = replay(directory);
+        assertThat(balances.get("12")).isEqualByComparingTo("996000");
+        assertThat(balances.get("13")).isEqualByComparingTo("4000");
+    }
+
+    @Test
+    public void asyncAcknowledgesBeforeFsync() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        FileTransferJournal journal = open(directory, Durability.ASYNC);
+
+        CompletableFuture<Void> appended = journal.append(JournalRecord.created("12", BigDecimal.TEN));
+        assertThat(appended.isDone()).isTrue();
+        journal.close();
+
+        assertThat(replay(directory).get("12")).isEqualByComparingTo("10");
+    }
+
+    @Test
+    public void stopsReplayingSegmentAtTornRecord() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        FileTransferJournal journal = open(directory, Durability.SYNC);
+        journal.write(JournalRecord.created("12", BigDecimal.TEN));
+        journal.write(JournalRecord.transferred("12", "13", BigDecimal.ONE));
+        journal.close();
+        assertThat(journal.getFsyncs()).isGreaterThanOrEqualTo(2);
+        Path segment = Files.list(directory).collect(Collectors.toList()).get(0);
+        Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        assertThat(replay(directory).get("12")).isEqualByComparingTo("9");
+    }
+
+    @Test
+    public void stopsReplayingSegmentAtUndecodableRecord() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        FileTransferJournal journal = open(directory, Durability.SYNC);
+        journal.write(JournalRecord.created("12", BigDecimal.TEN));
+        journal.close();
+        Path segment = Files.list(directory).collect(Collectors.toList()).get(0);
+        byte[] payload = {99};
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(9).putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        Files.write(segment, frame.array(), StandardOpenOption.APPEND);
+
+        assertThat(replay(directory).get("12")).isEqualByComparingTo("10");
+    }
+
+    @Test(expected = ValidationException.class)
+    public void rejectsAccountIdsTooLongToJournal() {
+        char[] id = new char[JournalRecord.MAX_ID_BYTES / 2 + 1];
+        Arrays.fill(id, '\u00e9');
+        JournalRecord.created(new String(id), BigDecimal.TEN);
+    }
+
+    @Test
+    public void ignoresTransfersOfUnknownAccounts() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        FileTransferJournal journal = open(directory, Durability.GROUP);
+        journal.write(JournalRecord.transferred("12", "13", BigDecimal.ONE));
+        journal.write(JournalRecord.created("12", BigDecimal.TEN));
+        journal.close();
+
+        Map<String, BigDecimal> balances = replay(directory);
+
+        assertThat(balances).containsOnlyKeys("12");
+        assertThat(balances.get("12")).isEqualByComparingTo("9");
+    }
+
+    @Test
+    public void replaysSnapshotAndJournalTail() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        FileTransferJournal journal = open(directory, Durability.GROUP);
+        journal.write(JournalRecord.created("12", new BigDecimal("100")));
+        journal.write(JournalRecord.transferred("12", "13", new BigDecimal("5")));
+        journal.write(JournalRecord.created("13", new BigDecimal("0")));
+        journal.write(JournalRecord.transferred("12", "14", new BigDecimal("1.25")));
+        journal.snapshot();
+        journal.write(JournalRecord.created("14", new BigDecimal("10")));
+        journal.write(JournalRecord.transferred("13", "12", new BigDecimal("2")));
+        journal.close();
+
+        assertThat(Files.list(directory).map(path -> path.getFileName().toString()).collect(Collectors.toList()))
+                .contains("snapshot.bin").hasSize(2);
+        Map<String, BigDecimal> balances = replay(directory);
+
+        assertThat(balances).hasSize(3);
+        assertThat(balances.get("12")).isEqualByComparingTo("95.75");
+        assertThat(balances.get("13")).isEqualByComparingTo("3");
+        assertThat(balances.get("14")).isEqualByComparingTo("11.25");
+    }
+
+    @Test
+    public void snapshotsFoldIntoPreviousSnapshot() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        FileTransferJournal journal = open(directory, Durability.GROUP);
+        journal.write(JournalRecord.created("12", new BigDecimal("100")));
+        journal.snapshot();
+        journal.write(JournalRecord.created("13", new BigDecimal("0")));
+        journal.write(JournalRecord.transferred("12", "13", new BigDecimal("40")));
+        journal.snapshot();
+        journal.close();
+
+        Map<String, BigDecimal> balances = replay(directory);
+
+        assertThat(balances.get("12")).isEqualByComparingTo("60");
+        assertThat(balances.get("13")).isEqualByComparingTo("40");
+    }
+
+    private static FileTransferJournal open(Path directory, Durability durability) throws IOException {
+        return new FileTransferJournal(directory, durability, 1024, 65536, 1 << 20, 10);
+    }
+
+    private static Map<String, BigDecimal> replay(Path directory) throws IOException {
+        FileTransferJournal journal = open(directory, Durability.GROUP);
+        Map<String, BigDecimal> balances = new HashMap<>();
+        journal.replay(balances::put);
+        journal.close();
+        return balances;
+    }
+}
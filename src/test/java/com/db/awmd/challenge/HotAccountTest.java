@@ -0,0 +1,168 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BalanceMode;
+import com.db.awmd.challenge.domain.HotAccount;
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransactionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.db.awmd.challenge.TransactionServiceBuilder.transactionService;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HotAccountTest {
+
+    @Test
+    public void sumsCreditsIntoBalance() throws Exception {
+        HotAccount account = new HotAccount("Id-123", new BigDecimal("10.50"));
+
+        account.credit(new BigDecimal("0.25"));
+        assertThat(account.debit(new BigDecimal("10.75"))).isTrue();
+        assertThat(account.debit(new BigDecimal("0.01"))).isFalse();
+        account.setBalance(new BigDecimal("3"));
+
+        assertThat(account.getBalance()).isEqualByComparingTo("3");
+        assertThat(new ObjectMapper().writeValueAsString(account))
+                .isEqualTo("{\"accountId\":\"Id-123\",\"balance\":3.00}");
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void rejectsOverflowingCredit() throws Exception {
+        new HotAccount("Id-123", new BigDecimal(Long.MAX_VALUE / 100)).credit(BigDecimal.ONE);
+    }
+
+    @Test
+    public void createsConfiguredAccountsAsHot() {
+        AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory(), BalanceMode.DECIMAL,
+                TransferJournal.NONE, new String[]{"merchant"});
+
+        accountsService.createAccount(new Account("merchant", BigDecimal.TEN));
+        accountsService.createAccount(new Account("customer", BigDecimal.TEN));
+
+        assertThat(accountsService.getAccount("merchant")).isInstanceOf(HotAccount.class);
+        assertThat(accountsService.getAccount("customer")).isNotInstanceOf(HotAccount.class);
+    }
+
+    @Test
+    public void creditsDoNotWaitForLockOfHotAccount() throws Exception {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        HotAccount merchant = new HotAccount("merchant", BigDecimal.ZERO);
+        repository.createAccount(merchant);
+        repository.createAccount(new Account("customer", BigDecimal.TEN));
+        TransactionService transactionService = transactionService(repository).build();
+
+        merchant.getLock().lock();
+        try {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            executor.submit(() -> {
+                transactionService.transfer("customer", "merchant", BigDecimal.ONE);
+                return null;
+            }).get(1, TimeUnit.SECONDS);
+            executor.shutdown();
+        } finally {
+            merchant.getLock().unlock();
+        }
+
+        assertThat(merchant.getBalance()).isEqualByComparingTo("1");
+    }
+
+    @Test
+    public void concurrentCreditsAndDebitsConserveMoney() throws Exception {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        repository.createAccount(new HotAccount("merchant", new BigDecimal(1000)));
+        for (int i = 0; i < 8; i++) {
+            repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+        }
+        TransactionService transactionService = transactionService(repository).build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            String customer = "Id-" + t;
+            workers.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    transactionService.transfer(customer, "merchant", BigDecimal.ONE);
+                    transactionService.transfer("merchant", customer, new BigDecimal("0.5"));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(repository.getAccount("merchant").getBalance()).isEqualByComparingTo("5000");
+        for (int i = 0; i < 8; i++) {
+            assertThat(repository.getAccount("Id-" + i).getBalance()).isEqualByComparingTo("500");
+        }
+    }
+
+    @Test
+    public void readersNeverSeeCreditsHalfFoldedByDebits() throws Exception {
+        HotAccount account = new HotAccount("merchant", new BigDecimal(100));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            workers.add(executor.submit(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    account.credit(BigDecimal.ONE);
+                    assertThat(account.debit(BigDecimal.ONE)).isTrue();
+                }
+                return null;
+            }));
+        }
+        // each worker has at most one credit not debited yet
+        while (!workers.stream().allMatch(Future::isDone)) {
+            assertThat(account.getBalance()).isBetween(new BigDecimal(100), new BigDecimal(104));
+        }
+        for (Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(account.getBalance()).isEqualByComparingTo("100");
+        account.setBalance(new BigDecimal(7));
+        account.credit(BigDecimal.ONE);
+        assertThat(account.getBalance()).isEqualByComparingTo("8");
+    }
+
+    @Test
+    public void concurrentCreditsStopExactlyAtOverflow() throws Exception {
+        BigDecimal max = BigDecimal.valueOf(Long.MAX_VALUE, 2);
+        HotAccount account = new HotAccount("merchant", max.subtract(new BigDecimal(100)));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> workers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            workers.add(executor.submit(() -> {
+                int credited = 0;
+                try {
+                    while (true) {
+                        account.credit(new BigDecimal("0.01"));
+                        credited++;
+                    }
+                } catch (ArithmeticException e) {
+                    return credited;
+                }
+            }));
+        }
+        int credited = 0;
+        for (Future<Integer> worker : workers) {
+            credited += worker.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(credited).isEqualTo(10000);
+        assertThat(account.getBalance()).isEqualByComparingTo(max);
+    }
+}
@@ -0,0 +1,120 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.exception.AccountBusyException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class IdempotencyCacheTest {
+
+    private final IdempotencyCache cache = new IdempotencyCache(4, 600);
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @Test
+    public void runsTransferOncePerKey() throws Exception {
+        cache.run("key-1", "12", "13", BigDecimal.TEN, runs::incrementAndGet);
+        cache.run("key-1", "12", "13", new BigDecimal("10.00"), runs::incrementAndGet);
+        cache.run("key-2", "12", "13", BigDecimal.TEN, runs::incrementAndGet);
+
+        assertThat(runs.get()).isEqualTo(2);
+        assertThat(cache.getDuplicates()).isEqualTo(1);
+    }
+
+    @Test
+    public void replaysFailureOfFirstTransfer() throws Exception {
+        InsufficientFundsException failure = new InsufficientFundsException("Insufficient funds");
+
+        Throwable first = catchThrowable(() -> cache.run("key-1", "12", "13", BigDecimal.TEN, () -> {
+            runs.incrementAndGet();
+            throw failure;
+        }));
+        Throwable duplicate = catchThrowable(() -> cache.run("key-1", "12", "13", BigDecimal.TEN,
+                runs::incrementAndGet));
+
+        assertThat(first).isSameAs(failure);
+        assertThat(duplicate).isSameAs(failure);
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void retriesAfterBusyAccount() throws Exception {
+        Throwable busy = catchThrowable(() -> cache.run("key-1", "12", "13", BigDecimal.TEN, () -> {
+            throw new AccountBusyException("busy");
+        }));
+        cache.run("key-1", "12", "13", BigDecimal.TEN, runs::incrementAndGet);
+
+        assertThat(busy).isInstanceOf(AccountBusyException.class);
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test(expected = IdempotencyKeyReusedException.class)
+    public void rejectsKeyReusedForAnotherTransfer() throws Exception {
+        cache.run("key-1", "12", "13", BigDecimal.TEN, runs::incrementAndGet);
+        cache.run("key-1", "12", "13", BigDecimal.ONE, runs::incrementAndGet);
+    }
+
+    @Test
+    public void evictsOldestKeysBeyondCapacity() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            cache.run("key-" + i, "12", "13", BigDecimal.TEN, runs::incrementAndGet);
+        }
+        cache.run("key-0", "12", "13", BigDecimal.TEN, runs::incrementAndGet);
+        cache.run("key-5", "12", "13", BigDecimal.TEN, runs::incrementAndGet);
+
+        assertThat(runs.get()).isEqualTo(7);
+        assertThat(cache.size()).isEqualTo(4);
+        assertThat(cache.getEarlyEvictions()).isEqualTo(3);
+    }
+
+    @Test
+    public void expiresKeys() throws Exception {
+        IdempotencyCache expiring = new IdempotencyCache(4, 0);
+        expiring.run("key-1", "12", "13", BigDecimal.TEN, runs::incrementAndGet);
+        Thread.sleep(1);
+        expiring.run("key-1", "12", "13", BigDecimal.TEN, runs::incrementAndGet);
+
+        assertThat(runs.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void concurrentDuplicatesWaitForFirstTransfer() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Future<?> first = executor.submit(() -> {
+            cache.run("key-1", "12", "13", BigDecimal.TEN, () -> {
+                runs.incrementAndGet();
+                running.countDown();
+                release.await();
+            });
+            return null;
+        });
+        running.await(10, TimeUnit.SECONDS);
+        Future<?> duplicate = executor.submit(() -> {
+            cache.run("key-1", "12", "13", BigDecimal.TEN, runs::incrementAndGet);
+            return null;
+        });
+
+        Thread.sleep(50);
+        assertThat(duplicate.isDone()).isFalse();
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        duplicate.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertThat(runs.get()).isEqualTo(1);
+    }
+}
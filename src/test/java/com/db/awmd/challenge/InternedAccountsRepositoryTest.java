@@ -0,0 +1,104 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.repository.AccountHandles;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.InternedAccountsRepository;
+import com.db.awmd.challenge.service.TransactionService;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.db.awmd.challenge.TransactionServiceBuilder.transactionService;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InternedAccountsRepositoryTest {
+
+    private final InternedAccountsRepository repository = new InternedAccountsRepository(100000);
+
+    @Test
+    public void assignsDenseHandles() {
+        for (int i = 0; i < 50000; i++) {
+            repository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+        }
+
+        assertThat(repository.size()).isEqualTo(50000);
+        for (int i = 0; i < 50000; i += 997) {
+            int handle = repository.handleOf("Id-" + i);
+            assertThat(handle).isEqualTo(i);
+            assertThat(repository.getAccount(handle).getBalance()).isEqualByComparingTo(new BigDecimal(i));
+            assertThat(repository.getAccount("Id-" + i)).isSameAs(repository.getAccount(handle));
+        }
+        assertThat(repository.handleOf("Id-50000")).isEqualTo(AccountHandles.NO_HANDLE);
+        assertThat(repository.getAccount(50000)).isNull();
+        assertThat(repository.getAccount("Id-50000")).isNull();
+    }
+
+    @Test(expected = DuplicateAccountIdException.class)
+    public void createDuplicateAccount() {
+        repository.createAccount(new Account("Id-123", BigDecimal.ONE));
+        repository.createAccount(new Account("Id-123", BigDecimal.ONE));
+    }
+
+    @Test
+    public void clearAccounts() {
+        repository.createAccount(new Account("Id-123", BigDecimal.ONE));
+        repository.clearAccounts();
+
+        assertThat(repository.getAccount("Id-123")).isNull();
+        repository.createAccount(new Account("Id-124", BigDecimal.TEN));
+        assertThat(repository.handleOf("Id-124")).isEqualTo(0);
+    }
+
+    @Test
+    public void lookupsRaceWithCreation() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            readers.add(executor.submit(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    Account account = repository.getAccount("Id-" + i);
+                    if (account != null) {
+                        assertThat(account.getAccountId()).isEqualTo("Id-" + i);
+                    }
+                    assertThat(repository.getAccount("Missing-" + i)).isNull();
+                }
+                return null;
+            }));
+        }
+        for (int i = 0; i < 20000; i++) {
+            repository.createAccount(new Account("Id-" + i, BigDecimal.ONE));
+        }
+        for (Future<?> reader : readers) {
+            reader.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(repository.size()).isEqualTo(20000);
+    }
+
+    @Test
+    public void transferByHandle() throws Exception {
+        repository.createAccount(new Account("12", new BigDecimal(100)));
+        repository.createAccount(new Account("13", new BigDecimal(100)));
+        TransactionService transactionService = transactionService(repository).build();
+
+        transactionService.transfer(repository.handleOf("12"), repository.handleOf("13"), BigDecimal.TEN);
+
+        assertThat(repository.getAccount("12").getBalance()).isEqualByComparingTo("90");
+        assertThat(repository.getAccount("13").getBalance()).isEqualByComparingTo("110");
+    }
+
+    @Test(expected = ValidationException.class)
+    public void transferByHandleNeedsHandles() throws Exception {
+        transactionService(new AccountsRepositoryInMemory()).build().transfer(0, 1, BigDecimal.TEN);
+    }
+}
@@ -0,0 +1,200 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.service.NotificationDispatcher;
+import com.db.awmd.challenge.service.NotificationDispatcher.OverflowPolicy;
+import com.db.awmd.challenge.service.NotificationService;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NotificationDispatcherTest {
+
+    private final Account account = new Account("12");
+
+    private final Account otherAccount = new Account("13");
+
+    @Test
+    public void deliversAllNotifications() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(sink, 100, OverflowPolicy.BLOCK, 16);
+
+        for (int i = 0; i < 50; i++) {
+            dispatcher.notifyAboutTransfer(i % 2 == 0 ? account : otherAccount, "transfer " + i);
+        }
+        dispatcher.close();
+
+        assertThat(dispatcher.getDelivered()).isEqualTo(50);
+        assertThat(dispatcher.getDropped()).isZero();
+        assertThat(String.join("\n", sink.descriptions).split("\n")).hasSize(50);
+    }
+
+    @Test
+    public void coalescesNotificationsPerAccount() throws Exception {
+        BlockingSink sink = new BlockingSink();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(sink, 100, OverflowPolicy.BLOCK, 16);
+
+        dispatcher.notifyAboutTransfer(otherAccount, "first");
+        assertThat(sink.entered.await(10, TimeUnit.SECONDS)).isTrue();
+        dispatcher.notifyAboutTransfer(account, "second");
+        dispatcher.notifyAboutTransfer(account, "third");
+        sink.release.countDown();
+        dispatcher.close();
+
+        assertThat(sink.descriptions).containsExactly("first", "second\nthird");
+        assertThat(dispatcher.getBatches()).isEqualTo(2);
+    }
+
+    @Test
+    public void dropsOldestWhenFull() throws Exception {
+        BlockingSink sink = new BlockingSink();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(sink, 2, OverflowPolicy.DROP_OLDEST, 16);
+
+        dispatcher.notifyAboutTransfer(account, "in flight");
+        assertThat(sink.entered.await(10, TimeUnit.SECONDS)).isTrue();
+        dispatcher.notifyAboutTransfer(account, "dropped");
+        dispatcher.notifyAboutTransfer(account, "kept 1");
+        dispatcher.notifyAboutTransfer(account, "kept 2");
+        assertThat(dispatcher.getQueueDepth()).isEqualTo(2);
+        sink.release.countDown();
+        dispatcher.close();
+
+        assertThat(dispatcher.getDropped()).isEqualTo(1);
+        assertThat(sink.descriptions).containsExactly("in flight", "kept 1\nkept 2");
+    }
+
+    @Test
+    public void publishesQueueDepthAndDropsAsMetrics() throws Exception {
+        BlockingSink sink = new BlockingSink();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(sink, 1, OverflowPolicy.DROP_NEWEST, 16);
+        TransferMetrics metrics = new TransferMetrics();
+        dispatcher.registerGauges(metrics);
+
+        dispatcher.notifyAboutTransfer(account, "in flight");
+        assertThat(sink.entered.await(10, TimeUnit.SECONDS)).isTrue();
+        dispatcher.notifyAboutTransfer(account, "queued");
+        dispatcher.notifyAboutTransfer(account, "dropped");
+        Map<String, Object> snapshot = metrics.snapshot();
+        sink.release.countDown();
+        dispatcher.close();
+
+        assertThat(snapshot).containsEntry("notificationQueueDepth", 1).containsEntry("notificationsDropped", 1L)
+                .containsKey("notificationLagMicros");
+        assertThat(metrics.snapshot()).containsEntry("notificationQueueDepth", 0)
+                .containsEntry("notificationsDelivered", 2L);
+    }
+
+    @Test
+    public void dropsNewestWhenFull() throws Exception {
+        BlockingSink sink = new BlockingSink();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(sink, 1, OverflowPolicy.DROP_NEWEST, 16);
+
+        dispatcher.notifyAboutTransfer(account, "in flight");
+        assertThat(sink.entered.await(10, TimeUnit.SECONDS)).isTrue();
+        dispatcher.notifyAboutTransfer(account, "kept");
+        dispatcher.notifyAboutTransfer(account, "dropped");
+        sink.release.countDown();
+        dispatcher.close();
+
+        assertThat(dispatcher.getDropped()).isEqualTo(1);
+        assertThat(sink.descriptions).containsExactly("in flight", "kept");
+    }
+
+    @Test
+    public void describesTransfersOnDelivery() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(sink, 100, OverflowPolicy.BLOCK, 16);
+
+        dispatcher.notifyAboutTransfer(account, otherAccount, new BigDecimal("2.50"), true);
+        dispatcher.notifyAboutTransfer(otherAccount, account, new BigDecimal("2.50"), false);
+        dispatcher.close();
+
+        assertThat(sink.descriptions).containsExactly("Amount 2.50 has been transferred to account id 13",
+                "Amount 2.50 has been transferred from account id 12");
+    }
+
+    @Test
+    public void deliversBatchConcurrentlyOnVirtualThreads() throws Exception {
+        RendezvousSink sink = new RendezvousSink();
+        NotificationDispatcher dispatcher = new NotificationDispatcher(sink, 100, OverflowPolicy.BLOCK, 16, true);
+
+        dispatcher.notifyAboutTransfer(new Account("14"), "hold");
+        assertThat(sink.entered.await(10, TimeUnit.SECONDS)).isTrue();
+        dispatcher.notifyAboutTransfer(account, "first");
+        dispatcher.notifyAboutTransfer(otherAccount, "second");
+        sink.release.countDown();
+        dispatcher.close();
+
+        assertThat(sink.descriptions).containsExactlyInAnyOrder("hold", "first", "second");
+        assertThat(sink.onVirtualThread).containsExactly(true, true);
+        assertThat(dispatcher.getBatches()).isEqualTo(2);
+    }
+
+    private static class RecordingSink implements NotificationService {
+
+        final List<String> descriptions = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void notifyAboutTransfer(Account account, String transferDescription) {
+            descriptions.add(transferDescription);
+        }
+    }
+
+    /**
+     * Holds the first delivery until released, so the test controls what accumulates on the queue.
+     */
+    private static class BlockingSink extends RecordingSink {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void notifyAboutTransfer(Account account, String transferDescription) {
+            entered.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.notifyAboutTransfer(account, transferDescription);
+        }
+    }
+
+    /**
+     * Holds the first delivery like {@link BlockingSink}; every later delivery waits for the one after it, so two
+     * of them only both get through if they are made concurrently.
+     */
+    private static class RendezvousSink extends BlockingSink {
+
+        final CountDownLatch started = new CountDownLatch(2);
+
+        final List<Boolean> onVirtualThread = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void notifyAboutTransfer(Account account, String transferDescription) {
+            if (!transferDescription.equals("hold")) {
+                onVirtualThread.add(Thread.currentThread().isVirtual());
+                started.countDown();
+                try {
+                    if (!started.await(10, TimeUnit.SECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            super.notifyAboutTransfer(account, transferDescription);
+        }
+    }
+}
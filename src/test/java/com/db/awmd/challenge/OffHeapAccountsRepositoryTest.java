@@ -0,0 +1,166 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.repository.OffHeapAccountsRepository;
+import com.db.awmd.challenge.service.TransactionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.db.awmd.challenge.TransactionServiceBuilder.transactionService;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapAccountsRepositoryTest {
+
+    private final OffHeapAccountsRepository repository = new OffHeapAccountsRepository(200000, 4);
+
+    @Test
+    public void createAndGetAccount() {
+        repository.createAccount(new Account("Id-123", new BigDecimal("123.45")));
+
+        Account account = repository.getAccount("Id-123");
+
+        assertThat(account.getAccountId()).isEqualTo("Id-123");
+        assertThat(account.getBalance()).isEqualByComparingTo("123.45");
+        assertThat(repository.getAccount("Id-124")).isNull();
+    }
+
+    @Test
+    public void lookupsRaceWithCreation() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            readers.add(executor.submit(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    Account account = repository.getAccount("Id-" + i);
+                    if (account != null) {
+                        assertThat(account.getBalance()).isEqualByComparingTo(BigDecimal.valueOf(i));
+                    }
+                    assertThat(repository.getAccount("Missing-" + i)).isNull();
+                }
+                return null;
+            }));
+        }
+        for (int i = 0; i < 20000; i++) {
+            repository.createAccount(new Account("Id-" + i, BigDecimal.valueOf(i)));
+        }
+        for (Future<?> reader : readers) {
+            reader.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(repository.size()).isEqualTo(20000);
+    }
+
+    @Test(expected = DuplicateAccountIdException.class)
+    public void createDuplicateAccount() {
+        repository.createAccount(new Account("Id-123", BigDecimal.ONE));
+        repository.createAccount(new Account("Id-123", BigDecimal.ONE));
+    }
+
+    @Test
+    public void storesAccountsAcrossChunks() {
+        for (int i = 0; i < 150000; i++) {
+            repository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+        }
+
+        assertThat(repository.size()).isEqualTo(150000);
+        for (int i = 0; i < 150000; i += 997) {
+            assertThat(repository.getAccount("Id-" + i).getBalance()).isEqualByComparingTo(new BigDecimal(i));
+        }
+    }
+
+    @Test
+    public void createsBatchAndVisitsAccounts() {
+        repository.createAccount(new Account("Id-2", BigDecimal.ONE));
+        Map<String, RuntimeException> rejected = new HashMap<>();
+
+        repository.createAccounts(Arrays.asList(new Account("Id-1", BigDecimal.TEN), new Account("Id-2", BigDecimal.TEN),
+                new Account("Id-123456789012345678901234567890123", BigDecimal.TEN)), account -> {
+                }, (account, reason) -> rejected.put(account.getAccountId(), reason));
+        Map<String, BigDecimal> visited = new HashMap<>();
+        repository.forEachAccount(account -> visited.put(account.getAccountId(), account.getBalance()));
+
+        assertThat(rejected.get("Id-2")).isInstanceOf(DuplicateAccountIdException.class);
+        assertThat(rejected.get("Id-123456789012345678901234567890123")).isInstanceOf(ValidationException.class);
+        assertThat(visited).containsOnlyKeys("Id-1", "Id-2");
+        assertThat(visited.get("Id-1")).isEqualByComparingTo("10");
+    }
+
+    @Test
+    public void clearAccounts() {
+        repository.createAccount(new Account("Id-123", BigDecimal.ONE));
+        repository.clearAccounts();
+
+        assertThat(repository.getAccount("Id-123")).isNull();
+        repository.createAccount(new Account("Id-123", BigDecimal.TEN));
+        assertThat(repository.getAccount("Id-123").getBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    public void serializesViewLikeAccount() throws Exception {
+        repository.createAccount(new Account("Id-123", new BigDecimal("123.45")));
+
+        assertThat(new ObjectMapper().writeValueAsString(repository.getAccount("Id-123")))
+                .isEqualTo("{\"accountId\":\"Id-123\",\"balance\":123.45}");
+    }
+
+    @Test(expected = InsufficientFundsException.class)
+    public void transferWithInsufficientFunds() throws Exception {
+        repository.createAccount(new Account("12", new BigDecimal(10)));
+        repository.createAccount(new Account("13", new BigDecimal(10)));
+
+        transactionService(repository).build().transfer("12", "13", new BigDecimal(11));
+    }
+
+    @Test
+    public void concurrentTransfersAcrossSharedStripesConserveMoney() throws Exception {
+        int accounts = 32;
+        for (int i = 0; i < accounts; i++) {
+            repository.createAccount(new Account("Id-" + i, new BigDecimal(100)));
+        }
+        TransactionService transactionService = transactionService(repository).build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            workers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 5000; i++) {
+                    try {
+                        transactionService.transfer("Id-" + random.nextInt(accounts), "Id-" + random.nextInt(accounts),
+                                new BigDecimal(random.nextInt(1, 30)));
+                    } catch (InsufficientFundsException e) {
+                        // expected now and then with random amounts
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < accounts; i++) {
+            BigDecimal balance = repository.getAccount("Id-" + i).getBalance();
+            assertThat(balance.signum()).isGreaterThanOrEqualTo(0);
+            total = total.add(balance);
+        }
+        assertThat(total).isEqualByComparingTo(new BigDecimal(100 * accounts));
+    }
+}
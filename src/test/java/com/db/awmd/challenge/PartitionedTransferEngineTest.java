@@ -0,0 +1,146 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.service.PartitionedTransferEngine;
+import com.db.awmd.challenge.service.PendingTransfer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class PartitionedTransferEngineTest {
+
+    private PartitionedTransferEngine engine;
+
+    @Before
+    public void prepare() {
+        engine = new PartitionedTransferEngine(4, 100000);
+    }
+
+    @After
+    public void shutdown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void transfer() throws Exception {
+        Account debit = new Account("12", new BigDecimal(100));
+        Account credit = new Account("13", new BigDecimal(100));
+
+        engine.transfer(debit, credit, new BigDecimal(30), TransferJournal.NONE);
+
+        assertThat(debit.getBalance()).isEqualByComparingTo("70");
+        assertThat(credit.getBalance()).isEqualByComparingTo("130");
+    }
+
+    @Test(expected = InsufficientFundsException.class)
+    public void transferWithInsufficientFunds() throws Exception {
+        engine.transfer(new Account("12", new BigDecimal(10)), new Account("13", new BigDecimal(10)),
+                new BigDecimal(11), TransferJournal.NONE);
+    }
+
+    @Test
+    public void concurrentCrossPartitionTransfersConserveMoney() throws Exception {
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            accounts.add(new Account("Id-" + i, new BigDecimal(100)));
+        }
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 20000; i++) {
+            Account debit = accounts.get(random.nextInt(accounts.size()));
+            Account credit = accounts.get(random.nextInt(accounts.size()));
+            futures.add(engine.submit(debit, credit, new BigDecimal(random.nextInt(1, 20)), TransferJournal.NONE));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .exceptionally(e -> null)
+                .get(30, TimeUnit.SECONDS);
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accounts) {
+            assertThat(account.getBalance().signum()).isGreaterThanOrEqualTo(0);
+            total = total.add(account.getBalance());
+        }
+        assertThat(total).isEqualByComparingTo("1600");
+    }
+
+    @Test
+    public void concurrentPaymentsAcrossPartitionsConserveMoney() throws Exception {
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            accounts.add(new Account("Id-" + i, new BigDecimal(100)));
+        }
+        List<CompletableFuture<?>> transfers = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> payers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            payers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 500; i++) {
+                    List<PendingTransfer> legs = new ArrayList<>();
+                    for (int leg = 0; leg < 3; leg++) {
+                        legs.add(new PendingTransfer(accounts.get(random.nextInt(accounts.size())),
+                                accounts.get(random.nextInt(accounts.size())), new BigDecimal(random.nextInt(1, 60))));
+                    }
+                    try {
+                        engine.transferAtomically(legs, TransferJournal.NONE);
+                    } catch (InsufficientFundsException e) {
+                        // rolled back as a whole
+                    }
+                    transfers.add(engine.submit(accounts.get(random.nextInt(accounts.size())),
+                            accounts.get(random.nextInt(accounts.size())), BigDecimal.ONE, TransferJournal.NONE));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> payer : payers) {
+            payer.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        CompletableFuture.allOf(transfers.toArray(new CompletableFuture[0]))
+                .exceptionally(e -> null)
+                .get(30, TimeUnit.SECONDS);
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accounts) {
+            assertThat(account.getBalance().signum()).isGreaterThanOrEqualTo(0);
+            total = total.add(account.getBalance());
+        }
+        assertThat(total).isEqualByComparingTo("1600");
+    }
+
+    @Test
+    public void rollsBackPaymentWithUncoveredLeg() throws Exception {
+        Account first = new Account("Id-1", new BigDecimal(100));
+        Account second = new Account("Id-2", new BigDecimal(10));
+        Account third = new Account("Id-3", BigDecimal.ZERO);
+
+        try {
+            engine.transferAtomically(Arrays.asList(new PendingTransfer(first, third, new BigDecimal(50)),
+                    new PendingTransfer(second, third, new BigDecimal(20))), TransferJournal.NONE);
+            fail("Insufficient funds expected");
+        } catch (InsufficientFundsException e) {
+            assertThat(e.getMessage()).isEqualTo("Insufficient funds in account Id-2");
+        }
+
+        assertThat(first.getBalance()).isEqualByComparingTo("100");
+        assertThat(second.getBalance()).isEqualByComparingTo("10");
+        assertThat(third.getBalance()).isEqualByComparingTo("0");
+    }
+}
@@ -0,0 +1,182 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MinorUnits;
+import com.db.awmd.challenge.domain.ScaledBalanceAccount;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.TransactionService;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.db.awmd.challenge.TransactionServiceBuilder.transactionService;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ScaledBalanceAccountTest {
+
+    @Test
+    public void exposesBalanceAsBigDecimal() {
+        Account account = new ScaledBalanceAccount("1", new BigDecimal("123.45"));
+
+        assertThat(account.getBalance()).isEqualByComparingTo("123.45");
+        assertThat(((ScaledBalanceAccount) account).getMinorUnits()).isEqualTo(12345L);
+    }
+
+    @Test(expected = ValidationException.class)
+    public void rejectsTooManyDecimalPlaces() {
+        new ScaledBalanceAccount("1", new BigDecimal("0.001"));
+    }
+
+    @Test
+    public void acceptsTrailingZeroDecimalPlaces() {
+        Account account = new ScaledBalanceAccount("1", new BigDecimal("1.5000"));
+
+        assertThat(account.getBalance()).isEqualByComparingTo("1.5");
+    }
+
+    @Test
+    public void parsesAmounts() {
+        assertThat(MinorUnits.parseAmount("10")).isEqualTo(new BigDecimal("10"));
+        assertThat(MinorUnits.parseAmount("0.01")).isEqualTo(new BigDecimal("0.01"));
+        assertThat(MinorUnits.parseAmount("-1.50")).isEqualTo(new BigDecimal("-1.50"));
+        assertThat(MinorUnits.parseAmount("7.")).isEqualTo(new BigDecimal("7"));
+        assertThat(MinorUnits.parseAmount("1E+3")).isEqualTo(new BigDecimal("1E+3"));
+        assertThat(MinorUnits.parseAmount("12345678901234567890.5"))
+                .isEqualTo(new BigDecimal("12345678901234567890.5"));
+        assertThat(MinorUnits.toMinorUnits(MinorUnits.parseAmount("10"))).isEqualTo(1000);
+        assertThat(MinorUnits.toMinorUnits(MinorUnits.parseAmount("0.01"))).isEqualTo(1);
+    }
+
+    @Test(expected = ValidationException.class)
+    public void rejectsMalformedAmounts() {
+        MinorUnits.parseAmount("1.2.3");
+    }
+
+    @Test(expected = ValidationException.class)
+    public void rejectsWholeAmountsOutOfRange() {
+        MinorUnits.toMinorUnits(new BigDecimal(Long.MAX_VALUE / 10));
+    }
+
+    @Test
+    public void debitFailsOnInsufficientFunds() {
+        Account account = new ScaledBalanceAccount("1", new BigDecimal("10"));
+
+        assertThat(account.applyDebit(new BigDecimal("10.01"))).isFalse();
+        assertThat(account.getBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void creditFailsOnOverflow() {
+        ScaledBalanceAccount account = new ScaledBalanceAccount("1",
+                BigDecimal.valueOf(Long.MAX_VALUE, MinorUnits.SCALE));
+
+        account.creditMinorUnits(1);
+    }
+
+    @Test
+    public void concurrentDebitsNeverOverdraw() throws Exception {
+        Account account = new ScaledBalanceAccount("1", new BigDecimal("1000"));
+        AtomicInteger successes = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    if (account.applyDebit(BigDecimal.ONE)) {
+                        successes.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(successes.get()).isEqualTo(1000);
+        assertThat(account.getBalance()).isEqualByComparingTo("0");
+    }
+
+    @Test
+    public void transferBetweenScaledAccounts() throws Exception {
+        AccountsRepository repository = mock(AccountsRepository.class);
+        Account debit = new ScaledBalanceAccount("12", new BigDecimal("100"));
+        Account credit = new ScaledBalanceAccount("13", new BigDecimal("100"));
+        when(repository.getAccount("12")).thenReturn(debit);
+        when(repository.getAccount("13")).thenReturn(credit);
+        TransactionService transactionService = transactionService(repository).build();
+
+        transactionService.transfer("12", "13", new BigDecimal("40.25"));
+
+        assertThat(debit.getBalance()).isEqualByComparingTo("59.75");
+        assertThat(credit.getBalance()).isEqualByComparingTo("140.25");
+    }
+
+    @Test(expected = InsufficientFundsException.class)
+    public void transferBetweenScaledAccountsWithInsufficientFunds() throws Exception {
+        AccountsRepository repository = mock(AccountsRepository.class);
+        when(repository.getAccount("12")).thenReturn(new ScaledBalanceAccount("12", new BigDecimal("10")));
+        when(repository.getAccount("13")).thenReturn(new ScaledBalanceAccount("13", new BigDecimal("10")));
+        TransactionService transactionService = transactionService(repository).build();
+
+        transactionService.transfer("12", "13", new BigDecimal("10.01"));
+    }
+
+    @Test
+    public void refusesMultiLegTransfersWhileOtherTransfersRun() throws Exception {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        repository.createAccount(new ScaledBalanceAccount("12", new BigDecimal(1000)));
+        repository.createAccount(new ScaledBalanceAccount("13", new BigDecimal(1000)));
+        BigDecimal max = BigDecimal.valueOf(Long.MAX_VALUE, 2);
+        repository.createAccount(new ScaledBalanceAccount("14", max));
+        TransactionService transactionService = transactionService(repository).build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String from = t % 2 == 0 ? "12" : "13";
+            String to = t % 2 == 0 ? "13" : "12";
+            workers.add(executor.submit(() -> {
+                while (running.get()) {
+                    try {
+                        transactionService.transfer(from, to, BigDecimal.ONE);
+                    } catch (InsufficientFundsException e) {
+                        // the other direction catches up
+                    }
+                }
+                return null;
+            }));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(catchThrowable(() -> transactionService.transferAtomically(Arrays.asList(
+                    new TransferRequest("12", "13", BigDecimal.TEN), new TransferRequest("13", "14", BigDecimal.ONE)))))
+                    .isInstanceOf(ValidationException.class).hasMessageContaining("not supported");
+        }
+        running.set(false);
+        for (Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(repository.getAccount("12").getBalance().add(repository.getAccount("13").getBalance()))
+                .isEqualByComparingTo("2000");
+        assertThat(repository.getAccount("14").getBalance()).isEqualByComparingTo(max);
+    }
+}
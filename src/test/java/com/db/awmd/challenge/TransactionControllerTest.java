@@ -1,10 +1,15 @@
 package com.db.awmd.challenge;
 
+import com.db.awmd.challenge.cluster.ClusterCoordinator;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.InsufficientFundsException;
 import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
 import com.db.awmd.challenge.service.AccountsService;
 import com.db.awmd.challenge.service.TransactionService;
+import com.db.awmd.challenge.service.TransferAdmission;
+import com.db.awmd.challenge.web.TransactionController;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -14,14 +19,18 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.math.BigDecimal;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
 @RunWith(SpringRunner.class)
@@ -91,5 +100,127 @@ public class TransactionControllerTest {
 
     }
 
+    @Test
+    public void transferWithIdempotencyKeyAppliesOnce() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            this.mockMvc.perform(post("/v1/transaction/transfer/{fromAccountId}/{toAccountId}/{amount}", "12", "13", 3)
+                    .header(TransactionController.IDEMPOTENCY_KEY_HEADER, "transfer-once")
+                    .contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+        }
+        this.mockMvc.perform(post("/v1/transaction/transfer/{fromAccountId}/{toAccountId}/{amount}", "12", "13", 4)
+                .header(TransactionController.IDEMPOTENCY_KEY_HEADER, "transfer-once")
+                .contentType(MediaType.APPLICATION_JSON)).andExpect(status().isConflict());
+
+        assertEquals(0, accountsService.getAccount("12").getBalance().compareTo(new BigDecimal(97)));
+        assertEquals(0, accountsService.getAccount("13").getBalance().compareTo(new BigDecimal(103)));
+    }
+
+    @Test
+    public void transferMetrics() throws Exception {
+        this.mockMvc.perform(post("/v1/transaction/transfer/{fromAccountId}/{toAccountId}/{amount}", "12", "13", 3).
+                contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+
+        this.mockMvc.perform(get("/v1/metrics/transfers")).andExpect(status().isOk())
+                .andExpect(jsonPath("$.transferLatency.count").isNumber())
+                .andExpect(jsonPath("$.outcomes.COMPLETED").isNumber())
+                .andExpect(jsonPath("$.endpointLatency['POST /v1/transaction/transfer/{fromAccountId}/{toAccountId}/{amount}']").exists());
+        this.mockMvc.perform(get("/transfermetrics")).andExpect(status().isOk())
+                .andExpect(jsonPath("$.lockWait").exists());
+    }
+
+    @Test
+    public void transferAsync() throws Exception {
+        MvcResult result = this.mockMvc.perform(post("/v1/async/transaction/transfer/{fromAccountId}/{toAccountId}/{amount}",
+                "12", "13", 3)).andExpect(request().asyncStarted()).andReturn();
+        this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+        assertEquals(0, accountsService.getAccount("12").getBalance().compareTo(new BigDecimal(97)));
+    }
+
+    @Test
+    public void transferAsyncWithInsufficientFund() throws Exception {
+        MvcResult result = this.mockMvc.perform(post("/v1/async/transaction/transfer/{fromAccountId}/{toAccountId}/{amount}",
+                "12", "13", 1000)).andExpect(request().asyncStarted()).andReturn();
+        this.mockMvc.perform(asyncDispatch(result)).andExpect(status().is5xxServerError())
+                .andExpect(r -> assertTrue(r.getResolvedException() instanceof InsufficientFundsException));
+    }
+
+    @Test
+    public void transferBatch() throws Exception {
+        this.mockMvc.perform(post("/v1/transaction/transfers").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"fromAccountId\":\"12\",\"toAccountId\":\"13\",\"amount\":60}," +
+                        "{\"fromAccountId\":\"12\",\"toAccountId\":\"13\",\"amount\":60}," +
+                        "{\"fromAccountId\":\"11\",\"toAccountId\":\"13\",\"amount\":1}," +
+                        "{\"fromAccountId\":\"13\",\"toAccountId\":\"12\",\"amount\":0}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("COMPLETED"))
+                .andExpect(jsonPath("$[1].status").value("INSUFFICIENT_FUNDS"))
+                .andExpect(jsonPath("$[2].status").value("ACCOUNT_NOT_FOUND"))
+                .andExpect(jsonPath("$[3].status").value("INVALID_AMOUNT"));
+
+        assertEquals(0, accountsService.getAccount("12").getBalance().compareTo(new BigDecimal(40)));
+        assertEquals(0, accountsService.getAccount("13").getBalance().compareTo(new BigDecimal(160)));
+    }
+
+    @Test
+    public void transferPayment() throws Exception {
+        accountsService.createAccount(createAccount("14", BigDecimal.ZERO));
+
+        this.mockMvc.perform(post("/v1/transaction/payments").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"fromAccountId\":\"12\",\"toAccountId\":\"13\",\"amount\":90}," +
+                        "{\"fromAccountId\":\"13\",\"toAccountId\":\"14\",\"amount\":150}," +
+                        "{\"fromAccountId\":\"12\",\"toAccountId\":\"14\",\"amount\":5.5}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[2].status").value("COMPLETED"));
+
+        this.mockMvc.perform(post("/v1/transaction/payments").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"fromAccountId\":\"14\",\"toAccountId\":\"12\",\"amount\":1}," +
+                        "{\"fromAccountId\":\"12\",\"toAccountId\":\"13\",\"amount\":10}]"))
+                .andExpect(status().is5xxServerError())
+                .andExpect(r -> assertTrue(r.getResolvedException() instanceof InsufficientFundsException));
+        this.mockMvc.perform(post("/v1/transaction/payments").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"fromAccountId\":\"14\",\"toAccountId\":\"12\",\"amount\":1}," +
+                        "{\"fromAccountId\":\"12\",\"toAccountId\":\"11\",\"amount\":1}]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(r -> assertEquals("Leg 2: Account not found", r.getResolvedException().getMessage()));
+
+        assertEquals(0, accountsService.getAccount("12").getBalance().compareTo(new BigDecimal("4.5")));
+        assertEquals(0, accountsService.getAccount("13").getBalance().compareTo(new BigDecimal(40)));
+        assertEquals(0, accountsService.getAccount("14").getBalance().compareTo(new BigDecimal("155.5")));
+    }
+
+    @Test
+    public void transferBatchSkipsTransfersOverRateLimit() throws Exception {
+        TransferAdmission admission = new TransferAdmission(new TransferMetrics(), true, 1, 1, 0, 1, 0, 60000, 1000);
+        MockMvc limited = standaloneSetup(new TransactionController(txnService,
+                new ClusterCoordinator(accountsService, txnService), new ObjectMapper(), admission)).build();
+        try {
+            limited.perform(post("/v1/transaction/transfers").contentType(MediaType.APPLICATION_JSON)
+                    .content("[{\"fromAccountId\":\"12\",\"toAccountId\":\"13\",\"amount\":10}," +
+                            "{\"fromAccountId\":\"13\",\"toAccountId\":\"12\",\"amount\":20}]"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[0].status").value("COMPLETED"))
+                    .andExpect(jsonPath("$[1].status").value("RATE_LIMITED"));
+        } finally {
+            admission.shutdown();
+        }
+
+        assertEquals(0, accountsService.getAccount("12").getBalance().compareTo(new BigDecimal(90)));
+    }
+
+    @Test
+    public void transferBatchStream() throws Exception {
+        this.mockMvc.perform(post("/v1/transaction/transfers").contentType(TransactionController.APPLICATION_NDJSON_VALUE)
+                .accept(TransactionController.APPLICATION_NDJSON_VALUE)
+                .content("{\"fromAccountId\":\"12\",\"toAccountId\":\"13\",\"amount\":10}\n" +
+                        "{\"fromAccountId\":\"13\",\"toAccountId\":\"12\",\"amount\":500}\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(
+                        "{\"fromAccountId\":\"12\",\"toAccountId\":\"13\",\"amount\":10,\"status\":\"COMPLETED\"}\n" +
+                        "{\"fromAccountId\":\"13\",\"toAccountId\":\"12\",\"amount\":500,\"status\":\"INSUFFICIENT_FUNDS\"}"));
+
+        assertEquals(0, accountsService.getAccount("12").getBalance().compareTo(new BigDecimal(90)));
+        assertEquals(0, accountsService.getAccount("13").getBalance().compareTo(new BigDecimal(110)));
+    }
 
 }
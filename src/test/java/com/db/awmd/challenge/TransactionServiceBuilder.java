@@ -0,0 +1,66 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.ledger.TransferLedger;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.BalanceSnapshots;
+import com.db.awmd.challenge.service.ContentionPolicy;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.OrderedLockTransferEngine;
+import com.db.awmd.challenge.service.TransactionService;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Builds the {@link TransactionService} of a test: an ordered lock engine, no journal, no ledger and a mock
+ * notification service, unless told otherwise.
+ */
+final class TransactionServiceBuilder {
+
+    private final AccountsRepository repository;
+
+    private NotificationService notificationService = mock(NotificationService.class);
+
+    private TransferJournal transferJournal = TransferJournal.NONE;
+
+    private TransferMetrics transferMetrics = new TransferMetrics();
+
+    private ContentionPolicy contentionPolicy = ContentionPolicy.DEFAULT;
+
+    private TransactionServiceBuilder(AccountsRepository repository) {
+        this.repository = repository;
+    }
+
+    static TransactionServiceBuilder transactionService(AccountsRepository repository) {
+        return new TransactionServiceBuilder(repository);
+    }
+
+    TransactionServiceBuilder notificationService(NotificationService notificationService) {
+        this.notificationService = notificationService;
+        return this;
+    }
+
+    TransactionServiceBuilder transferJournal(TransferJournal transferJournal) {
+        this.transferJournal = transferJournal;
+        return this;
+    }
+
+    TransactionServiceBuilder transferMetrics(TransferMetrics transferMetrics) {
+        this.transferMetrics = transferMetrics;
+        return this;
+    }
+
+    TransactionServiceBuilder contentionPolicy(ContentionPolicy contentionPolicy) {
+        this.contentionPolicy = contentionPolicy;
+        return this;
+    }
+
+    TransactionService build() {
+        return new TransactionService(repository, notificationService,
+                new OrderedLockTransferEngine(transferMetrics, contentionPolicy), transferJournal,
+                new IdempotencyCache(16, 600), transferMetrics, new TransferLedger(0), new BalanceSnapshots(),
+                contentionPolicy);
+    }
+}
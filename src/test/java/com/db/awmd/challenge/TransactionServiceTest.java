@@ -1,8 +1,14 @@
 package com.db.awmd.challenge;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferRequest;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.domain.TransferStatus;
 import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.exception.TransferNotDurableException;
 import com.db.awmd.challenge.exception.ValidationException;
+import com.db.awmd.challenge.journal.JournalRecord;
+import com.db.awmd.challenge.journal.TransferJournal;
 import com.db.awmd.challenge.repository.AccountsRepository;
 import com.db.awmd.challenge.service.EmailNotificationService;
 import com.db.awmd.challenge.service.TransactionService;
@@ -13,9 +19,24 @@ import org.mockito.Mock;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-
-import static org.mockito.Matchers.anyString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static com.db.awmd.challenge.TransactionServiceBuilder.transactionService;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 @RunWith(SpringRunner.class)
@@ -34,7 +55,7 @@ public class TransactionServiceTest {
 
     @Before
     public void prepare() {
-        transactionService = new TransactionService(mockAccountRepo, mockNotificationService);
+        transactionService = transactionService(mockAccountRepo).notificationService(mockNotificationService).build();
         debitAcc = createAccount("12", new BigDecimal(100));
         creditAcc = createAccount("13", new BigDecimal(100));
     }
@@ -48,7 +69,8 @@ public class TransactionServiceTest {
         when(mockAccountRepo.getAccount("12")).thenReturn(debitAcc);
         when(mockAccountRepo.getAccount("13")).thenReturn(creditAcc);
         transactionService.transfer("12", "13", new BigDecimal(100));
-        verify(mockNotificationService, times(2)).notifyAboutTransfer(any(Account.class), anyString());
+        verify(mockNotificationService).notifyAboutTransfer(debitAcc, creditAcc, new BigDecimal(100), true);
+        verify(mockNotificationService).notifyAboutTransfer(creditAcc, debitAcc, new BigDecimal(100), false);
     }
 
     @Test(expected = InterruptedException.class)
@@ -61,7 +83,8 @@ public class TransactionServiceTest {
 
         Thread.currentThread().interrupt();
         transactionService.transfer("12", "13", new BigDecimal(100));
-        verify(mockNotificationService, times(0)).notifyAboutTransfer(any(Account.class), anyString());
+        verify(mockNotificationService, times(0))
+                .notifyAboutTransfer(any(Account.class), any(Account.class), any(BigDecimal.class), anyBoolean());
 
     }
 
@@ -72,13 +95,15 @@ public class TransactionServiceTest {
         when(mockAccountRepo.getAccount("13")).thenReturn(creditAcc);
 
         transactionService.transfer("14", "13", new BigDecimal(100));
-        verify(mockNotificationService, times(0)).notifyAboutTransfer(any(Account.class), anyString());
+        verify(mockNotificationService, times(0))
+                .notifyAboutTransfer(any(Account.class), any(Account.class), any(BigDecimal.class), anyBoolean());
     }
 
     @Test(expected = ValidationException.class)
     public void transferWithInvalidAccount() throws InterruptedException {
         transactionService.transfer("15", "13", new BigDecimal(100));
-        verify(mockNotificationService, times(0)).notifyAboutTransfer(any(Account.class), anyString());
+        verify(mockNotificationService, times(0))
+                .notifyAboutTransfer(any(Account.class), any(Account.class), any(BigDecimal.class), anyBoolean());
     }
 
     @Test(expected = ValidationException.class)
@@ -86,7 +111,121 @@ public class TransactionServiceTest {
         when(mockAccountRepo.getAccount("12")).thenReturn(creditAcc);
         when(mockAccountRepo.getAccount("13")).thenReturn(debitAcc);
         transactionService.transfer("12", "13", new BigDecimal(0));
-        verify(mockNotificationService, times(0)).notifyAboutTransfer(any(Account.class), anyString());
+        verify(mockNotificationService, times(0))
+                .notifyAboutTransfer(any(Account.class), any(Account.class), any(BigDecimal.class), anyBoolean());
+    }
+
+    @Test
+    public void transferIsJournaledBeforeItsCreditIsApplied() throws InterruptedException {
+        when(mockAccountRepo.getAccount("12")).thenReturn(debitAcc);
+        when(mockAccountRepo.getAccount("13")).thenReturn(creditAcc);
+        List<BigDecimal> journaledBalances = new ArrayList<>();
+        transactionService = transactionService(mockAccountRepo).notificationService(mockNotificationService)
+                .transferJournal(journal(record -> {
+                    journaledBalances.add(debitAcc.getBalance());
+                    journaledBalances.add(creditAcc.getBalance());
+                    return CompletableFuture.completedFuture(null);
+                })).build();
+
+        transactionService.transfer("12", "13", BigDecimal.TEN);
+
+        assertEquals(Arrays.asList(new BigDecimal(90), new BigDecimal(100)), journaledBalances);
+        assertEquals(0, creditAcc.getBalance().compareTo(new BigDecimal(110)));
+    }
+
+    @Test
+    public void transferNotJournaledStaysAppliedAndIsNotReportedAsFailed() throws InterruptedException {
+        when(mockAccountRepo.getAccount("12")).thenReturn(debitAcc);
+        when(mockAccountRepo.getAccount("13")).thenReturn(creditAcc);
+        transactionService = transactionService(mockAccountRepo).notificationService(mockNotificationService)
+                .transferJournal(journal(record -> CompletableFuture.failedFuture(new IOException("Disk full"))))
+                .build();
+
+        try {
+            transactionService.transfer("12", "13", BigDecimal.TEN);
+            fail("Transfer should not be durable");
+        } catch (TransferNotDurableException e) {
+            assertEquals("Transfer from account 12 to account 13 was applied but could not be journaled,"
+                    + " do not retry it", e.getMessage());
+        }
+
+        assertEquals(0, debitAcc.getBalance().compareTo(new BigDecimal(90)));
+        assertEquals(0, creditAcc.getBalance().compareTo(new BigDecimal(110)));
+        verify(mockNotificationService).notifyAboutTransfer(debitAcc, creditAcc, BigDecimal.TEN, true);
+    }
+
+    @Test
+    public void batchTransferNotJournaledIsMarkedNotDurable() throws InterruptedException {
+        when(mockAccountRepo.getAccount("12")).thenReturn(debitAcc);
+        when(mockAccountRepo.getAccount("13")).thenReturn(creditAcc);
+        transactionService = transactionService(mockAccountRepo).notificationService(mockNotificationService)
+                .transferJournal(journal(record -> record.getAccountId().equals("13")
+                        ? CompletableFuture.failedFuture(new IOException("Disk full"))
+                        : CompletableFuture.completedFuture(null)))
+                .build();
+
+        List<TransferResult> results = transactionService.transferBatch(Arrays.asList(
+                new TransferRequest("12", "13", BigDecimal.TEN), new TransferRequest("13", "12", BigDecimal.ONE)));
+
+        assertEquals(TransferStatus.COMPLETED, results.get(0).getStatus());
+        assertEquals(TransferStatus.NOT_DURABLE, results.get(1).getStatus());
+        assertEquals(0, debitAcc.getBalance().compareTo(new BigDecimal(91)));
+        assertEquals(0, creditAcc.getBalance().compareTo(new BigDecimal(109)));
+    }
+
+    @Test
+    public void opposingTransfersDoNotDeadlock() throws Exception {
+        when(mockAccountRepo.getAccount("12")).thenReturn(debitAcc);
+        when(mockAccountRepo.getAccount("13")).thenReturn(creditAcc);
+
+        int rounds = 10000;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> forward = executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < rounds; i++) {
+                    transferIgnoringInsufficientFunds("12", "13");
+                }
+                return null;
+            });
+            Future<?> backward = executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < rounds; i++) {
+                    transferIgnoringInsufficientFunds("13", "12");
+                }
+                return null;
+            });
+            start.countDown();
+            forward.get(30, TimeUnit.SECONDS);
+            backward.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, debitAcc.getBalance().add(creditAcc.getBalance()).compareTo(new BigDecimal(200)));
+        assertTrue(debitAcc.getBalance().signum() >= 0 && creditAcc.getBalance().signum() >= 0);
+    }
+
+    private void transferIgnoringInsufficientFunds(String from, String to) throws InterruptedException {
+        try {
+            transactionService.transfer(from, to, BigDecimal.ONE);
+        } catch (InsufficientFundsException e) {
+            // one direction can temporarily drain its account while the other catches up
+        }
+    }
+
+    private static TransferJournal journal(Function<JournalRecord, CompletableFuture<Void>> append) {
+        return new TransferJournal() {
+            @Override
+            public CompletableFuture<Void> append(JournalRecord record) {
+                return append.apply(record);
+            }
+
+            @Override
+            public void replay(BiConsumer<String, BigDecimal> restoredAccount) {
+            }
+        };
     }
 
 }
@@ -0,0 +1,86 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.exception.RateLimitedException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.service.TransferAdmission;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class TransferAdmissionTest {
+
+    private final TransferMetrics metrics = new TransferMetrics();
+
+    private TransferAdmission admission;
+
+    @After
+    public void shutdown() {
+        admission.shutdown();
+    }
+
+    @Test
+    public void rejectsAccountBeyondBurst() throws Exception {
+        admission = new TransferAdmission(metrics, true, 1, 3, 0, 1, 0, 60000, 1000);
+
+        for (int i = 0; i < 3; i++) {
+            admission.admit("client-" + i, "Id-1", "Id-" + (i + 2));
+        }
+
+        assertThat(catchThrowable(() -> admission.admit("client-9", "Id-9", "Id-1")))
+                .isInstanceOf(RateLimitedException.class).hasMessageStartingWith("Too many transfers for account Id-1");
+        admission.admit("client-9", "Id-9", "Id-10");
+        assertThat(metrics.snapshot().get("admissionsRejected")).isEqualTo(1L);
+    }
+
+    @Test
+    public void limitsEachClientSeparately() throws Exception {
+        admission = new TransferAdmission(metrics, true, 0, 1, 1, 2, 0, 60000, 1000);
+
+        admission.admit("noisy", "Id-1", "Id-2");
+        admission.admit("noisy", "Id-1", "Id-2");
+
+        assertThat(catchThrowable(() -> admission.admit("noisy", "Id-3", "Id-4")))
+                .isInstanceOf(RateLimitedException.class).hasMessageStartingWith("Too many transfers for client noisy");
+        admission.admit("quiet", "Id-1", "Id-2");
+    }
+
+    @Test
+    public void holdsBackTransfersWithinMaxWait() throws Exception {
+        admission = new TransferAdmission(metrics, true, 100, 1, 0, 1, 1000, 60000, 1000);
+
+        long start = System.nanoTime();
+        admission.admit("client", "Id-1", "Id-2");
+        admission.admit("client", "Id-1", "Id-2");
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(9));
+        assertThat(metrics.snapshot().get("admissionsDelayed")).isEqualTo(1L);
+    }
+
+    @Test
+    public void evictsIdleBucketsAndAdmitsUntrackedKeysBeyondCapacity() throws Exception {
+        admission = new TransferAdmission(metrics, true, 1000, 1, 0, 1, 0, 20, 2);
+
+        admission.admit("client", "Id-1", "Id-2");
+        admission.admit("client", "Id-3", "Id-4");
+        assertThat(admission.size()).isEqualTo(2);
+        assertThat(admission.getUntracked()).isEqualTo(2);
+
+        Thread.sleep(50);
+        admission.evictIdle();
+        assertThat(admission.size()).isZero();
+    }
+
+    @Test
+    public void admitsEverythingWhenDisabled() throws Exception {
+        admission = new TransferAdmission(metrics, false, 1, 1, 1, 1, 0, 60000, 1000);
+
+        for (int i = 0; i < 10; i++) {
+            admission.admit("client", "Id-1", "Id-2");
+        }
+        assertThat(admission.size()).isZero();
+    }
+}
@@ -0,0 +1,104 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.TransferEntry;
+import com.db.awmd.challenge.domain.TransferPage;
+import com.db.awmd.challenge.ledger.TransferLedger;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferLedgerTest {
+
+    @Test
+    public void pagesTransfersOfAnAccountNewestFirst() {
+        TransferLedger ledger = new TransferLedger(1000);
+        for (int i = 1; i <= 5; i++) {
+            ledger.record("12", "13", new BigDecimal(i));
+            ledger.record("14", "15", BigDecimal.ONE);
+        }
+
+        TransferPage first = ledger.page("13", null, 3);
+        TransferPage second = ledger.page("13", first.getNextCursor(), 3);
+
+        assertThat(first.getTransfers()).extracting(TransferEntry::getAmount)
+                .containsExactly(new BigDecimal(5), new BigDecimal(4), new BigDecimal(3));
+        assertThat(first.getTransfers().get(0).getFromAccountId()).isEqualTo("12");
+        assertThat(second.getTransfers()).extracting(TransferEntry::getAmount)
+                .containsExactly(new BigDecimal(2), new BigDecimal(1));
+        assertThat(second.getNextCursor()).isNull();
+        assertThat(ledger.page("16", null, 3).getTransfers()).isEmpty();
+    }
+
+    @Test
+    public void keepsAmountsExactly() {
+        TransferLedger ledger = new TransferLedger(1000);
+        BigDecimal wide = new BigDecimal("123456789012345678901234567890.123");
+
+        ledger.record("12", "13", new BigDecimal("0.005"));
+        ledger.record("12", "13", wide);
+        ledger.record("12", "12", new BigDecimal("1E+3"));
+
+        assertThat(ledger.page("12", null, 10).getTransfers()).extracting(TransferEntry::getAmount)
+                .containsExactly(new BigDecimal("1E+3"), wide, new BigDecimal("0.005"));
+    }
+
+    @Test
+    public void dropsOldestTransfersWhenFull() {
+        TransferLedger ledger = new TransferLedger(1);
+        int recorded = 3 * 65536;
+        for (int i = 0; i < recorded; i++) {
+            ledger.record("12", i % 2 == 0 ? "13" : "14", BigDecimal.ONE);
+        }
+
+        List<TransferEntry> transfers = new ArrayList<>();
+        Long cursor = null;
+        do {
+            TransferPage page = ledger.page("12", cursor, 1000);
+            transfers.addAll(page.getTransfers());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertThat(ledger.size()).isEqualTo(recorded);
+        assertThat(transfers).hasSize(65536);
+        assertThat(transfers.get(0).getSequence()).isEqualTo(recorded - 1);
+        assertThat(transfers.get(transfers.size() - 1).getSequence()).isEqualTo(recorded - 65536);
+        assertThat(ledger.page("13", null, 1000).getTransfers()).hasSize(1000);
+    }
+
+    @Test
+    public void pagesWhileTransfersAreRecorded() throws Exception {
+        TransferLedger ledger = new TransferLedger(1 << 20);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String account = "Id-" + t;
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    ledger.record(account, "Id-shared", BigDecimal.ONE);
+                }
+                return null;
+            }));
+        }
+        while (writers.stream().anyMatch(writer -> !writer.isDone())) {
+            List<TransferEntry> transfers = ledger.page("Id-shared", null, 100).getTransfers();
+            for (int i = 1; i < transfers.size(); i++) {
+                assertThat(transfers.get(i).getSequence()).isLessThan(transfers.get(i - 1).getSequence());
+            }
+        }
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(ledger.page("Id-0", 20000L * 4, 1000).getTransfers()).hasSize(1000)
+                .extracting(TransferEntry::getFromAccountId).containsOnly("Id-0");
+    }
+}
@@ -0,0 +1,71 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.exception.InsufficientFundsException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.TransactionService;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static com.db.awmd.challenge.TransactionServiceBuilder.transactionService;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferMetricsTest {
+
+    private final TransferMetrics metrics = new TransferMetrics(4, 1, 100);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void recordsTransfersAndLocks() throws Exception {
+        AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+        repository.createAccount(new Account("12", new BigDecimal(100)));
+        repository.createAccount(new Account("13", new BigDecimal(100)));
+        TransactionService transactionService = transactionService(repository).transferMetrics(metrics).build();
+
+        transactionService.transfer("12", "13", BigDecimal.TEN);
+        transactionService.transfer("12", "13", BigDecimal.TEN);
+        try {
+            transactionService.transfer("12", "13", new BigDecimal(1000));
+        } catch (InsufficientFundsException e) {
+            // counted as an outcome
+        }
+
+        Map<String, Object> snapshot = metrics.snapshot();
+        assertThat((Map<String, Object>) snapshot.get("transferLatency")).containsEntry("count", 3L);
+        assertThat((Map<String, Object>) snapshot.get("outcomes"))
+                .containsEntry("COMPLETED", 2L).containsEntry("INSUFFICIENT_FUNDS", 1L);
+        assertThat(lockCount((Map<String, Object>) snapshot.get("lockWait"))).isEqualTo(6);
+        assertThat(lockCount((Map<String, Object>) snapshot.get("lockHold"))).isEqualTo(6);
+        assertThat(metrics.hotAccounts()).containsEntry("12", 3L).containsEntry("13", 3L);
+    }
+
+    @Test
+    public void ranksHotAccounts() {
+        Account hot = new Account("hot");
+        for (int i = 0; i < 10; i++) {
+            metrics.recordAccess(hot, new Account("cold-" + i));
+        }
+        metrics.recordAccess(new Account("warm"), new Account("cold-0"));
+
+        assertThat(metrics.hotAccounts().keySet()).startsWith("hot", "cold-0");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void countsUnexpectedFailuresAsErrors() {
+        metrics.recordTransfer(null, 1000);
+        metrics.recordOutcome(TransferStatus.BUSY);
+
+        assertThat((Map<String, Object>) metrics.snapshot().get("outcomes"))
+                .containsEntry("ERROR", 1L).containsEntry("BUSY", 1L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long lockCount(Map<String, Object> buckets) {
+        return buckets.values().stream().mapToLong(bucket -> (Long) ((Map<String, Object>) bucket).get("count")).sum();
+    }
+}
@@ -0,0 +1,102 @@
+package com.db.awmd.challenge;
+
+import com.db.awmd.challenge.cluster.TransferParticipant;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.domain.TransferStatus;
+import com.db.awmd.challenge.journal.JournalRecord;
+import com.db.awmd.challenge.journal.JournalState;
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.ledger.TransferLedger;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.BalanceSnapshots;
+import com.db.awmd.challenge.service.NotificationService;
+import com.db.awmd.challenge.service.OrderedLockTransferEngine;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class TransferParticipantTest {
+
+    private final List<JournalRecord> records = new CopyOnWriteArrayList<>();
+
+    private final AccountsRepositoryInMemory accountsRepository = new AccountsRepositoryInMemory();
+
+    private TransferParticipant participant;
+
+    @Before
+    public void setUp() {
+        TransferJournal journal = new TransferJournal() {
+            @Override
+            public CompletableFuture<Void> append(JournalRecord record) {
+                records.add(record);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public void replay(BiConsumer<String, BigDecimal> restoredAccount) {
+            }
+        };
+        participant = new TransferParticipant(accountsRepository, new OrderedLockTransferEngine(),
+                new BalanceSnapshots(), new TransferLedger(0), mock(NotificationService.class), journal, 60000);
+        accountsRepository.createAccount(new Account("Id-1", new BigDecimal(100)));
+        records.add(JournalRecord.created("Id-1", new BigDecimal(100)));
+    }
+
+    @Test
+    public void journalsCommittedAndAbortedLegs() throws Exception {
+        assertThat(participant.prepare("t-1", new TransferLeg("Id-1", "Remote", new BigDecimal(30), true)))
+                .isEqualTo(TransferStatus.COMPLETED);
+        participant.commit("t-1");
+        assertThat(participant.prepare("t-2", new TransferLeg("Id-1", "Remote", new BigDecimal(20), true)))
+                .isEqualTo(TransferStatus.COMPLETED);
+        participant.abort("t-2");
+        assertThat(participant.prepare("t-3", new TransferLeg("Id-1", "Remote", new BigDecimal(5), false)))
+                .isEqualTo(TransferStatus.COMPLETED);
+        participant.commit("t-3");
+
+        assertThat(accountsRepository.getAccount("Id-1").getBalance()).isEqualByComparingTo("75");
+        assertThat(replayed().get("Id-1")).isEqualByComparingTo("75");
+    }
+
+    @Test
+    public void refusesPrepareArrivingAfterItsAbort() throws Exception {
+        participant.abort("late");
+
+        assertThat(participant.prepare("late", new TransferLeg("Id-1", "Remote", new BigDecimal(30), true)))
+                .isEqualTo(TransferStatus.BUSY);
+        assertThat(accountsRepository.getAccount("Id-1").getBalance()).isEqualByComparingTo("100");
+        assertThat(participant.inDoubt()).isEmpty();
+        assertThat(replayed().get("Id-1")).isEqualByComparingTo("100");
+    }
+
+    @Test
+    public void forgetsAbortsAfterRetention() throws Exception {
+        participant = new TransferParticipant(accountsRepository, new OrderedLockTransferEngine(),
+                new BalanceSnapshots(), new TransferLedger(0), mock(NotificationService.class), TransferJournal.NONE,
+                0);
+        participant.abort("old");
+        participant.abort("new");
+
+        assertThat(participant.prepare("old", new TransferLeg("Id-1", "Remote", new BigDecimal(30), true)))
+                .isEqualTo(TransferStatus.COMPLETED);
+    }
+
+    private Map<String, BigDecimal> replayed() {
+        JournalState state = new JournalState();
+        records.forEach(state::apply);
+        Map<String, BigDecimal> balances = new HashMap<>();
+        state.forEach(balances::put);
+        return balances;
+    }
+}